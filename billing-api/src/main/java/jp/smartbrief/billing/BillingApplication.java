@@ -2,14 +2,17 @@ package jp.smartbrief.billing;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * Smart Brief アプリケーションのメインクラス
  * 
  * Spring Boot アプリケーションのエントリーポイントです。
  * このクラスを実行することでアプリケーションが起動します。
+ * カタログ索引の定期更新などのバックグラウンド処理のため、スケジューリングを有効にしています。
  */
 @SpringBootApplication
+@EnableScheduling
 public class BillingApplication {
 
 	public static void main(String[] args) {
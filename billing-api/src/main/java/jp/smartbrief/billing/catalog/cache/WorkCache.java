@@ -0,0 +1,137 @@
+package jp.smartbrief.billing.catalog.cache;
+
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jp.smartbrief.billing.catalog.content.BodyBlobStore;
+import jp.smartbrief.billing.catalog.domain.Work;
+import jp.smartbrief.billing.catalog.repository.WorkRepository;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * 作品詳細キャッシュ
+ *
+ * 本文 (body_text) を含む Work を非同期ローディングキャッシュに保持し、
+ * 人気作品の詳細表示のたびに数百KBの本文を MySQL から読み直さないようにします。
+ * 1. 容量は件数ではなく推定バイト数で制限（本文は 1KB〜数MB とばらつくため）
+ * 2. refresh-after 経過後のアクセスでは古い値を返しつつ裏で読み直す (refresh-ahead)
+ * 3. ヒット率などの統計は Micrometer (cache.* メトリクス) に公開
+ * 本文がファイルストアへ移行済みの作品は、読み込み時にストアから本文を補います。
+ * 取り込みパイプライン (n8n) からは CatalogCacheController 経由で明示的に無効化されます。
+ */
+@Slf4j
+@Component
+public class WorkCache {
+
+    // String の推定サイズ: 日本語は UTF-16 で1文字2バイト
+    private static final int BYTES_PER_CHAR = 2;
+    // オブジェクトヘッダやメタデータ列などの固定分
+    private static final int ENTRY_OVERHEAD_BYTES = 1024;
+
+    private final AsyncLoadingCache<Integer, Work> cache;
+
+    private final BodyBlobStore bodyBlobStore;
+
+    public WorkCache(
+            WorkRepository workRepository,
+            BodyBlobStore bodyBlobStore,
+            MeterRegistry meterRegistry,
+            @Value("${catalog.work-cache.max-bytes:268435456}") long maxBytes,
+            @Value("${catalog.work-cache.refresh-after:PT10M}") Duration refreshAfter,
+            @Value("${catalog.work-cache.expire-after:PT1H}") Duration expireAfter) {
+        this.bodyBlobStore = bodyBlobStore;
+        this.cache = Caffeine.newBuilder()
+            .maximumWeight(maxBytes)
+            .weigher((Integer id, Work work) -> weigh(work))
+            .refreshAfterWrite(refreshAfter)
+            .expireAfterWrite(expireAfter)
+            .recordStats()
+            // 見つからない作品は null で完了させる（キャッシュされない）
+            .buildAsync((id, executor) -> workRepository.findById(id).flatMap(this::attachBody).toFuture());
+        CaffeineCacheMetrics.monitor(meterRegistry, cache.synchronous(), "works");
+    }
+
+    /**
+     * 作品を取得する（キャッシュになければ DB から読み込む）
+     * @return 存在しない作品なら empty
+     */
+    public Mono<Work> get(Integer workId) {
+        return Mono.fromFuture(() -> cache.get(workId));
+    }
+
+    /**
+     * 作品を無効化する（次回アクセス時に DB から読み直す）
+     */
+    public void invalidate(Integer workId) {
+        cache.synchronous().invalidate(workId);
+        log.info("Work cache invalidated: workId={}", workId);
+    }
+
+    public void invalidateAll() {
+        cache.synchronous().invalidateAll();
+        log.info("Work cache invalidated: all");
+    }
+
+    public CacheStats stats() {
+        return cache.synchronous().stats();
+    }
+
+    /**
+     * キャッシュ中の件数 (概算)
+     */
+    public long estimatedSize() {
+        return cache.synchronous().estimatedSize();
+    }
+
+    /**
+     * DB 列に本文がなく、ファイルストアに移行済みなら本文を読み込んで補う
+     * (ストアが使えない・読めない場合は DB 列の値のまま返す)
+     */
+    private Mono<Work> attachBody(Work work) {
+        if (work.getBodyText() != null || work.getBodyRef() == null || !bodyBlobStore.isEnabled()) {
+            return Mono.just(work);
+        }
+        return Mono.fromCallable(() -> bodyBlobStore.read(work.getBodyRef()))
+            .subscribeOn(Schedulers.boundedElastic())
+            .map(text -> {
+                work.setBodyText(text);
+                work.setBodyFromStore(true);
+                return work;
+            })
+            .onErrorResume(e -> {
+                log.warn("Body blob unavailable for workId={}: {}", work.getId(), e.getMessage());
+                return Mono.just(work);
+            });
+    }
+
+    /**
+     * 作品の推定メモリサイズ (バイト)
+     */
+    static int weigh(Work work) {
+        long chars = length(work.getBodyText())
+            + length(work.getSummaryHq())
+            + length(work.getSummary300())
+            + length(work.getSummaryShort())
+            + length(work.getSummaryLong())
+            + length(work.getInsight())
+            + length(work.getCatchphrase())
+            + length(work.getTitle())
+            + length(work.getAuthorName())
+            + length(work.getGenreTag());
+        return (int) Math.min(Integer.MAX_VALUE, chars * BYTES_PER_CHAR + ENTRY_OVERHEAD_BYTES);
+    }
+
+    private static long length(String text) {
+        return text != null ? text.length() : 0;
+    }
+}
@@ -0,0 +1,151 @@
+package jp.smartbrief.billing.catalog.content;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 本文ファイルストア (内容アドレス方式)
+ *
+ * 本文を gzip 圧縮してローカルディスクに保存し、内容の SHA-256 をキー (ref) にします。
+ * 同じ本文は同じファイルになるため、書き込みは冪等で重複も生じません。
+ * - 保存先: {dir}/{ref の先頭2文字}/{ref}.txt.gz
+ * - 読み込み: ファイルをメモリマップして展開（ヒープへのファイル全体のコピーを避ける）
+ * - 配信: 圧縮ファイルをそのまま Content-Encoding: gzip で返す（WebFlux のゼロコピー転送）
+ * catalog.body-store.enabled=false (既定) の場合は使われず、本文は DB 列から読みます。
+ */
+@Slf4j
+@Component
+public class BodyBlobStore {
+
+    private static final Pattern REF_PATTERN = Pattern.compile("[0-9a-f]{64}");
+
+    @Value("${catalog.body-store.enabled:false}")
+    private boolean enabled;
+
+    @Value("${catalog.body-store.dir:/var/lib/smartbrief/bodies}")
+    private String dir;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 本文を保存して ref を返す（同じ内容が保存済みなら書き込まない）
+     */
+    public String write(String text) {
+        byte[] raw = text.getBytes(StandardCharsets.UTF_8);
+        String ref = sha256(raw);
+        Path target = path(ref);
+        if (Files.exists(target)) {
+            return ref;
+        }
+        try {
+            Files.createDirectories(target.getParent());
+            // 一時ファイルに書いてから移動し、読み手が書きかけのファイルを見ないようにする
+            Path tmp = Files.createTempFile(target.getParent(), ref, ".tmp");
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(tmp))) {
+                out.write(raw);
+            }
+            try {
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return ref;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write body blob " + ref, e);
+        }
+    }
+
+    /**
+     * 本文を読み込む（ブロッキング I/O のため boundedElastic などで呼ぶ）
+     */
+    public String read(String ref) {
+        Path file = path(ref);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try (InputStream in = new GZIPInputStream(new ByteBufferInputStream(mapped))) {
+                return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read body blob " + ref, e);
+        }
+    }
+
+    /**
+     * 圧縮済みファイルのパス (存在する場合のみ)
+     */
+    public Path compressedFile(String ref) {
+        Path file = path(ref);
+        return Files.isReadable(file) ? file : null;
+    }
+
+    private Path path(String ref) {
+        if (ref == null || !REF_PATTERN.matcher(ref).matches()) {
+            throw new IllegalArgumentException("Invalid body ref: " + ref);
+        }
+        return Paths.get(dir, ref.substring(0, 2), ref + ".txt.gz");
+    }
+
+    private static String sha256(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * メモリマップしたバッファを InputStream として読む
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package jp.smartbrief.billing.catalog.content;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import jp.smartbrief.billing.catalog.dto.WorkBodyRow;
+import jp.smartbrief.billing.catalog.repository.WorkRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * 本文ファイルストアへの移行コマンド
+ *
+ * アプリを --migrate-bodies 付きで起動すると、works.body_text の内容を
+ * BodyBlobStore に書き出し、body_ref を設定して body_text を NULL にします（読み出しは WorkCache が body_ref から行う）。
+ * 全文 full_text はアプリから読まず、文字数トリガーや取り込みパイプラインが使うため DB に残します。
+ * - work_id のキーセットで少しずつ処理するため、稼働中でも実行できる
+ * - 読み出し後に取り込みパイプラインが本文を更新した行 (updated_at が変わった行) は書き換えない
+ * - 再実行すると、移行後に DB へ戻された本文だけを移し直す
+ * 移行が終わるとそのまま通常どおり起動を続けます。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BodyMigrationRunner implements ApplicationRunner {
+
+    public static final String OPTION = "migrate-bodies";
+
+    private final WorkRepository workRepository;
+    private final BodyBlobStore bodyBlobStore;
+
+    @Value("${catalog.body-store.migration-batch-size:100}")
+    private int batchSize;
+
+    private record BatchResult(int rows, int lastId, long moved) {
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!args.containsOption(OPTION)) {
+            return;
+        }
+        if (!bodyBlobStore.isEnabled()) {
+            log.error("--{} requires catalog.body-store.enabled=true", OPTION);
+            return;
+        }
+        log.info("Body migration started");
+        Long moved = migrateAll().block();
+        log.info("Body migration finished: {} works moved to the body store", moved);
+    }
+
+    /**
+     * 全件を移行する
+     * @return 移行した作品数
+     */
+    public Mono<Long> migrateAll() {
+        return migrateBatch(0)
+            .expand(result -> result.rows() < batchSize ? Mono.empty() : migrateBatch(result.lastId()))
+            .doOnNext(result -> log.info("Body migration progress: up to workId={}", result.lastId()))
+            .map(BatchResult::moved)
+            .reduce(0L, Long::sum);
+    }
+
+    private Mono<BatchResult> migrateBatch(int afterId) {
+        return workRepository.findBodiesAfter(afterId, batchSize)
+            .collectList()
+            .flatMap(rows -> {
+                if (rows.isEmpty()) {
+                    return Mono.just(new BatchResult(0, afterId, 0));
+                }
+                int lastId = rows.get(rows.size() - 1).workId();
+                return Flux.fromIterable(rows)
+                    .concatMap(this::migrateRow)
+                    .reduce(0L, Long::sum)
+                    .map(moved -> new BatchResult(rows.size(), lastId, moved));
+            });
+    }
+
+    private Mono<Long> migrateRow(WorkBodyRow row) {
+        // ファイル書き込みはブロッキングなので専用スレッドで行う
+        return Mono.fromCallable(() -> bodyBlobStore.write(row.bodyText()))
+            .subscribeOn(Schedulers.boundedElastic())
+            .flatMap(ref -> workRepository.moveBodyToStore(row.workId(), ref, row.updatedAt()))
+            .map(updated -> updated > 0 ? 1L : 0L)
+            .onErrorResume(e -> {
+                log.warn("Body migration failed for workId={}: {}", row.workId(), e.getMessage());
+                return Mono.just(0L);
+            });
+    }
+}
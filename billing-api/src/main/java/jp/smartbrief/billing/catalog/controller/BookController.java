@@ -1,27 +1,49 @@
 package jp.smartbrief.billing.catalog.controller;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Objects; // ★必須
 import java.util.stream.Collectors;
 
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
 
+import jp.smartbrief.billing.catalog.domain.UserBookHistory;
 import jp.smartbrief.billing.catalog.domain.UserFavorite;
-import jp.smartbrief.billing.catalog.domain.Work;
+import jp.smartbrief.billing.catalog.domain.WorkSummary;
+import jp.smartbrief.billing.catalog.dto.AuthorSummary;
+import jp.smartbrief.billing.catalog.dto.BodyPage;
 import jp.smartbrief.billing.catalog.dto.BookResponse;
+import jp.smartbrief.billing.catalog.dto.CursorPage;
+import jp.smartbrief.billing.catalog.dto.FacetCount;
+import jp.smartbrief.billing.catalog.dto.FacetPage;
+import jp.smartbrief.billing.catalog.ranking.RankingEngine;
+import jp.smartbrief.billing.catalog.ranking.RankingPeriod;
 import jp.smartbrief.billing.catalog.repository.UserBookHistoryRepository;
 import jp.smartbrief.billing.catalog.repository.UserFavoriteRepository;
 import jp.smartbrief.billing.catalog.repository.WorkRepository;
+import jp.smartbrief.billing.catalog.repository.WorkSummaryRepository;
+import jp.smartbrief.billing.catalog.search.AuthorDirectory;
+import jp.smartbrief.billing.catalog.search.FacetIndex;
+import jp.smartbrief.billing.catalog.search.GenreQuery;
+import jp.smartbrief.billing.catalog.search.SuggestEngine;
+import jp.smartbrief.billing.catalog.service.BookSearchService;
 import jp.smartbrief.billing.catalog.service.BookService;
+import jp.smartbrief.billing.catalog.service.CharRange;
+import jp.smartbrief.billing.catalog.service.WorkBatchLoader;
 import jp.smartbrief.billing.identity.domain.User;
+import jp.smartbrief.billing.payment.entitlement.EntitlementService;
 import jp.smartbrief.billing.shared.dto.UserContext;
 import lombok.RequiredArgsConstructor;
 import reactor.core.publisher.Flux;
@@ -38,71 +60,127 @@ import reactor.core.publisher.Mono;
 public class BookController {
 
     private final WorkRepository workRepository;
+    private final WorkSummaryRepository workSummaryRepository;
     private final UserBookHistoryRepository historyRepository;
     private final UserFavoriteRepository favoriteRepository;
     private final BookService bookService; 
+    private final BookSearchService bookSearchService;
+    private final WorkBatchLoader workBatchLoader;
+    private final SuggestEngine suggestEngine;
+    private final RankingEngine rankingEngine;
+    private final FacetIndex facetIndex;
+    private final AuthorDirectory authorDirectory;
+    private final EntitlementService entitlementService;
 
     // --- 人気ランキングAPI ---
+    // period: daily (今日) / weekly (直近7日) / all (累計・既定)
     @GetMapping("/ranking")
-    public Flux<BookResponse> getRanking(@AuthenticationPrincipal User user) {
-        UserContext context = UserContext.from(user);
+    public Flux<BookResponse> getRanking(
+            @RequestParam(name = "period", required = false) String period,
+            @RequestParam(name = "limit", defaultValue = "10") int limit,
+            @AuthenticationPrincipal User user) {
+        UserContext context = UserContext.from(user, entitlementService);
+        RankingPeriod rankingPeriod = RankingPeriod.from(period);
+        int safeLimit = Math.min(Math.max(limit, 0), 100);
 
-        return historyRepository.findTopBookIds()
-            .collectList()
-            .flatMapMany(ids -> {
-                if (ids.isEmpty()) return Flux.empty();
-                return workRepository.findAllById(ids)
-                    .collectList()
-                    .flatMapMany(works -> {
-                        works.sort(Comparator.comparingInt(w -> ids.indexOf(w.getId())));
-                        return Flux.fromIterable(works);
-                    });
-            })
+        // メモリ上のランキングから返す（起動時の復元が終わるまでは従来の累計集計）
+        Mono<List<Integer>> ids = rankingEngine.isReady()
+            ? Mono.just(rankingEngine.top(rankingPeriod, safeLimit))
+            : historyRepository.findTopBookIds().collectList();
+
+        return ids
+            .flatMapMany(bookSearchService::findAllInOrder)
             .map(work -> BookResponse.from(work, context.isPremium()));
     }
 
     // --- 詳細API ---
+    // body=first-page なら本文は先頭ページのみ返し、続きは本文ページAPIで取得する
     @GetMapping("/{workId}")
     public Mono<ResponseEntity<BookResponse>> getBookDetail(
             @PathVariable Integer workId,
+            @RequestParam(name = "body", required = false) String body,
             @AuthenticationPrincipal User user) {
         
-        UserContext context = UserContext.from(user);
+        UserContext context = UserContext.from(user, entitlementService);
 
         if (!context.isAuthenticated()) {
             return Mono.error(new ResponseStatusException(HttpStatus.UNAUTHORIZED, "ログインしてください"));
         }
         
-        return bookService.getBookDetailWithLimit(Objects.requireNonNull(workId), context, 10)
+        boolean firstPageOnly = "first-page".equals(body);
+        return bookService.getBookDetailWithLimit(Objects.requireNonNull(workId), context, 10, firstPageOnly)
             .map(ResponseEntity::ok);
     }
 
+    // --- 本文ページAPI ---
+    // 詳細APIで閲覧済みの作品のみ取得可（無料会員の閲覧回数は消費しない）
+    @GetMapping("/{workId}/body/pages/{page}")
+    public Mono<BodyPage> getBodyPage(
+            @PathVariable Integer workId,
+            @PathVariable int page,
+            @AuthenticationPrincipal User user) {
+        return bookService.getBodyPage(workId, page, UserContext.from(user, entitlementService));
+    }
+
+    // --- 本文API (Range: chars=START-END で部分取得) ---
+    @GetMapping(value = "/{workId}/body", produces = MediaType.TEXT_PLAIN_VALUE)
+    public Mono<ResponseEntity<String>> getBody(
+            @PathVariable Integer workId,
+            @RequestHeader(name = HttpHeaders.RANGE, required = false) String range,
+            @AuthenticationPrincipal User user) {
+        return bookService.getBodyText(workId, UserContext.from(user, entitlementService))
+            .map(text -> {
+                // Range なし・chars 以外の単位なら全文
+                CharRange charRange = CharRange.parse(range, text).orElse(null);
+                if (charRange == null) {
+                    return ResponseEntity.ok()
+                        .header(HttpHeaders.ACCEPT_RANGES, CharRange.UNIT)
+                        .body(text);
+                }
+                return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                    .header(HttpHeaders.ACCEPT_RANGES, CharRange.UNIT)
+                    .header(HttpHeaders.CONTENT_RANGE, charRange.contentRange(text.length()))
+                    .body(text.substring(charRange.start(), charRange.end()));
+            });
+    }
+
     // --- 閲覧履歴取得API ---
+    // view=card なら履歴に保存済みのタイトル/著者名だけで返す（作品テーブルを引かない）
     @GetMapping("/history")
-    public Flux<BookResponse> getHistory(@AuthenticationPrincipal User user) {
-        UserContext context = UserContext.from(user);
+    public Flux<BookResponse> getHistory(
+            @RequestParam(name = "view", required = false) String view,
+            @AuthenticationPrincipal User user) {
+        UserContext context = UserContext.from(user, entitlementService);
         if (!context.isAuthenticated()) return Flux.error(new ResponseStatusException(HttpStatus.UNAUTHORIZED));
         
-        return historyRepository.findHistoryByUserId(context.userId())
-            .filter(history -> history.getBookId() != null)
-            .flatMap(history -> 
-                workRepository.findById(Objects.requireNonNull(history.getBookId()))
-                    .map(work -> BookResponse.from(work, context.isPremium()))
-            );
+        Flux<UserBookHistory> histories = historyRepository.findHistoryByUserId(context.userId())
+            .filter(history -> history.getBookId() != null);
+        if ("card".equals(view)) {
+            return histories.map(h -> BookResponse.card(h.getBookId(), h.getBookTitle(), h.getAuthorName()));
+        }
+        // 作品は IN 検索でまとめて引き当てる（削除済みの作品は従来どおり表示しない）
+        return workBatchLoader.load(histories, UserBookHistory::getBookId,
+            work -> BookResponse.from(work, context.isPremium()),
+            h -> null);
     }
 
     // --- お気に入り一覧取得API ---
+    // view=card ならお気に入りに保存済みのタイトル/著者名だけで返す（作品テーブルを引かない）
     @GetMapping("/favorites")
-    public Flux<BookResponse> getFavorites(@AuthenticationPrincipal User user) {
-        UserContext context = UserContext.from(user);
+    public Flux<BookResponse> getFavorites(
+            @RequestParam(name = "view", required = false) String view,
+            @AuthenticationPrincipal User user) {
+        UserContext context = UserContext.from(user, entitlementService);
         if (!context.isAuthenticated()) return Flux.error(new ResponseStatusException(HttpStatus.UNAUTHORIZED));
         
-        return favoriteRepository.findByUserIdOrderByCreatedAtDesc(context.userId())
-            .filter(fav -> fav.getBookId() != null)
-            .flatMap(fav -> 
-                workRepository.findById(Objects.requireNonNull(fav.getBookId()))
-                    .map(work -> BookResponse.from(work, context.isPremium()))
-            );
+        Flux<UserFavorite> favorites = favoriteRepository.findByUserIdOrderByCreatedAtDesc(context.userId())
+            .filter(fav -> fav.getBookId() != null);
+        if ("card".equals(view)) {
+            return favorites.map(f -> BookResponse.card(f.getBookId(), f.getBookTitle(), f.getAuthorName()));
+        }
+        return workBatchLoader.load(favorites, UserFavorite::getBookId,
+            work -> BookResponse.from(work, context.isPremium()),
+            f -> null);
     }
 
     // --- お気に入り登録状態チェック ---
@@ -111,7 +189,7 @@ public class BookController {
             @PathVariable Integer workId,
             @AuthenticationPrincipal User user) {
         
-        UserContext context = UserContext.from(user);
+        UserContext context = UserContext.from(user, entitlementService);
         if (!context.isAuthenticated()) return Mono.error(new ResponseStatusException(HttpStatus.UNAUTHORIZED));
         
         return favoriteRepository.existsByUserIdAndBookId(context.userId(), Objects.requireNonNull(workId))
@@ -124,7 +202,7 @@ public class BookController {
             @PathVariable Integer workId,
             @AuthenticationPrincipal User user) {
         
-        UserContext context = UserContext.from(user);
+        UserContext context = UserContext.from(user, entitlementService);
         if (!context.isAuthenticated()) return Mono.error(new ResponseStatusException(HttpStatus.UNAUTHORIZED));
         
         Long userId = context.userId();
@@ -136,7 +214,7 @@ public class BookController {
                     return favoriteRepository.deleteByUserIdAndBookId(userId, safeWorkId)
                             .thenReturn(ResponseEntity.ok(Map.of("isFavorite", false)));
                 } else {
-                    return workRepository.findById(safeWorkId)
+                    return workSummaryRepository.findById(safeWorkId)
                         .flatMap(work -> {
                             Integer bId = work.getId();
                             if (bId == null) return Mono.error(new IllegalStateException("Work ID missing"));
@@ -167,40 +245,141 @@ public class BookController {
             @RequestParam(name = "sort", required = false) String sort,
             @AuthenticationPrincipal User user) {
         
-        UserContext context = UserContext.from(user);
+        UserContext context = UserContext.from(user, entitlementService);
 
-        Flux<Work> worksFlux;
+        Flux<WorkSummary> worksFlux;
         if ("translation".equalsIgnoreCase(type)) {
-            worksFlux = "length_desc".equals(sort) 
-                ? workRepository.findByCategoryOrderByLength("Gutenberg", limit, offset)
-                : workRepository.findByCategory("Gutenberg", limit, offset);
+            worksFlux = bookSearchService.findByCategory("Gutenberg", limit, offset, sort);
         } else {
             if (query == null || query.isEmpty()) return Flux.empty();
-            String searchPattern = "%" + query.trim() + "%";
-            worksFlux = "length_desc".equals(sort)
-                ? workRepository.searchByKeywordOrderByLength(searchPattern, limit, offset)
-                : workRepository.searchByKeyword(searchPattern, limit, offset);
+            worksFlux = bookSearchService.searchByKeyword(query, limit, offset, sort);
         }
         return worksFlux.map(work -> BookResponse.from(work, context.isPremium()));
     }
 
+    // --- 検索API (カーソル方式) ---
+    // cursor パラメータ付きのリクエストはこちらで受ける（先頭ページは cursor= を空で指定）
+    @GetMapping(value = "/search", params = "cursor")
+    public Mono<CursorPage<BookResponse>> searchWithCursor(
+            @RequestParam(name = "q", required = false) String query,
+            @RequestParam(name = "type", required = false) String type,
+            @RequestParam(name = "limit", defaultValue = "50") int limit,
+            @RequestParam(name = "cursor") String cursor,
+            @RequestParam(name = "sort", required = false) String sort,
+            @AuthenticationPrincipal User user) {
+
+        UserContext context = UserContext.from(user, entitlementService);
+
+        Mono<CursorPage<WorkSummary>> page;
+        if ("translation".equalsIgnoreCase(type)) {
+            page = bookSearchService.findByCategoryAfter("Gutenberg", cursor, limit, sort);
+        } else {
+            if (query == null || query.isEmpty()) return Mono.just(new CursorPage<>(List.of(), null));
+            page = bookSearchService.searchByKeywordAfter(query, cursor, limit, sort);
+        }
+        return page.map(p -> p.map(work -> BookResponse.from(work, context.isPremium())));
+    }
+
     // --- ジャンル検索API ---
+    // q: 単一ジャンル (従来互換)、all: すべて含む、any: いずれか含む、not: 含まない (いずれもカンマ区切り可)
     @GetMapping("/search/genre")
     public Flux<BookResponse> searchByGenre(
-            @RequestParam(name = "q") String genre,
+            @RequestParam(name = "q", required = false) String genre,
+            @RequestParam(name = "all", required = false) List<String> all,
+            @RequestParam(name = "any", required = false) List<String> any,
+            @RequestParam(name = "not", required = false) List<String> not,
+            @RequestParam(name = "category", required = false) String category,
             @RequestParam(name = "limit", defaultValue = "50") int limit,
             @RequestParam(name = "offset", defaultValue = "0") int offset,
             @RequestParam(name = "sort", required = false) String sort,
             @AuthenticationPrincipal User user) {
         
-        UserContext context = UserContext.from(user);
-        
-        String searchPattern = "%" + genre.trim() + "%";
-        Flux<Work> worksFlux = "length_desc".equals(sort)
-            ? workRepository.findByGenreTagContainingOrderByLength(searchPattern, limit, offset)
-            : workRepository.findByGenreTagContaining(searchPattern, limit, offset);
+        UserContext context = UserContext.from(user, entitlementService);
+        GenreQuery query = toGenreQuery(genre, all, any, not, category);
+        if (query == null) return Flux.empty();
         
-        return worksFlux.map(work -> BookResponse.from(work, context.isPremium()));
+        return bookSearchService.findByGenre(query, limit, offset, sort).map(work -> BookResponse.from(work, context.isPremium()));
+    }
+
+    // --- ジャンル検索API (カーソル方式) ---
+    @GetMapping(value = "/search/genre", params = "cursor")
+    public Mono<CursorPage<BookResponse>> searchByGenreWithCursor(
+            @RequestParam(name = "q", required = false) String genre,
+            @RequestParam(name = "all", required = false) List<String> all,
+            @RequestParam(name = "any", required = false) List<String> any,
+            @RequestParam(name = "not", required = false) List<String> not,
+            @RequestParam(name = "category", required = false) String category,
+            @RequestParam(name = "limit", defaultValue = "50") int limit,
+            @RequestParam(name = "cursor") String cursor,
+            @RequestParam(name = "sort", required = false) String sort,
+            @AuthenticationPrincipal User user) {
+
+        UserContext context = UserContext.from(user, entitlementService);
+        GenreQuery query = toGenreQuery(genre, all, any, not, category);
+        if (query == null) return Mono.just(new CursorPage<>(List.of(), null));
+
+        return bookSearchService.findByGenreAfter(query, cursor, limit, sort)
+            .map(p -> p.map(work -> BookResponse.from(work, context.isPremium())));
+    }
+
+    // --- ファセット検索API ---
+    // 検索結果 (キーワード・ジャンル条件・カテゴリ・著者の積) と、結果全体のジャンル/著者/カテゴリ別件数を返す
+    @GetMapping("/search/facets")
+    public Mono<FacetPage<BookResponse>> searchWithFacets(
+            @RequestParam(name = "q", required = false) String query,
+            @RequestParam(name = "all", required = false) List<String> all,
+            @RequestParam(name = "any", required = false) List<String> any,
+            @RequestParam(name = "not", required = false) List<String> not,
+            @RequestParam(name = "category", required = false) String category,
+            @RequestParam(name = "author", required = false) String author,
+            @RequestParam(name = "limit", defaultValue = "50") int limit,
+            @RequestParam(name = "offset", defaultValue = "0") int offset,
+            @RequestParam(name = "sort", required = false) String sort,
+            @RequestParam(name = "facetLimit", defaultValue = "20") int facetLimit,
+            @AuthenticationPrincipal User user) {
+
+        UserContext context = UserContext.from(user, entitlementService);
+        String safeCategory = (category == null || category.isBlank()) ? null : category.trim();
+        String safeAuthor = (author == null || author.isBlank()) ? null : author.trim();
+        GenreQuery genreQuery = new GenreQuery(all, any, not, safeCategory);
+
+        return bookSearchService.searchWithFacets(query, genreQuery, safeAuthor, limit, offset, sort, facetLimit)
+            .map(page -> page.map(work -> BookResponse.from(work, context.isPremium())));
+    }
+
+    /**
+     * ジャンル検索のパラメータを組み立てる（q は all の1要素として扱う）
+     * @return 絞り込み条件が1つもなければ null
+     */
+    private static GenreQuery toGenreQuery(String genre, List<String> all, List<String> any, List<String> not, String category) {
+        List<String> required = new ArrayList<>();
+        if (genre != null && !genre.isBlank()) required.add(genre.trim());
+        if (all != null) required.addAll(all);
+        String safeCategory = (category == null || category.isBlank()) ? null : category.trim();
+
+        GenreQuery query = new GenreQuery(required, any, not, safeCategory);
+        boolean hasFilter = !query.all().isEmpty() || !query.any().isEmpty() || query.category() != null;
+        return hasFilter ? query : null;
+    }
+
+    // --- 本文配信API (ファイル配信) ---
+    // ファイルストアに移行済みの本文は gzip ファイルをそのまま (ゼロコピーで) 返す。
+    // Range: bytes=... は圧縮後のバイト列に対して WebFlux が処理する
+    @GetMapping("/{workId}/body/raw")
+    public Mono<ResponseEntity<Resource>> getRawBody(
+            @PathVariable Integer workId,
+            @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            @AuthenticationPrincipal User user) {
+        return bookService.getBodyContent(workId, UserContext.from(user, entitlementService), acceptsGzip(acceptEncoding))
+            .map(content -> {
+                ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                    .contentType(new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8))
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+                if (content.gzip()) {
+                    builder.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+                }
+                return builder.body(content.resource());
+            });
     }
 
     // --- サジェストAPI ---
@@ -208,19 +387,98 @@ public class BookController {
     public Flux<BookResponse> suggest(
             @RequestParam(name = "q") String query,
             @AuthenticationPrincipal User user) {
-        UserContext context = UserContext.from(user);
+        UserContext context = UserContext.from(user, entitlementService);
         if (query == null || query.trim().length() < 2) return Flux.empty();
-        String searchPattern = "%" + query.trim() + "%";
-        return workRepository.searchByKeyword(searchPattern, 10, 0)
-                .map(work -> BookResponse.from(work, context.isPremium()));
+        // メモリ上の補完トライから人気順に返す（DBアクセスなし。初回の全件ロード前のみ従来どおり LIKE 検索する）
+        Flux<WorkSummary> works = suggestEngine.isReady()
+                ? Flux.fromIterable(suggestEngine.suggest(query.trim()))
+                : workSummaryRepository.searchByKeyword("%" + query.trim() + "%", 10, 0);
+        return works.map(work -> BookResponse.from(work, context.isPremium()));
     }
 
     // --- 静的データAPI ---
-    @GetMapping("/authors") public Mono<List<String>> getAuthors() { return workRepository.findTopAuthors().collectList(); }
-    @GetMapping("/authors/all") public Mono<List<String>> getAllAuthors() { return workRepository.findAllAuthors().collectList(); }
+    // 作家一覧はメモリ上の作家名簿から返す（名簿の構築前のみ従来どおり GROUP BY で集計する）
+    @GetMapping("/authors")
+    public Mono<List<String>> getAuthors() {
+        if (authorDirectory.isReady()) return Mono.just(authorNames(authorDirectory.list("count", 20, 0)));
+        return workRepository.findTopAuthors().collectList();
+    }
+
+    @GetMapping("/authors/all")
+    public Mono<List<String>> getAllAuthors() {
+        if (authorDirectory.isReady()) return Mono.just(authorNames(authorDirectory.list("count", Integer.MAX_VALUE, 0)));
+        return workRepository.findAllAuthors().collectList();
+    }
+
+    // --- 作家名簿API (作品数付き・ページング) ---
+    // sort: "name" なら名前順、それ以外は作品数の多い順
+    @GetMapping("/authors/directory")
+    public Mono<List<AuthorSummary>> getAuthorDirectory(
+            @RequestParam(name = "sort", required = false) String sort,
+            @RequestParam(name = "limit", defaultValue = "100") int limit,
+            @RequestParam(name = "offset", defaultValue = "0") int offset) {
+        if (!authorDirectory.isReady()) {
+            return Mono.error(new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "作家名簿を準備中です"));
+        }
+        return Mono.just(authorDirectory.list(sort, limit, offset));
+    }
+
+    // --- 作家別作品一覧API ---
+    @GetMapping("/authors/{authorName}/works")
+    public Flux<BookResponse> getAuthorWorks(
+            @PathVariable String authorName,
+            @RequestParam(name = "limit", defaultValue = "50") int limit,
+            @RequestParam(name = "offset", defaultValue = "0") int offset,
+            @RequestParam(name = "sort", required = false) String sort,
+            @AuthenticationPrincipal User user) {
+        UserContext context = UserContext.from(user, entitlementService);
+        return bookSearchService.findByAuthor(authorName, limit, offset, sort)
+            .map(work -> BookResponse.from(work, context.isPremium()));
+    }
+
+    /**
+     * Accept-Encoding が gzip を受け付けるか (q=0 は拒否。gzip の指定がなければ * に従う)
+     */
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Double gzip = null;
+        Double wildcard = null;
+        for (String token : acceptEncoding.split(",")) {
+            String[] parts = token.split(";");
+            String coding = parts[0].trim().toLowerCase(Locale.ROOT);
+            double q = 1.0;
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim();
+                if (param.length() > 2 && param.regionMatches(true, 0, "q=", 0, 2)) {
+                    try {
+                        q = Double.parseDouble(param.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        q = 0.0; // 解釈できない q は受け付けない扱い
+                    }
+                }
+            }
+            if (coding.equals("gzip") || coding.equals("x-gzip")) {
+                gzip = gzip == null ? q : Math.max(gzip, q);
+            } else if (coding.equals("*")) {
+                wildcard = q;
+            }
+        }
+        Double effective = gzip != null ? gzip : wildcard;
+        return effective != null && effective > 0.0;
+    }
+
+    private static List<String> authorNames(List<AuthorSummary> authors) {
+        return authors.stream().map(AuthorSummary::name).toList();
+    }
     
     @GetMapping("/genres")
     public Mono<List<String>> getAllGenres() {
+        // ファセット索引の件数から返す（索引の構築前のみ従来どおり全行を集計する）
+        if (facetIndex.isReady()) {
+            return Mono.just(facetIndex.topGenres(40).stream().map(FacetCount::value).toList());
+        }
         return workRepository.findAllGenreTags()
             .collectList()
             .map(allTagsList -> {
@@ -0,0 +1,76 @@
+package jp.smartbrief.billing.catalog.controller;
+
+import java.util.Map;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import jp.smartbrief.billing.catalog.cache.WorkCache;
+import jp.smartbrief.billing.catalog.search.CatalogIndexRefresher;
+import jp.smartbrief.billing.shared.security.InternalApiGuard;
+import lombok.RequiredArgsConstructor;
+import reactor.core.publisher.Mono;
+
+/**
+ * カタログキャッシュ管理 API (内部用)
+ *
+ * 取り込みパイプライン (n8n) が作品を更新した直後に呼び出し、
+ * 作品詳細キャッシュの無効化と検索索引の差分取り込みを即時に行います。
+ * X-Internal-Token ヘッダーの共有トークンで認証します。
+ */
+@RestController
+@RequestMapping("/api/v1/internal/catalog")
+@RequiredArgsConstructor
+public class CatalogCacheController {
+
+    private final WorkCache workCache;
+    private final CatalogIndexRefresher catalogIndexRefresher;
+    private final InternalApiGuard internalApiGuard;
+
+    // --- 作品1件の無効化 ---
+    @PostMapping("/works/{workId}/invalidate")
+    public Mono<ResponseEntity<Map<String, Object>>> invalidateWork(
+            @PathVariable Integer workId,
+            @RequestHeader(name = InternalApiGuard.HEADER, required = false) String token) {
+        internalApiGuard.verify(token);
+
+        workCache.invalidate(workId);
+        return catalogIndexRefresher.refreshChanged()
+            .thenReturn(ResponseEntity.ok(Map.<String, Object>of("invalidated", workId)));
+    }
+
+    // --- 全件の無効化 (一括取り込み後など) ---
+    @PostMapping("/works/invalidate-all")
+    public Mono<ResponseEntity<Map<String, Object>>> invalidateAll(
+            @RequestHeader(name = InternalApiGuard.HEADER, required = false) String token) {
+        internalApiGuard.verify(token);
+
+        workCache.invalidateAll();
+        return catalogIndexRefresher.refreshChanged()
+            .thenReturn(ResponseEntity.ok(Map.<String, Object>of("invalidated", "all")));
+    }
+
+    // --- キャッシュ統計 ---
+    @GetMapping("/works/cache-stats")
+    public Mono<Map<String, Object>> cacheStats(
+            @RequestHeader(name = InternalApiGuard.HEADER, required = false) String token) {
+        internalApiGuard.verify(token);
+
+        CacheStats stats = workCache.stats();
+        return Mono.just(Map.<String, Object>of(
+            "size", workCache.estimatedSize(),
+            "hitCount", stats.hitCount(),
+            "missCount", stats.missCount(),
+            "hitRate", stats.hitRate(),
+            "evictionCount", stats.evictionCount(),
+            "evictionWeight", stats.evictionWeight(),
+            "loadFailureCount", stats.loadFailureCount()));
+    }
+}
@@ -0,0 +1,31 @@
+package jp.smartbrief.billing.catalog.domain;
+
+import java.time.LocalDate;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Column;
+import org.springframework.data.relational.core.mapping.Table;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 無料会員の日次閲覧回数エンティティ (DB 共有モード用)
+ *
+ * 主キーは (user_id, quota_date) の複合キーです。
+ * 更新は DailyQuotaRepository の原子的な UPDATE / INSERT でのみ行います。
+ */
+@Table("daily_quota")
+@Data
+@NoArgsConstructor
+public class DailyQuota {
+    @Id
+    @Column("user_id")
+    private Long userId;
+
+    @Column("quota_date")
+    private LocalDate quotaDate; // JST の日付
+
+    @Column("used")
+    private Integer used;
+}
@@ -0,0 +1,35 @@
+package jp.smartbrief.billing.catalog.domain;
+
+import java.time.LocalDate;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Column;
+import org.springframework.data.relational.core.mapping.Table;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 閲覧履歴の日次集計エンティティ
+ *
+ * 圧縮ジョブ (HistoryCompactionJob) が user_book_history の古い行を
+ * (ユーザー, 書籍, 日付) ごとの閲覧数にまとめたものです。
+ * 主キーは (user_id, book_id, view_date) の複合キーです。
+ */
+@Table("user_book_history_daily")
+@Data
+@NoArgsConstructor
+public class UserBookHistoryDaily {
+    @Id
+    @Column("user_id")
+    private Long userId;
+
+    @Column("book_id")
+    private Integer bookId;
+
+    @Column("view_date")
+    private LocalDate viewDate; // viewed_at の JST の日付
+
+    @Column("views")
+    private Long views;
+}
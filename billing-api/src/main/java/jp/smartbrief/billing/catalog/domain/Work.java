@@ -1,6 +1,8 @@
 package jp.smartbrief.billing.catalog.domain;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.ReadOnlyProperty;
+import org.springframework.data.annotation.Transient;
 import org.springframework.data.relational.core.mapping.Column;
 import org.springframework.data.relational.core.mapping.Table;
 
@@ -72,4 +74,18 @@ public class Work {
 
     @Column("body_text")
     private String bodyText;
+
+    // 本文ファイルストアの ref (移行済みの作品のみ。body_text が NULL ならこちらから読む)
+    @Column("body_ref")
+    private String bodyRef;
+
+    // bodyText をファイルストアから読み込んだか (DB には保存しない)
+    @Transient
+    private boolean bodyFromStore;
+
+    // 本文の文字数（文字数順ソート・読了時間の目安用）
+    // DBのトリガーが取り込み時に計算するため、アプリからは書き込まない
+    @ReadOnlyProperty
+    @Column("text_length")
+    private Integer textLength;
 }
\ No newline at end of file
@@ -0,0 +1,102 @@
+package jp.smartbrief.billing.catalog.domain;
+
+import java.time.LocalDateTime;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Column;
+import org.springframework.data.relational.core.mapping.Table;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 書籍サマリー (一覧表示用の読み取りモデル)
+ * 
+ * works テーブルのうち、一覧カードの表示に必要なカラムだけを保持します。
+ * 本文 (body_text) と全文 (full_text) の LONGTEXT は含まないため、
+ * 検索・ジャンル・ランキング・履歴などの一覧系 API はこちらを使用します。
+ * 本文が必要な詳細表示は従来どおり Work を使用してください。
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table("works")
+public class WorkSummary {
+    @Id
+    @Column("work_id")
+    private Integer id;
+
+    private String title;
+
+    @Column("author_name")
+    private String authorName;
+
+    @Column("image_url")
+    private String imageUrl;
+
+    @Column("aozora_url")
+    private String aozoraUrl;
+
+    @Column("summary_300")
+    private String summary300;
+
+    @Column("summary_hq")
+    private String summaryHq;
+
+    @Column("is_hq")
+    private Boolean isHq;
+
+    @Column("catchphrase")
+    private String catchphrase;
+
+    @Column("insight")
+    private String insight;
+
+    @Column("genre_tag")
+    private String genreTag;
+
+    @Column("category")
+    private String category;
+
+    @Column("original_title")
+    private String originalTitle;
+
+    @Column("summary_short")
+    private String summaryShort;
+
+    @Column("summary_long")
+    private String summaryLong;
+
+    @Column("text_length")
+    private Integer textLength;
+
+    @Column("updated_at")
+    private LocalDateTime updatedAt;
+
+    /**
+     * 詳細用エンティティからサマリーを作る（本文は捨てる）
+     */
+    public static WorkSummary of(Work work) {
+        return WorkSummary.builder()
+            .id(work.getId())
+            .title(work.getTitle())
+            .authorName(work.getAuthorName())
+            .imageUrl(work.getImageUrl())
+            .aozoraUrl(work.getAozoraUrl())
+            .summary300(work.getSummary300())
+            .summaryHq(work.getSummaryHq())
+            .isHq(work.getIsHq())
+            .catchphrase(work.getCatchphrase())
+            .insight(work.getInsight())
+            .genreTag(work.getGenreTag())
+            .category(work.getCategory())
+            .originalTitle(work.getOriginalTitle())
+            .summaryShort(work.getSummaryShort())
+            .summaryLong(work.getSummaryLong())
+            .textLength(work.getTextLength())
+            .build();
+    }
+}
@@ -0,0 +1,10 @@
+package jp.smartbrief.billing.catalog.dto;
+
+/**
+ * 作家名簿の1行
+ *
+ * @param name      作家名 (表示用)
+ * @param workCount 収録作品数
+ */
+public record AuthorSummary(String name, int workCount) {
+}
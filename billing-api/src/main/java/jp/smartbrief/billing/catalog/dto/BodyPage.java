@@ -0,0 +1,15 @@
+package jp.smartbrief.billing.catalog.dto;
+
+/**
+ * 本文の1ページ
+ *
+ * @param workId     作品ID
+ * @param page       ページ番号 (1 始まり)
+ * @param pageCount  総ページ数
+ * @param start      このページの開始位置 (本文先頭からの文字数)
+ * @param end        このページの終了位置 (この位置の文字は含まない)
+ * @param totalChars 本文の総文字数
+ * @param text       ページの本文
+ */
+public record BodyPage(int workId, int page, int pageCount, int start, int end, int totalChars, String text) {
+}
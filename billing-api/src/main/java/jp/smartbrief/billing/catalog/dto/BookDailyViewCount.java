@@ -0,0 +1,11 @@
+package jp.smartbrief.billing.catalog.dto;
+
+import java.time.LocalDate;
+
+/**
+ * 書籍ごと・日ごとの閲覧数 (集計クエリの射影)
+ *
+ * ランキングの日次バケットを起動時に復元するための読み取り専用 DTO です。
+ */
+public record BookDailyViewCount(Integer bookId, LocalDate viewDate, Long views) {
+}
@@ -3,13 +3,14 @@ package jp.smartbrief.billing.catalog.dto;
 import com.fasterxml.jackson.annotation.JsonProperty; // 追加
 
 import jp.smartbrief.billing.catalog.domain.Work;
+import jp.smartbrief.billing.catalog.domain.WorkSummary;
 import lombok.Data;
 
 /**
  * 書籍レスポンス DTO (Data Transfer Object)
  * 
  * クライアント（Web/LINE）に返す書籍情報です。
- * Work エンティティから変換され、プレミアム状態に応じて
+ * WorkSummary (一覧) / Work (詳細) から変換され、プレミアム状態に応じて
  * 表示内容が制御される書籍データを保持します。
  */
 @Data
@@ -43,15 +44,31 @@ public class BookResponse {
     private String category;      
     private String originalTitle; 
     private String bodyText;      
+    private Integer bodyPageCount;   // 本文の総ページ数 (先頭ページのみ返す場合にセット)
+    private Integer bodyTotalChars;  // 本文の総文字数 (同上)
+
+    // --- 本文の分量 ---
+    private Integer textLength;      // 本文の文字数 (未計算の作品は null)
+    private Integer readingMinutes;  // 読了時間の目安 (分)
 
     // ★ Web版が「生のデータ」を使っている場合の保険として、これらもJSONに含めておきます
     private String summaryHq;
     private String summary300;
 
+    /**
+     * 詳細用エンティティからの変換（本文は含めない。必要なら呼び出し側でセットする）
+     */
     public static BookResponse from(Work work, boolean isPremiumUser) {
         if (work == null) {
             return null;
         }
+        return from(WorkSummary.of(work), isPremiumUser);
+    }
+
+    public static BookResponse from(WorkSummary work, boolean isPremiumUser) {
+        if (work == null) {
+            return null;
+        }
 
         BookResponse dto = new BookResponse();
         
@@ -76,6 +93,8 @@ public class BookResponse {
         dto.setCategory(cat != null ? cat : "AOZORA");
         dto.setOriginalTitle(cleanText(work.getOriginalTitle()));
         dto.setBodyText(null); // ★ 一覧では本文を返さない（軽量化）
+        dto.setTextLength(work.getTextLength());
+        dto.setReadingMinutes(estimateReadingMinutes(work.getTextLength()));
 
         boolean isGutenberg = "Gutenberg".equalsIgnoreCase(cat) || "TRANSLATION".equalsIgnoreCase(cat);
         dto.setOverseas(isGutenberg);
@@ -120,6 +139,30 @@ public class BookResponse {
         return dto;
     }
 
+    /**
+     * 履歴・お気に入りに保存済みのタイトル/著者名だけで作るカード
+     * (作品テーブルを引かない軽量表示や、作品が削除済みの場合に使う)
+     */
+    public static BookResponse card(Integer id, String title, String authorName) {
+        BookResponse dto = new BookResponse();
+        dto.setId(id);
+        dto.setTitle(title != null ? title : "");
+        dto.setAuthorName(authorName != null ? authorName : "");
+        dto.setImageUrl("");
+        return dto;
+    }
+
+    // 日本語の平均的な黙読速度 (文字/分)
+    private static final int CHARS_PER_MINUTE = 500;
+
+    /**
+     * 文字数から読了時間 (分) を見積もる。1分未満は1分に切り上げる
+     */
+    static Integer estimateReadingMinutes(Integer textLength) {
+        if (textLength == null || textLength <= 0) return null;
+        return Math.max(1, (textLength + CHARS_PER_MINUTE - 1) / CHARS_PER_MINUTE);
+    }
+
     private static String cleanText(String text) {
         if (text == null) return null;
         if (text.contains("[object Object]")) return null;
@@ -0,0 +1,9 @@
+package jp.smartbrief.billing.catalog.dto;
+
+/**
+ * 書籍ごとの閲覧数 (集計クエリの射影)
+ *
+ * user_book_history を book_id で集計した結果を受け取るための読み取り専用 DTO です。
+ */
+public record BookViewCount(Integer bookId, Long views) {
+}
@@ -0,0 +1,17 @@
+package jp.smartbrief.billing.catalog.dto;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * カーソル方式ページング結果
+ *
+ * 一覧 (items) と、次ページ取得用の不透明なカーソル (nextCursor) を返します。
+ * nextCursor が null の場合は最終ページです。
+ */
+public record CursorPage<T>(List<T> items, String nextCursor) {
+
+    public <R> CursorPage<R> map(Function<T, R> mapper) {
+        return new CursorPage<>(items.stream().map(mapper).toList(), nextCursor);
+    }
+}
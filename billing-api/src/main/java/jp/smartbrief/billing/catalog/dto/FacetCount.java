@@ -0,0 +1,10 @@
+package jp.smartbrief.billing.catalog.dto;
+
+/**
+ * ファセットの値ごとの件数
+ *
+ * @param value 表示用の値 (ジャンル名・著者名・カテゴリ)
+ * @param count 現在の検索結果に含まれる件数
+ */
+public record FacetCount(String value, int count) {
+}
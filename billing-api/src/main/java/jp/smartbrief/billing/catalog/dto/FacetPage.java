@@ -0,0 +1,22 @@
+package jp.smartbrief.billing.catalog.dto;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * ファセット検索結果
+ *
+ * 1ページ分の一覧 (items) と検索結果全体の件数 (total)、
+ * 検索結果全体に対するジャンル・著者・カテゴリごとの件数を返します。
+ */
+public record FacetPage<T>(
+    List<T> items,
+    int total,
+    List<FacetCount> genres,
+    List<FacetCount> authors,
+    List<FacetCount> categories) {
+
+    public <R> FacetPage<R> map(Function<T, R> mapper) {
+        return new FacetPage<>(items.stream().map(mapper).toList(), total, genres, authors, categories);
+    }
+}
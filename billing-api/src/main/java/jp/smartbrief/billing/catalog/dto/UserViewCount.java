@@ -0,0 +1,9 @@
+package jp.smartbrief.billing.catalog.dto;
+
+/**
+ * ユーザーごとの閲覧数 (集計クエリの射影)
+ *
+ * 日次閲覧回数カウンタを起動時に復元するための読み取り専用 DTO です。
+ */
+public record UserViewCount(Long userId, Long views) {
+}
@@ -0,0 +1,9 @@
+package jp.smartbrief.billing.catalog.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * 作品の本文列 (本文ファイルストアへの移行用の射影)
+ */
+public record WorkBodyRow(Integer workId, String bodyText, LocalDateTime updatedAt) {
+}
@@ -0,0 +1,103 @@
+package jp.smartbrief.billing.catalog.history;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 重複閲覧の判定ウィンドウ (タイミングホイール)
+ *
+ * (ユーザー, 書籍) ごとに「この時刻までは重複とみなす」期限を保持します。
+ * 期限切れのキーは、1秒刻みのスロットを持つホイールを毎秒1つずつ進めて掃除するため、
+ * 全件を走査せずにメモリを一定に保てます。
+ */
+final class DedupeWindow {
+
+    record ViewKey(long userId, int bookId) {
+    }
+
+    private final int windowSeconds;
+    private final Map<ViewKey, Long> expiresAt = new ConcurrentHashMap<>();
+    // スロット数は windowSeconds + 1（登録した秒と期限の秒が同じスロットにならないようにする）
+    private final List<Set<ViewKey>> wheel;
+    private long sweptUpTo;
+
+    DedupeWindow(int windowSeconds, long nowSeconds) {
+        this.windowSeconds = windowSeconds;
+        this.wheel = new ArrayList<>(windowSeconds + 1);
+        for (int i = 0; i <= windowSeconds; i++) {
+            wheel.add(ConcurrentHashMap.newKeySet());
+        }
+        this.sweptUpTo = nowSeconds;
+    }
+
+    /**
+     * ウィンドウ内に同じ閲覧がなければ登録する
+     * @return 登録した (重複でない) なら true
+     */
+    boolean tryMark(long userId, int bookId, long nowSeconds) {
+        ViewKey key = new ViewKey(userId, bookId);
+        boolean[] marked = {false};
+        expiresAt.compute(key, (k, expiry) -> {
+            if (expiry != null && expiry > nowSeconds) {
+                return expiry;
+            }
+            marked[0] = true;
+            return nowSeconds + windowSeconds;
+        });
+        if (marked[0]) {
+            wheel.get(slot(nowSeconds + windowSeconds)).add(key);
+        }
+        return marked[0];
+    }
+
+    /**
+     * tryMark で付けた印を取り消す（記録に失敗したとき、次の閲覧を重複扱いにしない）
+     * その後に付け直された印 (期限が異なる) は残します。ホイール上のキーは advance で外れます。
+     * @param markedAt tryMark に渡した時刻
+     */
+    void unmark(long userId, int bookId, long markedAt) {
+        expiresAt.remove(new ViewKey(userId, bookId), markedAt + windowSeconds);
+    }
+
+    /**
+     * ウィンドウ内に閲覧があるか
+     */
+    boolean contains(long userId, int bookId, long nowSeconds) {
+        Long expiry = expiresAt.get(new ViewKey(userId, bookId));
+        return expiry != null && expiry > nowSeconds;
+    }
+
+    int size() {
+        return expiresAt.size();
+    }
+
+    /**
+     * ホイールを現在時刻まで進め、期限切れのキーを外す（1秒ごとに呼ぶ）
+     */
+    synchronized void advance(long nowSeconds) {
+        long from = Math.max(sweptUpTo + 1, nowSeconds - windowSeconds);
+        for (long second = from; second <= nowSeconds; second++) {
+            int slot = slot(second);
+            Set<ViewKey> keys = wheel.get(slot);
+            keys.removeIf(key -> {
+                Long expiry = expiresAt.get(key);
+                if (expiry == null || expiry <= nowSeconds) {
+                    if (expiry != null) {
+                        expiresAt.remove(key, expiry);
+                    }
+                    return true;
+                }
+                // 登録し直されたキーは期限のスロットに入っているので、このスロットからは外す
+                return slot(expiry) != slot;
+            });
+        }
+        sweptUpTo = nowSeconds;
+    }
+
+    private int slot(long second) {
+        return (int) Math.floorMod(second, (long) wheel.size());
+    }
+}
@@ -0,0 +1,126 @@
+package jp.smartbrief.billing.catalog.history;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.reactive.TransactionalOperator;
+
+import jp.smartbrief.billing.catalog.repository.UserBookHistoryDailyRepository;
+import jp.smartbrief.billing.catalog.repository.UserBookHistoryRepository;
+import jp.smartbrief.billing.catalog.service.DailyQuotaService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+/**
+ * 閲覧履歴の圧縮ジョブ
+ *
+ * user_book_history は閲覧1回につき1行ずつ増え続けるため、夜間に次の2段階で小さく保ちます。
+ * 1. raw-retention-days より古い行を (ユーザー, 書籍, JST の日付) ごとの閲覧数として
+ *    user_book_history_daily に加算し、元の行を削除する
+ * 2. 生の行が keep-per-user 件を超えるユーザーは、新しい keep-per-user 件だけを残して同様にまとめる
+ * いずれも今日 (JST) の行は対象外です（日次閲覧回数と本文の閲覧権限の判定に使うため）。
+ * 加算と削除は同じ id 範囲を1つのトランザクションで行うので、途中で止まっても二重に数えません。
+ * ランキングの集計は生の行と日次集計を合算して読みます。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class HistoryCompactionJob {
+
+    private final UserBookHistoryRepository historyRepository;
+    private final UserBookHistoryDailyRepository dailyRepository;
+    private final TransactionalOperator transactionalOperator;
+
+    @Value("${catalog.history.compaction.enabled:true}")
+    private boolean enabled;
+
+    // 生の行を残す日数（これより古い行は日次集計にまとめる）
+    @Value("${catalog.history.compaction.raw-retention-days:30}")
+    private int rawRetentionDays;
+
+    // ユーザーごとに残す生の行数（履歴画面に出す件数）
+    @Value("${catalog.history.compaction.keep-per-user:200}")
+    private int keepPerUser;
+
+    // 1トランザクションで処理する行数
+    @Value("${catalog.history.compaction.batch-size:5000}")
+    private int batchSize;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    private record Batch(long upToId, long deleted) {
+    }
+
+    @Scheduled(cron = "${catalog.history.compaction.cron:0 30 3 * * *}", zone = "Asia/Tokyo")
+    public Mono<Void> scheduledCompaction() {
+        if (!enabled) {
+            return Mono.empty();
+        }
+        return compact()
+            .doOnError(e -> log.warn("History compaction failed: {}", e.getMessage()))
+            .onErrorResume(e -> Mono.empty())
+            .then();
+    }
+
+    /**
+     * 圧縮を1回実行する（実行中なら何もしない）
+     * @return 日次集計にまとめて削除した行数
+     */
+    public Mono<Long> compact() {
+        if (!running.compareAndSet(false, true)) {
+            return Mono.just(0L);
+        }
+        LocalDateTime todayStart = DailyQuotaService.todayStart();
+        LocalDateTime cutoff = todayStart.minusDays(Math.max(rawRetentionDays, 0));
+        long start = System.currentTimeMillis();
+
+        return rollupOlderThan(cutoff)
+            .flatMap(aged -> trimUsers(todayStart).map(trimmed -> {
+                log.info("History compaction finished: {} aged rows, {} rows over per-user limit ({} ms)",
+                    aged, trimmed, System.currentTimeMillis() - start);
+                return aged + trimmed;
+            }))
+            .doFinally(signal -> running.set(false));
+    }
+
+    // --- Private Methods ---
+
+    /**
+     * cutoff より前の行を id のキーセットで batch-size 件ずつまとめる
+     */
+    private Mono<Long> rollupOlderThan(LocalDateTime cutoff) {
+        return rollupBatch(0L, cutoff)
+            .expand(batch -> batch.upToId() == 0 ? Mono.empty() : rollupBatch(batch.upToId(), cutoff))
+            .map(Batch::deleted)
+            .reduce(0L, Long::sum);
+    }
+
+    private Mono<Batch> rollupBatch(long afterId, LocalDateTime cutoff) {
+        return historyRepository.findCompactionUpperId(afterId, cutoff, batchSize)
+            .flatMap(upToId -> upToId == 0
+                ? Mono.just(new Batch(0, 0))
+                : dailyRepository.rollupRange(afterId, upToId, cutoff, DailyQuotaService.localOffset())
+                    .then(historyRepository.deleteRange(afterId, upToId, cutoff))
+                    .as(transactionalOperator::transactional)
+                    .map(deleted -> new Batch(upToId, deleted)));
+    }
+
+    /**
+     * 生の行が多すぎるユーザーの古い行をまとめる（1ユーザー1トランザクション）
+     */
+    private Mono<Long> trimUsers(LocalDateTime before) {
+        return historyRepository.findUsersWithMoreThan(keepPerUser)
+            .concatMap(userId -> historyRepository.findTrimUpperId(userId, keepPerUser)
+                .flatMap(upToId -> upToId == 0
+                    ? Mono.just(0)
+                    : dailyRepository.rollupUser(userId, upToId, before, DailyQuotaService.localOffset())
+                        .then(historyRepository.deleteUserUpTo(userId, upToId, before))
+                        .as(transactionalOperator::transactional)))
+            .map(Integer::longValue)
+            .reduce(0L, Long::sum);
+    }
+}
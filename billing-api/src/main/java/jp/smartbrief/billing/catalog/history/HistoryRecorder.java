@@ -0,0 +1,294 @@
+package jp.smartbrief.billing.catalog.history;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import jp.smartbrief.billing.catalog.domain.UserBookHistory;
+import jp.smartbrief.billing.catalog.repository.UserBookHistoryRepository;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+/**
+ * 閲覧履歴のライトビハインド記録
+ *
+ * 詳細表示のたびに「直近履歴の SELECT → 1行 INSERT」を往復していたのをやめ、
+ * 1. 60秒以内の重複閲覧はメモリ上のウィンドウ (DedupeWindow) で判定
+ * 2. 履歴は上限付きキューに積んで即座に返す（レスポンスは履歴の I/O を待たない）
+ * 3. 件数 (batch-size) か時間 (flush-interval-ms) で、複数行 INSERT 1回にまとめて書き込む
+ * 4. キューが満杯のときはその行だけ同期で書き込み、溢れた件数をメトリクスに残す (書けなければ重複判定の印も外す)
+ *    (まとめての INSERT が再試行しても失敗したときも、同じく1行ずつ書く。書けなかった行はキューに戻す)
+ * 5. シャットダウン時は実行中の flush の完了を待ってから、キューに残った履歴を書き切る
+ * メトリクス: history.write_behind.* (queue.size / enqueued / deduplicated / overflow / flushed / requeued / failed / flush)
+ */
+@Slf4j
+@Component
+public class HistoryRecorder {
+
+    private final DatabaseClient databaseClient;
+    private final UserBookHistoryRepository historyRepository;
+    private final int batchSize;
+    private final Duration shutdownTimeout;
+
+    private final BlockingQueue<UserBookHistory> queue;
+    private final DedupeWindow dedupeWindow;
+    private final AtomicBoolean flushing = new AtomicBoolean(false);
+    // 実行中の flush が終わると開く (シャットダウン時に待つ)
+    private volatile CountDownLatch flushDone = new CountDownLatch(0);
+    private volatile boolean stopping = false;
+
+    private final Counter enqueued;
+    private final Counter deduplicated;
+    private final Counter overflow;
+    private final Counter flushed;
+    private final Counter requeued;
+    private final Counter failed;
+    private final Timer flushTimer;
+
+    public HistoryRecorder(
+            DatabaseClient databaseClient,
+            UserBookHistoryRepository historyRepository,
+            MeterRegistry meterRegistry,
+            @Value("${catalog.history.batch-size:200}") int batchSize,
+            @Value("${catalog.history.queue-capacity:10000}") int queueCapacity,
+            @Value("${catalog.history.dedupe-window-seconds:60}") int dedupeWindowSeconds,
+            @Value("${catalog.history.shutdown-timeout:PT10S}") Duration shutdownTimeout) {
+        this.databaseClient = databaseClient;
+        this.historyRepository = historyRepository;
+        this.batchSize = batchSize;
+        this.shutdownTimeout = shutdownTimeout;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.dedupeWindow = new DedupeWindow(dedupeWindowSeconds, nowSeconds());
+
+        Gauge.builder("history.write_behind.queue.size", queue, BlockingQueue::size).register(meterRegistry);
+        Gauge.builder("history.write_behind.dedupe.size", dedupeWindow, DedupeWindow::size).register(meterRegistry);
+        this.enqueued = meterRegistry.counter("history.write_behind.enqueued");
+        this.deduplicated = meterRegistry.counter("history.write_behind.deduplicated");
+        this.overflow = meterRegistry.counter("history.write_behind.overflow");
+        this.flushed = meterRegistry.counter("history.write_behind.flushed");
+        this.requeued = meterRegistry.counter("history.write_behind.requeued");
+        this.failed = meterRegistry.counter("history.write_behind.failed");
+        this.flushTimer = meterRegistry.timer("history.write_behind.flush");
+    }
+
+    /**
+     * 閲覧を記録する（直近の重複閲覧なら記録しない）
+     * @return 記録した (重複でない) なら true
+     */
+    public Mono<Boolean> record(Long userId, Integer bookId, String title, String authorName) {
+        long now = nowSeconds();
+        if (!dedupeWindow.tryMark(userId, bookId, now)) {
+            deduplicated.increment();
+            return Mono.just(false);
+        }
+        UserBookHistory history = new UserBookHistory();
+        history.setUserId(userId);
+        history.setBookId(bookId);
+        history.setBookTitle(title);
+        history.setAuthorName(authorName);
+        history.setViewedAt(LocalDateTime.now());
+
+        if (queue.offer(history)) {
+            enqueued.increment();
+            if (queue.size() >= batchSize) {
+                flush().subscribe();
+            }
+            return Mono.just(true);
+        }
+        // キューが満杯: 取りこぼさないよう、この行だけは呼び出し元を待たせて直接書く
+        // 書けなかったときは印を外す (閲覧したことにならず、閲覧上限の判定や viewedRecently に残さない)
+        overflow.increment();
+        return historyRepository.save(history)
+            .doOnError(e -> dedupeWindow.unmark(userId, bookId, now))
+            .thenReturn(true);
+    }
+
+    /**
+     * 直近 (重複判定ウィンドウ内) にこの本を開いたか（未書き込みの履歴も含めて判定できる）
+     */
+    public boolean viewedRecently(Long userId, Integer bookId) {
+        return dedupeWindow.contains(userId, bookId, nowSeconds());
+    }
+
+    // --- 定期処理 ---
+
+    @Scheduled(fixedRate = 1000)
+    public void advanceDedupeWindow() {
+        dedupeWindow.advance(nowSeconds());
+    }
+
+    @Scheduled(fixedDelayString = "${catalog.history.flush-interval-ms:1000}")
+    public Mono<Void> scheduledFlush() {
+        return flush();
+    }
+
+    /**
+     * キューの先頭から最大 batch-size 件を1回の INSERT で書き込む
+     * (同時に1つだけ実行し、書き込み後も batch-size 以上残っていれば続けて書く)
+     */
+    public Mono<Void> flush() {
+        if (stopping || queue.isEmpty() || !flushing.compareAndSet(false, true)) {
+            return Mono.empty();
+        }
+        CountDownLatch done = new CountDownLatch(1);
+        flushDone = done;
+        List<UserBookHistory> batch = new ArrayList<>(batchSize);
+        queue.drainTo(batch, batchSize);
+        long start = System.nanoTime();
+        AtomicBoolean batchFailed = new AtomicBoolean(false);
+        return insertBatch(batch)
+            .doOnSuccess(rows -> flushed.increment(batch.size()))
+            .then()
+            .onErrorResume(e -> {
+                batchFailed.set(true);
+                log.warn("History batch insert failed, saving {} rows one by one: {}", batch.size(), e.getMessage());
+                return saveEach(batch);
+            })
+            .doFinally(signal -> {
+                flushTimer.record(Duration.ofNanos(System.nanoTime() - start));
+                flushing.set(false);
+                done.countDown();
+                // 失敗した直後は続けて書かず、次の定期 flush まで待つ
+                if (!stopping && !batchFailed.get() && queue.size() >= batchSize) {
+                    flush().subscribe();
+                }
+            })
+            .then();
+    }
+
+    /**
+     * シャットダウン時にキューを書き切る
+     */
+    @PreDestroy
+    public void flushOnShutdown() {
+        stopping = true;
+        long deadline = System.nanoTime() + shutdownTimeout.toNanos();
+        // 実行中の flush が取り出した行を書き終えるまで待ち、以降は非同期の flush を始めさせない
+        if (!acquireFlush(deadline)) {
+            log.warn("History flush on shutdown timed out waiting for in-flight flush: {} rows dropped", queue.size());
+            return;
+        }
+        while (!queue.isEmpty() && System.nanoTime() < deadline) {
+            List<UserBookHistory> batch = new ArrayList<>(batchSize);
+            queue.drainTo(batch, batchSize);
+            try {
+                insertBatch(batch).block(Duration.ofNanos(Math.max(deadline - System.nanoTime(), 0)));
+                flushed.increment(batch.size());
+            } catch (RuntimeException e) {
+                // 1行ずつ書き、書けなかった行はキューに戻して期限まで再試行する
+                log.warn("History flush on shutdown failed, saving {} rows one by one: {}", batch.size(), e.getMessage());
+                try {
+                    saveEach(batch).block(Duration.ofNanos(Math.max(deadline - System.nanoTime(), 0)));
+                } catch (RuntimeException timeout) {
+                    log.warn("History flush on shutdown timed out while saving rows one by one");
+                }
+            }
+        }
+        if (!queue.isEmpty()) {
+            log.warn("History flush on shutdown timed out: {} rows dropped", queue.size());
+        }
+    }
+
+    // --- Private Methods ---
+
+    /**
+     * 1行ずつ書く (キューが溢れたときと同じ経路)
+     * 書けなかった行はキューに戻して次の flush で再試行し、制約違反の行とキューに戻せない行だけを捨てる
+     */
+    private Mono<Void> saveEach(List<UserBookHistory> batch) {
+        AtomicInteger retried = new AtomicInteger();
+        AtomicInteger dropped = new AtomicInteger();
+        return Flux.fromIterable(batch)
+            .concatMap(history -> historyRepository.save(history)
+                .doOnSuccess(saved -> flushed.increment())
+                .then()
+                .onErrorResume(e -> {
+                    if (!(e instanceof DataIntegrityViolationException) && queue.offer(history)) {
+                        retried.incrementAndGet();
+                    } else {
+                        dropped.incrementAndGet();
+                        log.error("History row dropped: userId={}, bookId={}, error={}",
+                            history.getUserId(), history.getBookId(), e.getMessage());
+                    }
+                    return Mono.empty();
+                }))
+            .then(Mono.fromRunnable(() -> {
+                requeued.increment(retried.get());
+                failed.increment(dropped.get());
+                if (retried.get() > 0) {
+                    log.warn("History rows requeued after failed save: {}", retried.get());
+                }
+            }));
+    }
+
+    private boolean acquireFlush(long deadline) {
+        while (!flushing.compareAndSet(false, true)) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            try {
+                if (flushDone.await(remaining, TimeUnit.NANOSECONDS)) {
+                    Thread.onSpinWait(); // flush 開始直後でラッチがまだ差し替わっていない間
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 複数行 INSERT (一時的な失敗は少し待って再試行する)
+     */
+    private Mono<Long> insertBatch(List<UserBookHistory> batch) {
+        if (batch.isEmpty()) {
+            return Mono.just(0L);
+        }
+        StringBuilder sql = new StringBuilder(
+            "INSERT INTO user_book_history (user_id, book_id, book_title, author_name, viewed_at) VALUES ");
+        for (int i = 0; i < batch.size(); i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append("(:u").append(i).append(", :b").append(i).append(", :t").append(i)
+               .append(", :a").append(i).append(", :v").append(i).append(')');
+        }
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(sql.toString());
+        for (int i = 0; i < batch.size(); i++) {
+            UserBookHistory history = batch.get(i);
+            spec = spec.bind("u" + i, history.getUserId())
+                .bind("b" + i, history.getBookId())
+                .bind("v" + i, history.getViewedAt());
+            spec = history.getBookTitle() != null ? spec.bind("t" + i, history.getBookTitle()) : spec.bindNull("t" + i, String.class);
+            spec = history.getAuthorName() != null ? spec.bind("a" + i, history.getAuthorName()) : spec.bindNull("a" + i, String.class);
+        }
+        return spec.fetch().rowsUpdated()
+            .retryWhen(Retry.backoff(2, Duration.ofMillis(200)));
+    }
+
+    private static long nowSeconds() {
+        return System.currentTimeMillis() / 1000;
+    }
+}
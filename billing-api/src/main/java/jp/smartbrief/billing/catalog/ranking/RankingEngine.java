@@ -0,0 +1,243 @@
+package jp.smartbrief.billing.catalog.ranking;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import jp.smartbrief.billing.catalog.repository.UserBookHistoryRepository;
+import jp.smartbrief.billing.catalog.service.DailyQuotaService;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+/**
+ * 閲覧ランキングエンジン
+ *
+ * 閲覧履歴の書き込みごとに、書籍ごとの累計カウンタと日次バケット (直近8日分のリング) を加算し、
+ * 今日・直近7日・累計のランキングをメモリ上から返します。
+ * 上位 K 件はサイズ K の最小ヒープで選ぶため、全件ソートは行いません。
+ * 起動時に user_book_history から一度だけ集計して復元します。
+ * 日付の区切りは無料会員の閲覧上限と同じ JST です (viewed_at はサーバーのローカル時刻なので JST の日付に直して数える)。
+ */
+@Slf4j
+@Component
+public class RankingEngine {
+
+    // 日次バケットのリング長（週間 = 7日分 + 日付が変わる瞬間の余裕1日）
+    private static final int BUCKETS = 8;
+
+    private final UserBookHistoryRepository historyRepository;
+    private final long cacheTtlMillis;
+
+    private final Map<Integer, LongAdder> allTime = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<DayBucket> days = new AtomicReferenceArray<>(BUCKETS);
+
+    // 直近に計算したランキング（閲覧のたびに計算し直さないよう短時間キャッシュする）
+    private final Map<RankingPeriod, Snapshot> snapshots = new EnumMap<>(RankingPeriod.class);
+
+    private volatile boolean ready;
+    private final Sinks.Empty<Void> readySignal = Sinks.empty();
+
+    public RankingEngine(
+            UserBookHistoryRepository historyRepository,
+            @Value("${catalog.ranking.cache-ttl-ms:5000}") long cacheTtlMillis) {
+        this.historyRepository = historyRepository;
+        this.cacheTtlMillis = cacheTtlMillis;
+    }
+
+    /**
+     * 起動時の復元が完了しているか（未完了の間は呼び出し側で SQL にフォールバックする）
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 起動時の復元が完了したら完了する Mono（復元後に作り直したい索引が購読する）
+     */
+    public Mono<Void> whenReady() {
+        return readySignal.asMono();
+    }
+
+    /**
+     * 閲覧を1件記録する（閲覧履歴の保存と同時に呼ぶ）
+     */
+    public void record(int bookId, LocalDateTime viewedAt) {
+        add(bookId, jstDate(viewedAt), 1);
+    }
+
+    /**
+     * ランキング上位の書籍ID
+     * @return 閲覧数の多い順 (同数は book_id 昇順)
+     */
+    public List<Integer> top(RankingPeriod period, int k) {
+        long now = System.currentTimeMillis();
+        Snapshot cached;
+        synchronized (snapshots) {
+            cached = snapshots.get(period);
+        }
+        if (cached != null && cached.k >= k && now - cached.computedAt < cacheTtlMillis) {
+            return cached.bookIds.subList(0, Math.min(k, cached.bookIds.size()));
+        }
+        List<Integer> ids = topK(counts(period), k);
+        synchronized (snapshots) {
+            snapshots.put(period, new Snapshot(ids, k, now));
+        }
+        return ids;
+    }
+
+    /**
+     * 書籍の累計閲覧数（サジェストの人気順に使う）
+     */
+    public long allTimeViews(int bookId) {
+        LongAdder adder = allTime.get(bookId);
+        return adder != null ? adder.sum() : 0L;
+    }
+
+    // --- 起動時の復元 ---
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        rebuild().subscribe();
+    }
+
+    /**
+     * user_book_history から累計と直近の日次件数を読み込む
+     * 読み込み中に記録された閲覧と二重に数えないよう、開始時刻より前の行だけを集計して加算する
+     */
+    public Mono<Void> rebuild() {
+        LocalDateTime until = LocalDateTime.now();
+        LocalDateTime since = DailyQuotaService.todayStart().minusDays(BUCKETS - 1);
+
+        Mono<Void> totals = historyRepository.findViewCountsBefore(until)
+            .filter(count -> count.bookId() != null && count.views() != null)
+            .doOnNext(count -> allTime.computeIfAbsent(count.bookId(), k -> new LongAdder()).add(count.views()))
+            .then();
+        Mono<Void> daily = historyRepository.findDailyViewCounts(since, until, DailyQuotaService.localOffset())
+            .filter(count -> count.bookId() != null && count.viewDate() != null && count.views() != null)
+            .doOnNext(count -> addToDay(count.bookId(), count.viewDate(), count.views()))
+            .then();
+
+        return totals.then(daily)
+            .doOnSuccess(v -> {
+                ready = true;
+                readySignal.tryEmitEmpty();
+                log.info("Ranking engine restored: {} books", allTime.size());
+            })
+            .doOnError(e -> log.warn("Ranking engine restore failed: {}", e.getMessage()))
+            .onErrorResume(e -> Mono.empty());
+    }
+
+    // --- Private Methods ---
+
+    private void add(int bookId, LocalDate day, long views) {
+        allTime.computeIfAbsent(bookId, k -> new LongAdder()).add(views);
+        addToDay(bookId, day, views);
+    }
+
+    private void addToDay(int bookId, LocalDate day, long views) {
+        DayBucket bucket = bucket(day.toEpochDay());
+        if (bucket != null) {
+            bucket.counts.computeIfAbsent(bookId, k -> new LongAdder()).add(views);
+        }
+    }
+
+    /**
+     * 指定日のバケットを返す（リングの枠が古い日のものなら新しい日で置き換える）
+     * @return リングより古い日なら null
+     */
+    private DayBucket bucket(long epochDay) {
+        int slot = (int) Math.floorMod(epochDay, (long) BUCKETS);
+        while (true) {
+            DayBucket current = days.get(slot);
+            if (current != null && current.epochDay == epochDay) {
+                return current;
+            }
+            if (current != null && current.epochDay > epochDay) {
+                return null;
+            }
+            DayBucket fresh = new DayBucket(epochDay);
+            if (days.compareAndSet(slot, current, fresh)) {
+                return fresh;
+            }
+        }
+    }
+
+    /**
+     * 期間内の書籍ごとの閲覧数
+     */
+    private Map<Integer, Long> counts(RankingPeriod period) {
+        Map<Integer, Long> counts = new HashMap<>();
+        if (period == RankingPeriod.ALL) {
+            allTime.forEach((id, adder) -> counts.put(id, adder.sum()));
+            return counts;
+        }
+        long today = DailyQuotaService.today().toEpochDay();
+        for (int i = 0; i < BUCKETS; i++) {
+            DayBucket bucket = days.get(i);
+            if (bucket != null && bucket.epochDay <= today && bucket.epochDay > today - period.days()) {
+                bucket.counts.forEach((id, adder) -> counts.merge(id, adder.sum(), Long::sum));
+            }
+        }
+        return counts;
+    }
+
+    private static LocalDate jstDate(LocalDateTime local) {
+        return local.atZone(ZoneId.systemDefault()).withZoneSameInstant(DailyQuotaService.JST).toLocalDate();
+    }
+
+    /**
+     * サイズ k の最小ヒープで上位 k 件を選ぶ (O(n log k))
+     */
+    private static List<Integer> topK(Map<Integer, Long> counts, int k) {
+        if (k <= 0) {
+            return List.of();
+        }
+        // 根が「現時点の k 位」になるよう、弱い順に並ぶ比較器を使う
+        Comparator<Map.Entry<Integer, Long>> weakestFirst = Comparator
+            .comparingLong((Map.Entry<Integer, Long> e) -> e.getValue())
+            .thenComparing(Map.Entry::getKey, Comparator.reverseOrder());
+        PriorityQueue<Map.Entry<Integer, Long>> heap = new PriorityQueue<>(k + 1, weakestFirst);
+        for (Map.Entry<Integer, Long> entry : counts.entrySet()) {
+            if (entry.getValue() <= 0) {
+                continue;
+            }
+            if (heap.size() < k) {
+                heap.add(entry);
+            } else if (weakestFirst.compare(entry, heap.peek()) > 0) {
+                heap.poll();
+                heap.add(entry);
+            }
+        }
+        List<Map.Entry<Integer, Long>> sorted = new ArrayList<>(heap);
+        sorted.sort(weakestFirst.reversed());
+        return sorted.stream().map(Map.Entry::getKey).toList();
+    }
+
+    private static final class DayBucket {
+        final long epochDay;
+        final Map<Integer, LongAdder> counts = new ConcurrentHashMap<>();
+
+        DayBucket(long epochDay) {
+            this.epochDay = epochDay;
+        }
+    }
+
+    private record Snapshot(List<Integer> bookIds, int k, long computedAt) {
+    }
+}
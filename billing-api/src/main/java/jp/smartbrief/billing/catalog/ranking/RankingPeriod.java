@@ -0,0 +1,45 @@
+package jp.smartbrief.billing.catalog.ranking;
+
+import java.util.Locale;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * ランキングの集計期間
+ */
+public enum RankingPeriod {
+    /** 今日 */
+    DAILY(1),
+    /** 直近7日 (今日を含む) */
+    WEEKLY(7),
+    /** 累計 */
+    ALL(0);
+
+    private final int days;
+
+    RankingPeriod(int days) {
+        this.days = days;
+    }
+
+    /**
+     * 集計する日数 (累計なら 0)
+     */
+    public int days() {
+        return days;
+    }
+
+    /**
+     * クエリパラメータから変換する（未指定なら累計）
+     */
+    public static RankingPeriod from(String value) {
+        if (value == null || value.isBlank()) {
+            return ALL;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "period は daily / weekly / all のいずれかを指定してください");
+        }
+    }
+}
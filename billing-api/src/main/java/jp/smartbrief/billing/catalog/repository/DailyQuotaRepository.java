@@ -0,0 +1,39 @@
+package jp.smartbrief.billing.catalog.repository;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.Repository;
+
+import jp.smartbrief.billing.catalog.domain.DailyQuota;
+import reactor.core.publisher.Mono;
+
+/**
+ * 日次閲覧回数リポジトリ (DB 共有モード用)
+ *
+ * 複数の billing-api インスタンスで1つのカウンタを共有するため、
+ * 判定と加算を1つの UPDATE 文で行います（更新件数 1 = 取得成功）。
+ */
+public interface DailyQuotaRepository extends Repository<DailyQuota, Long> {
+
+    // 上限未満なら1加算
+    @Modifying
+    @Query("UPDATE daily_quota SET used = used + 1 WHERE user_id = :userId AND quota_date = :quotaDate AND used < :limit")
+    Mono<Integer> incrementIfBelow(Long userId, LocalDate quotaDate, int limit);
+
+    // その日の行がなければ、閲覧履歴の件数で初期化する（既にあれば何もしない）
+    @Modifying
+    @Query("INSERT IGNORE INTO daily_quota (user_id, quota_date, used) "
+         + "SELECT :userId, :quotaDate, COUNT(*) FROM user_book_history WHERE user_id = :userId AND viewed_at >= :since")
+    Mono<Integer> insertFromHistory(Long userId, LocalDate quotaDate, LocalDateTime since);
+
+    @Modifying
+    @Query("UPDATE daily_quota SET used = used - 1 WHERE user_id = :userId AND quota_date = :quotaDate AND used > 0")
+    Mono<Integer> decrement(Long userId, LocalDate quotaDate);
+
+    @Modifying
+    @Query("DELETE FROM daily_quota WHERE quota_date < :before")
+    Mono<Integer> deleteBefore(LocalDate before);
+}
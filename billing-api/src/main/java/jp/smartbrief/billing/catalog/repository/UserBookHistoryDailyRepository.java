@@ -0,0 +1,38 @@
+package jp.smartbrief.billing.catalog.repository;
+
+import java.time.LocalDateTime;
+
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.Repository;
+
+import jp.smartbrief.billing.catalog.domain.UserBookHistoryDaily;
+import reactor.core.publisher.Mono;
+
+/**
+ * 閲覧履歴の日次集計リポジトリ
+ *
+ * user_book_history の行を (ユーザー, 書籍, JST の日付) ごとに数えて加算します。
+ * viewed_at はサーバーのローカル時刻なので、offset (DailyQuotaService.localOffset) から JST に直して日付を取ります。
+ * 同じ範囲の DELETE と同じトランザクションで呼び出す前提です（二重加算・取りこぼしを防ぐ）。
+ */
+public interface UserBookHistoryDailyRepository extends Repository<UserBookHistoryDaily, Long> {
+
+    // id の範囲 (afterId, upToId] のうち cutoff より前の行を集計に加算する
+    @Modifying
+    @Query("INSERT INTO user_book_history_daily (user_id, book_id, view_date, views) "
+         + "SELECT * FROM (SELECT user_id, book_id, DATE(CONVERT_TZ(viewed_at, :offset, '+09:00')) AS view_date, COUNT(*) AS views "
+         + "FROM user_book_history WHERE id > :afterId AND id <= :upToId AND viewed_at < :cutoff "
+         + "GROUP BY user_id, book_id, DATE(CONVERT_TZ(viewed_at, :offset, '+09:00'))) AS t "
+         + "ON DUPLICATE KEY UPDATE views = user_book_history_daily.views + t.views")
+    Mono<Integer> rollupRange(Long afterId, Long upToId, LocalDateTime cutoff, String offset);
+
+    // 1ユーザーの id <= upToId かつ before より前の行を集計に加算する
+    @Modifying
+    @Query("INSERT INTO user_book_history_daily (user_id, book_id, view_date, views) "
+         + "SELECT * FROM (SELECT user_id, book_id, DATE(CONVERT_TZ(viewed_at, :offset, '+09:00')) AS view_date, COUNT(*) AS views "
+         + "FROM user_book_history WHERE user_id = :userId AND id <= :upToId AND viewed_at < :before "
+         + "GROUP BY user_id, book_id, DATE(CONVERT_TZ(viewed_at, :offset, '+09:00'))) AS t "
+         + "ON DUPLICATE KEY UPDATE views = user_book_history_daily.views + t.views")
+    Mono<Integer> rollupUser(Long userId, Long upToId, LocalDateTime before, String offset);
+}
@@ -2,11 +2,15 @@ package jp.smartbrief.billing.catalog.repository;
 
 import java.time.LocalDateTime;
 
+import org.springframework.data.r2dbc.repository.Modifying;
 import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.r2dbc.repository.R2dbcRepository;
 import org.springframework.stereotype.Repository;
 
 import jp.smartbrief.billing.catalog.domain.UserBookHistory;
+import jp.smartbrief.billing.catalog.dto.BookDailyViewCount;
+import jp.smartbrief.billing.catalog.dto.BookViewCount;
+import jp.smartbrief.billing.catalog.dto.UserViewCount;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
@@ -29,10 +33,63 @@ public interface UserBookHistoryRepository extends R2dbcRepository<UserBookHisto
     // 既存のメソッド（人気ランキング用ID取得）
     // ※もしネイティブクエリで書いている場合はそのままでOKです。
     // ここでは一般的なクエリメソッドの例として書いておきます。
-    @Query("SELECT book_id FROM user_book_history GROUP BY book_id ORDER BY COUNT(book_id) DESC LIMIT 10")
+    // 圧縮済みの閲覧数 (user_book_history_daily) も合算する
+    @Query("SELECT book_id FROM ("
+         + "SELECT book_id, COUNT(*) AS views FROM user_book_history GROUP BY book_id "
+         + "UNION ALL SELECT book_id, SUM(views) AS views FROM user_book_history_daily GROUP BY book_id"
+         + ") t GROUP BY book_id ORDER BY SUM(views) DESC LIMIT 10")
     Flux<Integer> findTopBookIds();
 
     // ★★★ 今回のエラーを解消するために追加するメソッド ★★★
     // 「特定のユーザー」かつ「特定の本」の履歴を、「閲覧日時が新しい順」に並べて「最初の1件」を取得する
     Mono<UserBookHistory> findFirstByUserIdAndBookIdOrderByViewedAtDesc(Long userId, Integer bookId);
+
+    // 本文ページ取得の権限確認用（指定日時以降にこの本を開いたか）
+    Mono<Boolean> existsByUserIdAndBookIdAndViewedAtAfter(Long userId, Integer bookId, LocalDateTime viewedAt);
+
+    // 日次閲覧回数カウンタの起動時復元用: ユーザーごとの閲覧数
+    @Query("SELECT user_id, COUNT(*) AS views FROM user_book_history WHERE viewed_at >= :since GROUP BY user_id")
+    Flux<UserViewCount> findViewCountsByUserSince(LocalDateTime since);
+
+    // ランキングエンジンの起動時復元用: 書籍ごとの累計閲覧数（生の履歴 + 日次集計）
+    @Query("SELECT book_id, SUM(views) AS views FROM ("
+         + "SELECT book_id, COUNT(*) AS views FROM user_book_history WHERE viewed_at < :until GROUP BY book_id "
+         + "UNION ALL SELECT book_id, SUM(views) AS views FROM user_book_history_daily GROUP BY book_id"
+         + ") t GROUP BY book_id")
+    Flux<BookViewCount> findViewCountsBefore(LocalDateTime until);
+
+    // ランキングエンジンの起動時復元用: 書籍ごと・JST の日ごとの閲覧数（生の履歴 + 日次集計）
+    // viewed_at はサーバーのローカル時刻なので、offset (DailyQuotaService.localOffset) から JST に直して日付を取る
+    @Query("SELECT book_id, view_date, SUM(views) AS views FROM ("
+         + "SELECT book_id, DATE(CONVERT_TZ(viewed_at, :offset, '+09:00')) AS view_date, COUNT(*) AS views "
+         + "FROM user_book_history WHERE viewed_at >= :since AND viewed_at < :until "
+         + "GROUP BY book_id, DATE(CONVERT_TZ(viewed_at, :offset, '+09:00')) "
+         + "UNION ALL SELECT book_id, view_date, SUM(views) AS views FROM user_book_history_daily "
+         + "WHERE view_date >= DATE(CONVERT_TZ(:since, :offset, '+09:00')) GROUP BY book_id, view_date"
+         + ") t GROUP BY book_id, view_date")
+    Flux<BookDailyViewCount> findDailyViewCounts(LocalDateTime since, LocalDateTime until, String offset);
+
+    // --- 圧縮ジョブ (HistoryCompactionJob) 用 ---
+
+    // id 順で afterId の次から最大 limit 件の cutoff より前の行のうち、最後の id (なければ 0)
+    @Query("SELECT COALESCE(MAX(id), 0) FROM (SELECT id FROM user_book_history "
+         + "WHERE id > :afterId AND viewed_at < :cutoff ORDER BY id LIMIT :limit) t")
+    Mono<Long> findCompactionUpperId(Long afterId, LocalDateTime cutoff, int limit);
+
+    @Modifying
+    @Query("DELETE FROM user_book_history WHERE id > :afterId AND id <= :upToId AND viewed_at < :cutoff")
+    Mono<Integer> deleteRange(Long afterId, Long upToId, LocalDateTime cutoff);
+
+    // 生の履歴が keep 件を超えているユーザー
+    @Query("SELECT user_id FROM user_book_history GROUP BY user_id HAVING COUNT(*) > :keep")
+    Flux<Long> findUsersWithMoreThan(int keep);
+
+    // 新しい方から keep + 1 件目の id（これ以前の行が間引き対象。なければ 0）
+    @Query("SELECT COALESCE(MAX(id), 0) FROM (SELECT id FROM user_book_history "
+         + "WHERE user_id = :userId ORDER BY id DESC LIMIT 1 OFFSET :keep) t")
+    Mono<Long> findTrimUpperId(Long userId, int keep);
+
+    @Modifying
+    @Query("DELETE FROM user_book_history WHERE user_id = :userId AND id <= :upToId AND viewed_at < :before")
+    Mono<Integer> deleteUserUpTo(Long userId, Long upToId, LocalDateTime before);
 }
\ No newline at end of file
@@ -0,0 +1,108 @@
+package jp.smartbrief.billing.catalog.repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.Repository;
+
+import jp.smartbrief.billing.catalog.domain.WorkSummary;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * 書籍サマリーリポジトリ (一覧表示用)
+ * 
+ * WorkSummary に対する読み取り専用のリポジトリです。
+ * すべてのクエリが一覧カードに必要なカラムだけを SELECT し、
+ * 本文 (body_text / full_text) の LONGTEXT を転送しません。
+ * ※ CRUD の自動生成クエリ (SELECT *) を避けるため Repository を直接継承しています。
+ */
+public interface WorkSummaryRepository extends Repository<WorkSummary, Integer> {
+
+    // 一覧カード用のカラム (LONGTEXT を含めないこと)
+    String COLUMNS = "work_id, title, author_name, image_url, aozora_url, summary_300, summary_hq, is_hq, catchphrase, insight, "
+                   + "genre_tag, category, original_title, summary_short, summary_long, text_length, updated_at";
+
+    // -------------------------------------------------------------------------
+    // 1. ID 指定
+    // -------------------------------------------------------------------------
+
+    @Query("SELECT " + COLUMNS + " FROM works WHERE work_id = :id")
+    Mono<WorkSummary> findById(Integer id);
+
+    // 並び順は保証されないため、呼び出し側で並べ直すこと
+    @Query("SELECT " + COLUMNS + " FROM works WHERE work_id IN (:ids)")
+    Flux<WorkSummary> findAllByIdIn(Collection<Integer> ids);
+
+    // -------------------------------------------------------------------------
+    // 2. キーワード検索 (検索索引の構築前のフォールバック)
+    // -------------------------------------------------------------------------
+
+    // (ページネーション時は並び順を固定しないとページ間でデータがズレるため work_id ASC を入れています)
+    @Query("SELECT " + COLUMNS + " FROM works WHERE title LIKE :keyword OR author_name LIKE :keyword ORDER BY work_id ASC LIMIT :limit OFFSET :offset")
+    Flux<WorkSummary> searchByKeyword(String keyword, int limit, int offset);
+
+    // 文字数（長編）順での検索 (text_length はトリガーで保持している文字数)
+    @Query("SELECT " + COLUMNS + " FROM works WHERE (title LIKE :keyword OR author_name LIKE :keyword) AND text_length IS NOT NULL ORDER BY text_length DESC, work_id DESC LIMIT :limit OFFSET :offset")
+    Flux<WorkSummary> searchByKeywordOrderByLength(String keyword, int limit, int offset);
+
+    // -------------------------------------------------------------------------
+    // 3. ジャンル検索
+    // -------------------------------------------------------------------------
+
+    @Query("SELECT " + COLUMNS + " FROM works WHERE genre_tag LIKE :genre ORDER BY work_id ASC LIMIT :limit OFFSET :offset")
+    Flux<WorkSummary> findByGenreTagContaining(String genre, int limit, int offset);
+
+    @Query("SELECT " + COLUMNS + " FROM works WHERE genre_tag LIKE :genre AND text_length IS NOT NULL ORDER BY text_length DESC, work_id DESC LIMIT :limit OFFSET :offset")
+    Flux<WorkSummary> findByGenreTagContainingOrderByLength(String genre, int limit, int offset);
+
+    // -------------------------------------------------------------------------
+    // 4. カテゴリ (翻訳作品)
+    // -------------------------------------------------------------------------
+
+    @Query("SELECT " + COLUMNS + " FROM works WHERE category = :category ORDER BY work_id DESC LIMIT :limit OFFSET :offset")
+    Flux<WorkSummary> findByCategory(String category, int limit, int offset);
+
+    @Query("SELECT " + COLUMNS + " FROM works WHERE category = :category ORDER BY text_length DESC, work_id DESC LIMIT :limit OFFSET :offset")
+    Flux<WorkSummary> findByCategoryOrderByLength(String category, int limit, int offset);
+
+    // -------------------------------------------------------------------------
+    // 5. キーセット（カーソル）ページング
+    // -------------------------------------------------------------------------
+    // OFFSET で読み飛ばす代わりに、直前ページ末尾の (並び替えキー, work_id) からシークする。
+    // 文字数順は idx_works_text_length (text_length, work_id) の範囲スキャンになる。
+
+    @Query("SELECT " + COLUMNS + " FROM works WHERE (title LIKE :keyword OR author_name LIKE :keyword) AND work_id > :afterId ORDER BY work_id ASC LIMIT :limit")
+    Flux<WorkSummary> searchByKeywordAfter(String keyword, int afterId, int limit);
+
+    @Query("SELECT " + COLUMNS + " FROM works WHERE (title LIKE :keyword OR author_name LIKE :keyword) "
+         + "AND (text_length < :afterLength OR (text_length = :afterLength AND work_id < :afterId)) ORDER BY text_length DESC, work_id DESC LIMIT :limit")
+    Flux<WorkSummary> searchByKeywordOrderByLengthAfter(String keyword, long afterLength, int afterId, int limit);
+
+    @Query("SELECT " + COLUMNS + " FROM works WHERE genre_tag LIKE :genre AND work_id > :afterId ORDER BY work_id ASC LIMIT :limit")
+    Flux<WorkSummary> findByGenreTagContainingAfter(String genre, int afterId, int limit);
+
+    @Query("SELECT " + COLUMNS + " FROM works WHERE genre_tag LIKE :genre "
+         + "AND (text_length < :afterLength OR (text_length = :afterLength AND work_id < :afterId)) ORDER BY text_length DESC, work_id DESC LIMIT :limit")
+    Flux<WorkSummary> findByGenreTagContainingOrderByLengthAfter(String genre, long afterLength, int afterId, int limit);
+
+    // カテゴリ一覧は従来どおり work_id 降順
+    @Query("SELECT " + COLUMNS + " FROM works WHERE category = :category AND work_id < :beforeId ORDER BY work_id DESC LIMIT :limit")
+    Flux<WorkSummary> findByCategoryBefore(String category, int beforeId, int limit);
+
+    @Query("SELECT " + COLUMNS + " FROM works WHERE category = :category "
+         + "AND (text_length < :afterLength OR (text_length = :afterLength AND work_id < :afterId)) ORDER BY text_length DESC, work_id DESC LIMIT :limit")
+    Flux<WorkSummary> findByCategoryOrderByLengthAfter(String category, long afterLength, int afterId, int limit);
+
+    // -------------------------------------------------------------------------
+    // 6. 検索インデックス (CatalogIndexRefresher) 用
+    // -------------------------------------------------------------------------
+
+    @Query("SELECT " + COLUMNS + " FROM works")
+    Flux<WorkSummary> findAll();
+
+    // 差分更新用: 前回取り込み以降に更新された作品のみ
+    @Query("SELECT " + COLUMNS + " FROM works WHERE updated_at >= :since")
+    Flux<WorkSummary> findUpdatedSince(LocalDateTime since);
+}
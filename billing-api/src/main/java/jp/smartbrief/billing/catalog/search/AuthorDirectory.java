@@ -0,0 +1,218 @@
+package jp.smartbrief.billing.catalog.search;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.stereotype.Component;
+
+import jp.smartbrief.billing.catalog.domain.WorkSummary;
+import jp.smartbrief.billing.catalog.dto.AuthorSummary;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 作家名簿
+ *
+ * 作家ごとの作品ID一覧・作品数・名前順のソートキーをメモリ上に保持し、
+ * 作家一覧 (作品数順/名前順) と作家別の作品一覧を works をスキャンせずに返します。
+ * 名前順は日本語 Collator の照合キーを作家ごとに一度だけ計算して使います。
+ * 索引は CatalogIndexRefresher から全件/差分で更新されます。
+ * 差分更新では並び順のビューを古いものとして印を付けるだけにし、次の読み取り時に書き込みロックの外で作り直します。
+ */
+@Slf4j
+@Component
+public class AuthorDirectory implements CatalogIndexListener {
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Collator collator = Collator.getInstance(Locale.JAPANESE);
+
+    private Map<String, Author> authors = new HashMap<>();
+    // 作品ID → 作家キー (差分更新で作家が変わった作品を外すための逆引き)
+    private Map<Integer, String> authorOf = new HashMap<>();
+
+    // 並び替え済みのビュー（不変リスト。読み取りはロック不要）
+    private volatile List<AuthorSummary> byCount = List.of();
+    private volatile List<AuthorSummary> byName = List.of();
+    // 差分更新後、ビューがまだ作り直されていない (ビューの作り直し自体の排他にも使う)
+    private final AtomicBoolean viewsDirty = new AtomicBoolean(false);
+    private volatile boolean ready;
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 作家一覧
+     * @param sort "name" なら名前順、それ以外は作品数の多い順
+     */
+    public List<AuthorSummary> list(String sort, int limit, int offset) {
+        refreshViewsIfDirty();
+        List<AuthorSummary> view = "name".equals(sort) ? byName : byCount;
+        int from = Math.min(Math.max(offset, 0), view.size());
+        int to = (int) Math.min((long) from + Math.max(limit, 0), view.size());
+        return view.subList(from, to);
+    }
+
+    /**
+     * 作家数
+     */
+    public int size() {
+        refreshViewsIfDirty();
+        return byCount.size();
+    }
+
+    /**
+     * 作家の作品ID (work_id 昇順。未登録の作家なら空)
+     */
+    public int[] worksOf(String authorName) {
+        String key = TextNormalizer.normalize(authorName);
+        lock.readLock().lock();
+        try {
+            Author author = authors.get(key);
+            return author != null ? author.workIds.toArray() : new int[0];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void onFullReload(List<WorkSummary> works) {
+        Map<String, Author> freshAuthors = new HashMap<>();
+        Map<Integer, String> freshAuthorOf = new HashMap<>();
+        for (WorkSummary work : works) {
+            if (work.getId() != null) {
+                add(freshAuthors, freshAuthorOf, work);
+            }
+        }
+        List<Ranked> snapshot = freshAuthors.values().stream().map(Author::ranked).toList();
+        synchronized (viewsDirty) {
+            lock.writeLock().lock();
+            try {
+                authors = freshAuthors;
+                authorOf = freshAuthorOf;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            viewsDirty.set(false);
+            publishViews(snapshot);
+        }
+        ready = true;
+        log.info("Author directory rebuilt: {} authors", freshAuthors.size());
+    }
+
+    @Override
+    public void onUpsert(List<WorkSummary> works) {
+        lock.writeLock().lock();
+        try {
+            for (WorkSummary work : works) {
+                if (work.getId() != null) {
+                    remove(work.getId());
+                    add(authors, authorOf, work);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        viewsDirty.set(true);
+    }
+
+    // --- Private Methods (書き込みロック下で呼ぶ) ---
+
+    private void add(Map<String, Author> target, Map<Integer, String> index, WorkSummary work) {
+        String name = work.getAuthorName() != null ? work.getAuthorName().trim() : "";
+        String key = TextNormalizer.normalize(name);
+        if (key.isEmpty()) {
+            return;
+        }
+        target.computeIfAbsent(key, k -> new Author(name, collator.getCollationKey(name)))
+            .workIds.add(work.getId());
+        index.put(work.getId(), key);
+    }
+
+    private void remove(int workId) {
+        String key = authorOf.remove(workId);
+        if (key == null) {
+            return;
+        }
+        Author author = authors.get(key);
+        if (author != null) {
+            author.workIds.remove(workId);
+            if (author.workIds.isEmpty()) {
+                authors.remove(key);
+            }
+        }
+    }
+
+    // --- View Maintenance (ロックの外で呼ぶ) ---
+
+    /**
+     * 差分更新後の最初の読み取りでビューを作り直す
+     * 読み取りロック下では作家ごとの件数を写し取るだけにし、ソートはロックの外で行います（書き込みを待たせない）。
+     * 作り直し中に差分更新が入った場合は印が付き直り、次の読み取りで再度作り直します。
+     */
+    private void refreshViewsIfDirty() {
+        if (!viewsDirty.get()) {
+            return;
+        }
+        synchronized (viewsDirty) {
+            if (!viewsDirty.compareAndSet(true, false)) {
+                return;
+            }
+            List<Ranked> snapshot;
+            lock.readLock().lock();
+            try {
+                snapshot = authors.values().stream().map(Author::ranked).toList();
+            } finally {
+                lock.readLock().unlock();
+            }
+            publishViews(snapshot);
+        }
+    }
+
+    /**
+     * 作品数順・名前順のビューを作る（作家数は数千程度なので全体をソートする）
+     */
+    private void publishViews(List<Ranked> snapshot) {
+        List<Ranked> all = new ArrayList<>(snapshot);
+
+        all.sort(Comparator.comparing(Ranked::sortKey));
+        byName = all.stream().map(Ranked::summary).toList();
+
+        all.sort(Comparator.comparingInt(Ranked::count).reversed()
+            .thenComparing(Ranked::sortKey));
+        byCount = all.stream().map(Ranked::summary).toList();
+    }
+
+    private static final class Author {
+        final String name;
+        final CollationKey sortKey;
+        final PostingList workIds = new PostingList();
+
+        Author(String name, CollationKey sortKey) {
+            this.name = name;
+            this.sortKey = sortKey;
+        }
+
+        Ranked ranked() {
+            return new Ranked(name, sortKey, workIds.size());
+        }
+    }
+
+    /**
+     * ビューを作るための作家の写し (名前・照合キー・作品数)
+     */
+    private record Ranked(String name, CollationKey sortKey, int count) {
+
+        AuthorSummary summary() {
+            return new AuthorSummary(name, count);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package jp.smartbrief.billing.catalog.search;
+
+import java.util.List;
+
+import jp.smartbrief.billing.catalog.domain.WorkSummary;
+
+/**
+ * カタログ変更リスナー
+ *
+ * CatalogIndexRefresher が works テーブルから取り込んだ作品を受け取り、
+ * 各インメモリ索引（検索・サジェストなど）を更新するためのインターフェースです。
+ * 渡される WorkSummary には本文 (body_text) は含まれません。
+ */
+public interface CatalogIndexListener {
+
+    /**
+     * 全件の再構築（起動時・定期フルリロード時）
+     */
+    void onFullReload(List<WorkSummary> works);
+
+    /**
+     * 差分の反映（前回取り込み以降に更新された作品のみ）
+     */
+    void onUpsert(List<WorkSummary> works);
+}
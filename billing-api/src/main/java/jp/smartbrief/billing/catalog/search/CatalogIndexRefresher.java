@@ -0,0 +1,141 @@
+package jp.smartbrief.billing.catalog.search;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jp.smartbrief.billing.catalog.domain.WorkSummary;
+import jp.smartbrief.billing.catalog.repository.WorkSummaryRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+/**
+ * カタログ索引リフレッシャー
+ *
+ * works テーブルを読み込み、登録されている CatalogIndexListener に配信します。
+ * 1. 起動時: 全件ロード
+ * 2. 定期 (既定60秒): updated_at による差分ロード（反映済みの行を除き、変更がなければリスナーは呼ばない）
+ * 3. 深夜 (既定 4:00 JST): 全件ロード（削除された作品の反映を兼ねる）
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CatalogIndexRefresher {
+
+    private final WorkSummaryRepository workSummaryRepository;
+    private final List<CatalogIndexListener> listeners;
+
+    // 多重実行防止（全件ロード中に差分ロードが走らないようにする）
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    // 取り込み済みの updated_at の最大値（差分ロードの起点）
+    private volatile LocalDateTime watermark;
+
+    // updated_at が watermark と同じ時刻で反映済みの作品 ID（>= で再取得される境界の行を読み飛ばす）
+    // running を取った処理からのみ読み書きする
+    private Set<Integer> appliedAtWatermark = Set.of();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        reloadAll().subscribe();
+    }
+
+    @Scheduled(cron = "${catalog.index.full-reload-cron:0 0 4 * * *}", zone = "Asia/Tokyo")
+    public Mono<Void> scheduledFullReload() {
+        return reloadAll();
+    }
+
+    @Scheduled(fixedDelayString = "${catalog.index.refresh-interval-ms:60000}",
+               initialDelayString = "${catalog.index.refresh-interval-ms:60000}")
+    public Mono<Void> scheduledRefresh() {
+        return refreshChanged();
+    }
+
+    /**
+     * 全件ロード
+     */
+    public Mono<Void> reloadAll() {
+        if (!running.compareAndSet(false, true)) {
+            return Mono.empty();
+        }
+        return workSummaryRepository.findAll()
+            .collectList()
+            .doOnNext(works -> {
+                listeners.forEach(listener -> listener.onFullReload(works));
+                watermark = null;
+                appliedAtWatermark = Set.of();
+                advanceWatermark(works);
+            })
+            .doOnError(e -> log.error("Catalog index full reload failed", e))
+            .onErrorResume(e -> Mono.empty())
+            .doFinally(signal -> running.set(false))
+            .then();
+    }
+
+    /**
+     * 差分ロード（初回の全件ロードが終わるまでは何もしない）
+     */
+    public Mono<Void> refreshChanged() {
+        LocalDateTime since = watermark;
+        if (since == null || !running.compareAndSet(false, true)) {
+            return Mono.empty();
+        }
+        return workSummaryRepository.findUpdatedSince(since)
+            .filter(work -> !isApplied(work))
+            .collectList()
+            .filter(works -> !works.isEmpty())
+            .doOnNext(works -> {
+                listeners.forEach(listener -> listener.onUpsert(works));
+                advanceWatermark(works);
+                log.debug("Catalog index refreshed: {} works changed since {}", works.size(), since);
+            })
+            .doOnError(e -> log.warn("Catalog index refresh failed: {}", e.getMessage()))
+            .onErrorResume(e -> Mono.empty())
+            .doFinally(signal -> running.set(false))
+            .then();
+    }
+
+    // --- Private Methods ---
+
+    /**
+     * 前回までに同じ updated_at で反映済みの行か
+     * （updated_at が変わらない限り内容も変わっていないものとみなす。取りこぼしは深夜の全件ロードで補う）
+     */
+    private boolean isApplied(WorkSummary work) {
+        return Objects.equals(work.getUpdatedAt(), watermark) && appliedAtWatermark.contains(work.getId());
+    }
+
+    private void advanceWatermark(List<WorkSummary> works) {
+        // 境界の同一秒に更新された行を取りこぼさないよう、次回は >= で再取得し、反映済みの行は isApplied で除く
+        works.stream()
+            .map(WorkSummary::getUpdatedAt)
+            .filter(Objects::nonNull)
+            .max(LocalDateTime::compareTo)
+            .ifPresent(max -> {
+                Set<Integer> atMax = works.stream()
+                    .filter(work -> max.equals(work.getUpdatedAt()))
+                    .map(WorkSummary::getId)
+                    .collect(Collectors.toSet());
+                if (watermark == null || max.isAfter(watermark)) {
+                    watermark = max;
+                    appliedAtWatermark = Set.copyOf(atMax);
+                } else if (max.equals(watermark)) {
+                    atMax.addAll(appliedAtWatermark);
+                    appliedAtWatermark = Set.copyOf(atMax);
+                }
+            });
+        if (watermark == null) {
+            // updated_at 列が未移行の環境では差分ロードを諦め、深夜の全件ロードのみで更新する
+            log.warn("works.updated_at is not populated; incremental index refresh is disabled");
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package jp.smartbrief.billing.catalog.search;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.stereotype.Component;
+
+import jp.smartbrief.billing.catalog.domain.WorkSummary;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * カタログ検索エンジン
+ *
+ * タイトル・著者名・原題の N-gram 転置インデックスをメモリ上に保持し、
+ * キーワード検索を LIKE '%q%' のフルスキャンなしで解決します。
+ * 作品ごとの文字数 (text_length) も保持し、文字数順の並び替えもメモリ上で行います。
+ * 索引は CatalogIndexRefresher から全件/差分で更新されます。
+ */
+@Slf4j
+@Component
+public class CatalogSearchEngine implements CatalogIndexListener {
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private NgramIndex index = new NgramIndex();
+    private Map<Integer, Integer> textLengths = new HashMap<>();
+    private volatile boolean ready;
+
+    /**
+     * 初回ロードが完了しているか（未完了の間は呼び出し側で SQL にフォールバックする）
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * キーワード検索
+     * @return 一致した作品ID (work_id 昇順)
+     */
+    public int[] search(String query) {
+        String normalized = TextNormalizer.normalize(query);
+        lock.readLock().lock();
+        try {
+            return index.search(normalized);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * キーワード検索（文字数の多い順）
+     * 文字数が未計算 (本文なし) の作品は除外する
+     * @return 一致した作品ID (text_length 降順、同数は work_id 降順)
+     */
+    public int[] searchByLength(String query) {
+        return sortByLength(search(query));
+    }
+
+    /**
+     * 作品ID集合を文字数の多い順に並べ替える（他の索引の検索結果にも使う）
+     * 文字数が未計算 (本文なし) の作品は除外する
+     * @return text_length 降順、同数は work_id 降順
+     */
+    public int[] sortByLength(int[] ids) {
+        lock.readLock().lock();
+        try {
+            Map<Integer, Integer> lengths = textLengths;
+            return Arrays.stream(ids)
+                .filter(lengths::containsKey)
+                .boxed()
+                .sorted((a, b) -> {
+                    int byLength = Integer.compare(lengths.get(b), lengths.get(a));
+                    return byLength != 0 ? byLength : Integer.compare(b, a);
+                })
+                .mapToInt(Integer::intValue)
+                .toArray();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 作品の文字数 (未計算なら null)
+     */
+    public Integer textLength(int workId) {
+        lock.readLock().lock();
+        try {
+            return textLengths.get(workId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void onFullReload(List<WorkSummary> works) {
+        // ロック外で新しい索引を組み立ててから差し替える（検索を止めない）
+        NgramIndex fresh = new NgramIndex();
+        Map<Integer, Integer> freshLengths = new HashMap<>();
+        for (WorkSummary work : works) {
+            if (work.getId() != null) {
+                fresh.upsert(work.getId(), fields(work));
+                if (work.getTextLength() != null) {
+                    freshLengths.put(work.getId(), work.getTextLength());
+                }
+            }
+        }
+        lock.writeLock().lock();
+        try {
+            index = fresh;
+            textLengths = freshLengths;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        ready = true;
+        log.info("Catalog search index rebuilt: {} works", fresh.size());
+    }
+
+    @Override
+    public void onUpsert(List<WorkSummary> works) {
+        lock.writeLock().lock();
+        try {
+            for (WorkSummary work : works) {
+                if (work.getId() != null) {
+                    index.upsert(work.getId(), fields(work));
+                    if (work.getTextLength() != null) {
+                        textLengths.put(work.getId(), work.getTextLength());
+                    } else {
+                        textLengths.remove(work.getId());
+                    }
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static String[] fields(WorkSummary work) {
+        return new String[] {
+            TextNormalizer.normalize(work.getTitle()),
+            TextNormalizer.normalize(work.getAuthorName()),
+            TextNormalizer.normalize(work.getOriginalTitle())
+        };
+    }
+}
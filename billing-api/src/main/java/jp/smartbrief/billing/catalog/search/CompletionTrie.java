@@ -0,0 +1,191 @@
+package jp.smartbrief.billing.catalog.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.IntToLongFunction;
+
+/**
+ * 前方一致補完用の圧縮トライ (Radix Tree)
+ *
+ * 分岐のない区間を1つの辺ラベルにまとめた不変のトライです。
+ * 各ノードはその配下に含まれる作品の上位 K 件 (人気順) を構築時に保持するため、
+ * 検索はクエリ長に比例するノードの辿りだけで完了します。
+ * 構築後は読み取り専用なので、ロックなしで複数スレッドから参照できます。
+ */
+final class CompletionTrie {
+
+    static final CompletionTrie EMPTY = new CompletionTrie(new Node("", new char[0], new Node[0], new int[0]));
+
+    private final Node root;
+
+    private CompletionTrie(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * 前方一致で上位 K 件の作品IDを返す
+     * @param prefix TextNormalizer で正規化済みのクエリ
+     */
+    int[] complete(String prefix) {
+        Node node = root;
+        int pos = 0;
+        while (pos < prefix.length()) {
+            Node child = node.child(prefix.charAt(pos));
+            if (child == null) {
+                return new int[0];
+            }
+            String label = child.label;
+            int remaining = prefix.length() - pos;
+            if (remaining <= label.length()) {
+                // クエリが辺の途中で終わる場合は、その辺の先のノードが答え
+                return label.regionMatches(0, prefix, pos, remaining) ? child.top : new int[0];
+            }
+            if (!prefix.regionMatches(pos, label, 0, label.length())) {
+                return new int[0];
+            }
+            pos += label.length();
+            node = child;
+        }
+        return node.top;
+    }
+
+    /**
+     * トライを構築する
+     * @param keys 正規化済みのキー (keys[i] と workIds[i] が対応。キーの重複可)
+     * @param popularity 作品IDごとの人気スコア (大きいほど上位)
+     * @param k 各ノードに保持する件数
+     */
+    static CompletionTrie build(List<String> keys, int[] workIds, IntToLongFunction popularity, int k) {
+        Integer[] order = new Integer[keys.size()];
+        int n = 0;
+        for (int i = 0; i < keys.size(); i++) {
+            if (!keys.get(i).isEmpty()) {
+                order[n++] = i;
+            }
+        }
+        if (n == 0) {
+            return EMPTY;
+        }
+        Integer[] sorted = Arrays.copyOf(order, n);
+        Arrays.sort(sorted, Comparator.comparing(keys::get));
+
+        String[] sortedKeys = new String[n];
+        int[] sortedIds = new int[n];
+        for (int i = 0; i < n; i++) {
+            sortedKeys[i] = keys.get(sorted[i]);
+            sortedIds[i] = workIds[sorted[i]];
+        }
+
+        Comparator<Integer> rank = Comparator
+            .comparingLong((Integer id) -> popularity.applyAsLong(id)).reversed()
+            .thenComparingInt(id -> id);
+        Builder builder = new Builder(sortedKeys, sortedIds, rank, k);
+        return new CompletionTrie(builder.buildChildren("", 0, n, 0));
+    }
+
+    private static final class Node {
+        final String label;
+        final char[] childKeys;
+        final Node[] children;
+        final int[] top;
+
+        Node(String label, char[] childKeys, Node[] children, int[] top) {
+            this.label = label;
+            this.childKeys = childKeys;
+            this.children = children;
+            this.top = top;
+        }
+
+        Node child(char c) {
+            int i = Arrays.binarySearch(childKeys, c);
+            return i >= 0 ? children[i] : null;
+        }
+    }
+
+    /**
+     * ソート済みキー配列から再帰的にノードを組み立てる
+     * (ソート済みなので、範囲の先頭と末尾の共通接頭辞＝範囲全体の共通接頭辞)
+     */
+    private static final class Builder {
+        private final String[] keys;
+        private final int[] ids;
+        private final Comparator<Integer> rank;
+        private final int k;
+
+        Builder(String[] keys, int[] ids, Comparator<Integer> rank, int k) {
+            this.keys = keys;
+            this.ids = ids;
+            this.rank = rank;
+            this.k = k;
+        }
+
+        /**
+         * keys[lo, hi) は先頭 depth 文字が共通
+         */
+        private Node build(int lo, int hi, int depth) {
+            int end = commonPrefixLength(keys[lo], keys[hi - 1]);
+            String label = keys[lo].substring(depth, end);
+            return buildChildren(label, lo, hi, end);
+        }
+
+        private Node buildChildren(String label, int lo, int hi, int depth) {
+            List<Integer> candidates = new ArrayList<>();
+
+            // キーがちょうどこのノードで終わる作品（ソート順で先頭に並ぶ）
+            int i = lo;
+            while (i < hi && keys[i].length() == depth) {
+                candidates.add(ids[i]);
+                i++;
+            }
+
+            // 次の1文字ごとに子ノードを作る
+            List<Character> childKeys = new ArrayList<>();
+            List<Node> children = new ArrayList<>();
+            while (i < hi) {
+                char c = keys[i].charAt(depth);
+                int j = i;
+                while (j < hi && keys[j].charAt(depth) == c) {
+                    j++;
+                }
+                Node child = build(i, j, depth);
+                childKeys.add(c);
+                children.add(child);
+                for (int id : child.top) {
+                    candidates.add(id);
+                }
+                i = j;
+            }
+
+            char[] keyArray = new char[childKeys.size()];
+            for (int c = 0; c < keyArray.length; c++) {
+                keyArray[c] = childKeys.get(c);
+            }
+            return new Node(label, keyArray, children.toArray(new Node[0]), topK(candidates));
+        }
+
+        private int[] topK(List<Integer> candidates) {
+            candidates.sort(rank);
+            Set<Integer> top = new LinkedHashSet<>();
+            for (Integer id : candidates) {
+                if (top.size() >= k) {
+                    break;
+                }
+                top.add(id);
+            }
+            return top.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        private static int commonPrefixLength(String a, String b) {
+            int max = Math.min(a.length(), b.length());
+            int i = 0;
+            while (i < max && a.charAt(i) == b.charAt(i)) {
+                i++;
+            }
+            return i;
+        }
+    }
+}
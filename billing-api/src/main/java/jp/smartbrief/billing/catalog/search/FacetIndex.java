@@ -0,0 +1,351 @@
+package jp.smartbrief.billing.catalog.search;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.stereotype.Component;
+
+import jp.smartbrief.billing.catalog.domain.WorkSummary;
+import jp.smartbrief.billing.catalog.dto.FacetCount;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * ファセット索引 (ジャンル・著者・カテゴリ)
+ *
+ * 値ごとに作品IDの圧縮ビットマップ (RoaringBitmap) を保持します。
+ * genre_tag はカンマ区切りを分解・正規化したタグ単位で完全一致させるため、
+ * LIKE '%genre%' のように別ジャンルの部分文字列に誤ヒットしません。
+ * - ジャンルの AND / OR / NOT とカテゴリ・著者の絞り込みはビットマップ演算だけで解決
+ * - 検索結果に対するファセット件数は、値ごとのビットマップとの積の件数 (andCardinality) で数える
+ * 索引は CatalogIndexRefresher から全件/差分で更新されます。
+ */
+@Slf4j
+@Component
+public class FacetIndex implements CatalogIndexListener {
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Snapshot snapshot = new Snapshot();
+    private volatile boolean ready;
+
+    /**
+     * ファセット検索の結果
+     *
+     * @param ids 一致した作品ID (work_id 昇順)
+     */
+    public record Result(int[] ids, List<FacetCount> genres, List<FacetCount> authors, List<FacetCount> categories) {
+    }
+
+    /**
+     * 初回ロードが完了しているか
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * ジャンル条件に一致する作品IDを返す
+     * @return 作品ID (work_id 昇順)
+     */
+    public int[] search(GenreQuery query) {
+        lock.readLock().lock();
+        try {
+            return snapshot.evaluate(query).toArray();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * ジャンル条件・著者・キーワード検索結果の積集合と、そのファセット件数を返す
+     * @param author 著者名 (null なら絞り込まない)
+     * @param restrictTo キーワード検索でヒットした作品ID (昇順。null なら絞り込まない)
+     * @param facetLimit 各ファセットで返す値の最大数 (件数の多い順)
+     */
+    public Result facets(GenreQuery query, String author, int[] restrictTo, int facetLimit) {
+        lock.readLock().lock();
+        try {
+            Snapshot s = snapshot;
+            RoaringBitmap result = s.evaluate(query);
+            if (author != null && !result.isEmpty()) {
+                RoaringBitmap bitmap = s.authors.postings.get(TextNormalizer.normalize(author));
+                result = bitmap != null ? RoaringBitmap.and(result, bitmap) : new RoaringBitmap();
+            }
+            if (restrictTo != null && !result.isEmpty()) {
+                result.and(RoaringBitmap.bitmapOf(restrictTo));
+            }
+            return new Result(
+                result.toArray(),
+                s.genres.count(result, facetLimit),
+                s.authors.count(result, facetLimit),
+                s.categories.count(result, facetLimit));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 作品数の多いジャンル (カタログ全体)
+     */
+    public List<FacetCount> topGenres(int limit) {
+        lock.readLock().lock();
+        try {
+            return snapshot.genres.top(limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void onFullReload(List<WorkSummary> works) {
+        // ロック外で組み立ててから差し替える
+        Snapshot fresh = new Snapshot();
+        for (WorkSummary work : works) {
+            if (work.getId() != null) {
+                fresh.upsert(work);
+            }
+        }
+        fresh.optimize();
+        lock.writeLock().lock();
+        try {
+            snapshot = fresh;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        ready = true;
+        log.info("Facet index rebuilt: {} works, {} genres, {} authors",
+            fresh.all.getCardinality(), fresh.genres.postings.size(), fresh.authors.postings.size());
+    }
+
+    @Override
+    public void onUpsert(List<WorkSummary> works) {
+        lock.writeLock().lock();
+        try {
+            for (WorkSummary work : works) {
+                if (work.getId() != null) {
+                    snapshot.upsert(work);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * genre_tag をタグの表示名に分解する（正規化後に重複するものは先勝ち）
+     */
+    static List<String> splitTags(String genreTag) {
+        if (genreTag == null) {
+            return List.of();
+        }
+        Map<String, String> tags = new LinkedHashMap<>();
+        for (String raw : genreTag.split(",")) {
+            String label = raw.trim();
+            String key = TextNormalizer.normalize(label);
+            if (!key.isEmpty()) {
+                tags.putIfAbsent(key, label);
+            }
+        }
+        return new ArrayList<>(tags.values());
+    }
+
+    /**
+     * 索引の実体（スレッドセーフではないため FacetIndex のロック下で扱う）
+     */
+    private static final class Snapshot {
+        final RoaringBitmap all = new RoaringBitmap();
+        final Facet genres = new Facet();
+        final Facet authors = new Facet();
+        final Facet categories = new Facet();
+
+        void upsert(WorkSummary work) {
+            int id = work.getId();
+            all.add(id);
+            genres.put(id, splitTags(work.getGenreTag()));
+            authors.put(id, single(work.getAuthorName()));
+            categories.put(id, single(work.getCategory()));
+        }
+
+        void optimize() {
+            all.runOptimize();
+            genres.optimize();
+            authors.optimize();
+            categories.optimize();
+        }
+
+        /**
+         * (all の積) ∩ (any の和) ∩ category − (none の和)
+         * 条件が指定されていない項目は絞り込まない
+         */
+        RoaringBitmap evaluate(GenreQuery query) {
+            List<RoaringBitmap> required = new ArrayList<>();
+            for (String tag : normalized(query.all())) {
+                RoaringBitmap bitmap = genres.postings.get(tag);
+                if (bitmap == null) {
+                    return new RoaringBitmap(); // 存在しないタグの AND は空集合
+                }
+                required.add(bitmap);
+            }
+            if (query.category() != null) {
+                RoaringBitmap bitmap = categories.postings.get(TextNormalizer.normalize(query.category()));
+                if (bitmap == null) {
+                    return new RoaringBitmap();
+                }
+                required.add(bitmap);
+            }
+            if (!query.any().isEmpty()) {
+                required.add(genres.union(normalized(query.any())));
+            }
+
+            RoaringBitmap result;
+            if (required.isEmpty()) {
+                result = all.clone();
+            } else {
+                // 小さい集合から積を取る
+                required.sort(Comparator.comparingInt(RoaringBitmap::getCardinality));
+                result = required.get(0).clone();
+                for (int i = 1; i < required.size() && !result.isEmpty(); i++) {
+                    result.and(required.get(i));
+                }
+            }
+            if (!query.none().isEmpty() && !result.isEmpty()) {
+                result.andNot(genres.union(normalized(query.none())));
+            }
+            return result;
+        }
+
+        private static List<String> single(String value) {
+            return value == null || value.isBlank() ? List.of() : List.of(value.trim());
+        }
+
+        private static Set<String> normalized(List<String> values) {
+            Set<String> out = new LinkedHashSet<>();
+            for (String value : values) {
+                String key = TextNormalizer.normalize(value);
+                if (!key.isEmpty()) {
+                    out.add(key);
+                }
+            }
+            return out;
+        }
+    }
+
+    /**
+     * 1つのファセット (正規化した値 → 作品IDビットマップ)
+     */
+    private static final class Facet {
+        final Map<String, RoaringBitmap> postings = new HashMap<>();
+        // 表示名 (最初に現れた表記を使う)
+        final Map<String, String> labels = new HashMap<>();
+        // 差分更新で古いエントリを外すための逆引き
+        final Map<Integer, Set<String>> keysOf = new HashMap<>();
+
+        void put(int id, List<String> values) {
+            remove(id);
+            if (values.isEmpty()) {
+                return;
+            }
+            Set<String> keys = new LinkedHashSet<>();
+            for (String value : values) {
+                String key = TextNormalizer.normalize(value);
+                if (key.isEmpty()) {
+                    continue;
+                }
+                keys.add(key);
+                labels.putIfAbsent(key, value);
+                postings.computeIfAbsent(key, k -> new RoaringBitmap()).add(id);
+            }
+            keysOf.put(id, keys);
+        }
+
+        void remove(int id) {
+            Set<String> keys = keysOf.remove(id);
+            if (keys == null) {
+                return;
+            }
+            for (String key : keys) {
+                RoaringBitmap bitmap = postings.get(key);
+                if (bitmap != null) {
+                    bitmap.remove(id);
+                    if (bitmap.isEmpty()) {
+                        postings.remove(key);
+                        labels.remove(key);
+                    }
+                }
+            }
+        }
+
+        void optimize() {
+            postings.values().forEach(RoaringBitmap::runOptimize);
+        }
+
+        RoaringBitmap union(Set<String> keys) {
+            List<RoaringBitmap> bitmaps = new ArrayList<>();
+            for (String key : keys) {
+                RoaringBitmap bitmap = postings.get(key);
+                if (bitmap != null) {
+                    bitmaps.add(bitmap);
+                }
+            }
+            return RoaringBitmap.or(bitmaps.iterator());
+        }
+
+        /**
+         * カタログ全体での件数上位
+         */
+        List<FacetCount> top(int limit) {
+            Map<String, Integer> counts = new HashMap<>();
+            postings.forEach((key, bitmap) -> counts.put(key, bitmap.getCardinality()));
+            return ranked(counts, limit);
+        }
+
+        /**
+         * 検索結果に対する値ごとの件数
+         * 結果が値の種類より少なければ結果の作品を走査し、多ければ値ごとのビットマップとの積を数える
+         */
+        List<FacetCount> count(RoaringBitmap result, int limit) {
+            Map<String, Integer> counts = new HashMap<>();
+            if (result.isEmpty() || limit <= 0) {
+                return List.of();
+            }
+            if (result.getCardinality() < postings.size()) {
+                result.forEach((int id) -> {
+                    Set<String> keys = keysOf.get(id);
+                    if (keys != null) {
+                        for (String key : keys) {
+                            counts.merge(key, 1, Integer::sum);
+                        }
+                    }
+                });
+            } else {
+                postings.forEach((key, bitmap) -> {
+                    int count = RoaringBitmap.andCardinality(result, bitmap);
+                    if (count > 0) {
+                        counts.put(key, count);
+                    }
+                });
+            }
+            return ranked(counts, limit);
+        }
+
+        /**
+         * 件数の多い順 (同数は表示名順) に上位 limit 件
+         */
+        private List<FacetCount> ranked(Map<String, Integer> counts, int limit) {
+            return counts.entrySet().stream()
+                .map(e -> new FacetCount(labels.get(e.getKey()), e.getValue()))
+                .sorted(Comparator.comparingInt(FacetCount::count).reversed()
+                    .thenComparing(FacetCount::value))
+                .limit(Math.max(limit, 0))
+                .toList();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package jp.smartbrief.billing.catalog.search;
+
+import java.util.List;
+
+/**
+ * ジャンル検索条件
+ *
+ * @param all      すべてを含む (AND)
+ * @param any      いずれかを含む (OR)
+ * @param none     含まない (NOT)
+ * @param category カテゴリ (null なら絞り込まない)
+ */
+public record GenreQuery(List<String> all, List<String> any, List<String> none, String category) {
+
+    public GenreQuery {
+        all = all != null ? List.copyOf(all) : List.of();
+        any = any != null ? List.copyOf(any) : List.of();
+        none = none != null ? List.copyOf(none) : List.of();
+    }
+
+    /**
+     * 単一ジャンル (従来の /search/genre?q=) の条件
+     */
+    public static GenreQuery of(String genre) {
+        return new GenreQuery(List.of(genre), List.of(), List.of(), null);
+    }
+
+    /**
+     * 従来の単一ジャンル検索だけで表現できるか（索引構築前の SQL フォールバック可否）
+     */
+    public boolean isSingleGenre() {
+        return all.size() == 1 && any.isEmpty() && none.isEmpty() && category == null;
+    }
+}
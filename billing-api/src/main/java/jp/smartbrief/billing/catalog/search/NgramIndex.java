@@ -0,0 +1,128 @@
+package jp.smartbrief.billing.catalog.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 文字 N-gram 転置インデックス
+ *
+ * 正規化済みテキストの 1〜3 文字の部分文字列をキーに、作品IDのポスティングリストを保持します。
+ * 検索時はクエリの N-gram (最大3文字) の積集合で候補を絞り込み、
+ * 最後に部分一致で検証するため、結果は LIKE '%q%' と同じ集合になります。
+ * スレッドセーフではないため、呼び出し側 (CatalogSearchEngine) でロックしてください。
+ */
+final class NgramIndex {
+
+    static final int MAX_GRAM = 3;
+
+    private final Map<String, PostingList> postings = new HashMap<>();
+    private final Map<Integer, String[]> documents = new HashMap<>();
+
+    /**
+     * 作品を登録（既に登録済みなら置き換え）
+     */
+    void upsert(int id, String... normalizedFields) {
+        remove(id);
+        documents.put(id, normalizedFields);
+        for (String gram : grams(normalizedFields)) {
+            postings.computeIfAbsent(gram, k -> new PostingList()).add(id);
+        }
+    }
+
+    void remove(int id) {
+        String[] old = documents.remove(id);
+        if (old == null) {
+            return;
+        }
+        for (String gram : grams(old)) {
+            PostingList list = postings.get(gram);
+            if (list != null) {
+                list.remove(id);
+                if (list.isEmpty()) {
+                    postings.remove(gram);
+                }
+            }
+        }
+    }
+
+    void clear() {
+        postings.clear();
+        documents.clear();
+    }
+
+    int size() {
+        return documents.size();
+    }
+
+    /**
+     * 部分一致検索
+     * @param normalizedQuery TextNormalizer で正規化済みのクエリ
+     * @return 一致した作品ID (昇順)
+     */
+    int[] search(String normalizedQuery) {
+        if (normalizedQuery.isEmpty()) {
+            return new int[0];
+        }
+
+        // 1. クエリの N-gram に対応するポスティングリストを短い順に並べる
+        int n = Math.min(MAX_GRAM, normalizedQuery.length());
+        List<PostingList> lists = new ArrayList<>();
+        for (int i = 0; i + n <= normalizedQuery.length(); i++) {
+            PostingList list = postings.get(normalizedQuery.substring(i, i + n));
+            if (list == null) {
+                return new int[0]; // 1つでも存在しない N-gram があればヒットなし
+            }
+            lists.add(list);
+        }
+        lists.sort(Comparator.comparingInt(PostingList::size));
+
+        // 2. 積集合で候補を絞り込む
+        int[] candidates = lists.get(0).toArray();
+        for (int i = 1; i < lists.size() && candidates.length > 0; i++) {
+            candidates = PostingList.intersect(candidates, lists.get(i));
+        }
+
+        // 3. 3文字以下のクエリは N-gram 一致＝部分一致なので検証不要
+        if (normalizedQuery.length() <= MAX_GRAM) {
+            return candidates;
+        }
+        int[] verified = new int[candidates.length];
+        int count = 0;
+        for (int id : candidates) {
+            if (containsInAnyField(documents.get(id), normalizedQuery)) {
+                verified[count++] = id;
+            }
+        }
+        return Arrays.copyOf(verified, count);
+    }
+
+    private static boolean containsInAnyField(String[] fields, String query) {
+        if (fields == null) {
+            return false;
+        }
+        for (String field : fields) {
+            if (field.contains(query)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Set<String> grams(String[] fields) {
+        Set<String> grams = new HashSet<>();
+        for (String field : fields) {
+            for (int n = 1; n <= MAX_GRAM; n++) {
+                for (int i = 0; i + n <= field.length(); i++) {
+                    grams.add(field.substring(i, i + n));
+                }
+            }
+        }
+        return grams;
+    }
+}
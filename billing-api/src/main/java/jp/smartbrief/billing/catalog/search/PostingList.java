@@ -0,0 +1,73 @@
+package jp.smartbrief.billing.catalog.search;
+
+import java.util.Arrays;
+
+/**
+ * 転置インデックスのポスティングリスト
+ *
+ * 作品IDを昇順の int 配列で保持します。
+ * 差分更新（1件ずつの追加・削除）と、検索時の積集合に特化した最小限の実装です。
+ * スレッドセーフではないため、呼び出し側 (NgramIndex) でロックしてください。
+ */
+final class PostingList {
+
+    private int[] ids = new int[4];
+    private int size;
+
+    void add(int id) {
+        int pos = Arrays.binarySearch(ids, 0, size, id);
+        if (pos >= 0) {
+            return; // 登録済み
+        }
+        int insertAt = -(pos + 1);
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+        }
+        System.arraycopy(ids, insertAt, ids, insertAt + 1, size - insertAt);
+        ids[insertAt] = id;
+        size++;
+    }
+
+    void remove(int id) {
+        int pos = Arrays.binarySearch(ids, 0, size, id);
+        if (pos < 0) {
+            return;
+        }
+        System.arraycopy(ids, pos + 1, ids, pos, size - pos - 1);
+        size--;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int[] toArray() {
+        return Arrays.copyOf(ids, size);
+    }
+
+    /**
+     * 昇順配列同士の積集合 (マージ方式)
+     */
+    static int[] intersect(int[] sorted, PostingList other) {
+        int[] out = new int[Math.min(sorted.length, other.size)];
+        int i = 0, j = 0, n = 0;
+        while (i < sorted.length && j < other.size) {
+            int a = sorted[i];
+            int b = other.ids[j];
+            if (a == b) {
+                out[n++] = a;
+                i++;
+                j++;
+            } else if (a < b) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+}
@@ -0,0 +1,216 @@
+package jp.smartbrief.billing.catalog.search;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jp.smartbrief.billing.catalog.domain.WorkSummary;
+import jp.smartbrief.billing.catalog.ranking.RankingEngine;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * サジェスト (入力補完) エンジン
+ *
+ * タイトルと著者名の前方一致を圧縮トライで解決し、各ノードに事前計算した
+ * 人気上位の作品 (RankingEngine の累計閲覧数順) をそのまま返します。
+ * 作品のカード情報もメモリ上に保持しているため、サジェストは DB に一切アクセスしません
+ * （初回の全件ロード前は isReady が false になり、呼び出し側で SQL にフォールバックする）。
+ *
+ * 差分更新でタイトル・著者名が変わった作品は、本体のトライを作り直さず小さな差分トライに入れ、
+ * 検索時に本体の結果 (差分の作品を除く) と人気順にマージします。
+ * 差分は人気スコアの定期反映 (全体の作り直し) で本体に取り込みます。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SuggestEngine implements CatalogIndexListener {
+
+    // 1ノードあたりに保持する候補数 (= サジェストの最大件数)
+    static final int TOP_K = 10;
+
+    private final RankingEngine rankingEngine;
+
+    private volatile Map<Integer, WorkSummary> works = new ConcurrentHashMap<>();
+    private volatile CompletionTrie trie = CompletionTrie.EMPTY;
+    private volatile Delta delta = Delta.EMPTY;
+    private volatile boolean ready;
+
+    // 本体のトライを閲覧数の復元後に作ったか (rebuild と同じロックの下で読み書きする)
+    private boolean builtWithPopularity;
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 前方一致サジェスト
+     * @return 人気順の作品 (本文なし)
+     */
+    public List<WorkSummary> suggest(String query) {
+        String prefix = TextNormalizer.normalize(query);
+        if (prefix.isEmpty()) {
+            return List.of();
+        }
+        Delta recent = delta;
+        int[] ids = trie.complete(prefix);
+        if (!recent.workIds().isEmpty()) {
+            ids = merge(ids, recent.trie().complete(prefix), recent.workIds());
+        }
+        List<WorkSummary> result = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            WorkSummary work = works.get(id);
+            if (work != null) {
+                result.add(work);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void onFullReload(List<WorkSummary> all) {
+        Map<Integer, WorkSummary> fresh = new ConcurrentHashMap<>();
+        for (WorkSummary work : all) {
+            if (work.getId() != null) {
+                fresh.put(work.getId(), work);
+            }
+        }
+        works = fresh;
+        rebuild();
+        ready = true;
+    }
+
+    @Override
+    public void onUpsert(List<WorkSummary> changed) {
+        // カード情報だけの変更はマップの差し替えで済む。トライに載るキーが変わった作品だけ差分トライに入れる
+        List<Integer> moved = new ArrayList<>();
+        for (WorkSummary work : changed) {
+            if (work.getId() != null) {
+                WorkSummary previous = works.put(work.getId(), work);
+                if (previous == null || !sameKeys(previous, work)) {
+                    moved.add(work.getId());
+                }
+            }
+        }
+        if (!moved.isEmpty()) {
+            rebuildDelta(moved);
+        }
+    }
+
+    // --- 人気スコア (閲覧数) の反映 ---
+    // 各ノードの上位 K 件は構築時に確定するため、最新の閲覧数を反映するには作り直す
+
+    /**
+     * 閲覧数の復元より先にトライができていた場合 (人気がすべて 0)、復元後に一度作り直す
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        rankingEngine.whenReady()
+            .doOnSuccess(v -> rebuildIfBuiltWithoutPopularity())
+            .subscribe();
+    }
+
+    @Scheduled(fixedDelayString = "${catalog.suggest.popularity-refresh-interval-ms:600000}",
+               initialDelayString = "${catalog.suggest.popularity-refresh-interval-ms:600000}")
+    public void refreshPopularity() {
+        if (!works.isEmpty()) {
+            rebuild();
+        }
+    }
+
+    // --- Private Methods ---
+
+    private synchronized void rebuildIfBuiltWithoutPopularity() {
+        if (!builtWithPopularity && !works.isEmpty()) {
+            rebuild();
+            log.info("Suggest index rebuilt with restored popularity");
+        }
+    }
+
+    /**
+     * トライを作り直して差し替える（数万件規模なら数十ミリ秒で完了する）
+     * 差分トライの内容も取り込むので、差分は空に戻す
+     */
+    private synchronized void rebuild() {
+        builtWithPopularity = rankingEngine.isReady();
+        trie = build(works.values());
+        delta = Delta.EMPTY;
+    }
+
+    /**
+     * キーが変わった作品を差分トライに加える（作り直すのは前回の全体構築以降に変わった作品だけ）
+     */
+    private synchronized void rebuildDelta(List<Integer> moved) {
+        Set<Integer> ids = new HashSet<>(delta.workIds());
+        ids.addAll(moved);
+        List<WorkSummary> recent = new ArrayList<>(ids.size());
+        for (Integer id : ids) {
+            WorkSummary work = works.get(id);
+            if (work != null) {
+                recent.add(work);
+            }
+        }
+        delta = new Delta(build(recent), Set.copyOf(ids));
+    }
+
+    private CompletionTrie build(Iterable<WorkSummary> source) {
+        List<String> keys = new ArrayList<>();
+        List<Integer> ids = new ArrayList<>();
+        for (WorkSummary work : source) {
+            keys.add(TextNormalizer.normalize(work.getTitle()));
+            ids.add(work.getId());
+            keys.add(TextNormalizer.normalize(work.getAuthorName()));
+            ids.add(work.getId());
+        }
+        return CompletionTrie.build(
+            keys,
+            ids.stream().mapToInt(Integer::intValue).toArray(),
+            rankingEngine::allTimeViews,
+            TOP_K);
+    }
+
+    /**
+     * 本体の結果 (キーが変わった作品を除く) と差分の結果を人気順にマージして上位 K 件を返す
+     */
+    private int[] merge(int[] base, int[] recent, Set<Integer> moved) {
+        Set<Integer> candidates = new LinkedHashSet<>();
+        for (int id : base) {
+            if (!moved.contains(id)) {
+                candidates.add(id);
+            }
+        }
+        for (int id : recent) {
+            candidates.add(id);
+        }
+        return candidates.stream()
+            .sorted(Comparator.comparingLong((Integer id) -> rankingEngine.allTimeViews(id)).reversed()
+                .thenComparingInt(id -> id))
+            .limit(TOP_K)
+            .mapToInt(Integer::intValue)
+            .toArray();
+    }
+
+    private static boolean sameKeys(WorkSummary a, WorkSummary b) {
+        return Objects.equals(TextNormalizer.normalize(a.getTitle()), TextNormalizer.normalize(b.getTitle()))
+            && Objects.equals(TextNormalizer.normalize(a.getAuthorName()), TextNormalizer.normalize(b.getAuthorName()));
+    }
+
+    /**
+     * 前回の全体構築以降にキーが変わった作品の差分トライ
+     */
+    private record Delta(CompletionTrie trie, Set<Integer> workIds) {
+
+        static final Delta EMPTY = new Delta(CompletionTrie.EMPTY, Set.of());
+    }
+}
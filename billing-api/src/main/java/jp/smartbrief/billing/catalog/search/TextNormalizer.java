@@ -0,0 +1,43 @@
+package jp.smartbrief.billing.catalog.search;
+
+import java.text.Normalizer;
+import java.util.Locale;
+
+/**
+ * 検索用テキスト正規化ユーティリティ
+ *
+ * インデックス登録時と検索時で同じ正規化をかけることで、
+ * 表記ゆれ（全角/半角、カタカナ/ひらがな、大文字/小文字、空白）を吸収します。
+ */
+public final class TextNormalizer {
+
+    private TextNormalizer() {
+    }
+
+    /**
+     * 1. NFKC 正規化 (全角英数 → 半角、半角カナ → 全角カナ)
+     * 2. 小文字化
+     * 3. カタカナ → ひらがな
+     * 4. 空白の除去
+     */
+    public static String normalize(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        String nfkc = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+
+        StringBuilder sb = new StringBuilder(nfkc.length());
+        for (int i = 0; i < nfkc.length(); i++) {
+            char c = nfkc.charAt(i);
+            if (Character.isWhitespace(c)) {
+                continue;
+            }
+            // ァ(U+30A1)〜ヶ(U+30F6) をひらがな (U+3041〜U+3096) に寄せる
+            if (c >= 'ァ' && c <= 'ヶ') {
+                c = (char) (c - 0x60);
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+}
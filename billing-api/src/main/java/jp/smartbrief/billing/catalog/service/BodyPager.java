@@ -0,0 +1,124 @@
+package jp.smartbrief.billing.catalog.service;
+
+import java.util.Arrays;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * 本文のページ分割
+ *
+ * 本文を約 page-chars 文字ごとのページに分け、各ページの開始位置 (文字オフセット) を返します。
+ * 境界はページ末尾付近の改行、なければ句点などの文末で切り、サロゲートペアは分割しません。
+ * 分割結果は作品ごとに一度だけ計算してキャッシュし、本文が更新された場合
+ * (文字数またはハッシュが変わった場合) のみ計算し直します。
+ */
+@Component
+public class BodyPager {
+
+    // 境界を探す範囲: ページ末尾から page-chars の 1/4 まで遡る
+    private static final int SEARCH_BACK_DIVISOR = 4;
+
+    private final int pageChars;
+    private final Cache<Integer, Pages> cache;
+
+    /**
+     * 作品1件分のページ境界
+     * @param offsets ページ i は [offsets[i], offsets[i + 1]) (長さは pageCount + 1)
+     */
+    public record Pages(int totalChars, int hash, int[] offsets) {
+
+        public int pageCount() {
+            return offsets.length - 1;
+        }
+
+        public int start(int page) {
+            return offsets[page];
+        }
+
+        public int end(int page) {
+            return offsets[page + 1];
+        }
+    }
+
+    public BodyPager(
+            @Value("${catalog.body.page-chars:2000}") int pageChars,
+            @Value("${catalog.body.max-cached-works:20000}") long maxCachedWorks) {
+        this.pageChars = Math.max(pageChars, 100);
+        this.cache = Caffeine.newBuilder()
+            .maximumSize(maxCachedWorks)
+            .build();
+    }
+
+    /**
+     * 作品のページ境界を返す（キャッシュ済みで本文が変わっていなければ再計算しない）
+     */
+    public Pages pages(int workId, String body) {
+        String text = body != null ? body : "";
+        Pages cached = cache.getIfPresent(workId);
+        if (cached != null && cached.totalChars() == text.length() && cached.hash() == text.hashCode()) {
+            return cached;
+        }
+        Pages fresh = new Pages(text.length(), text.hashCode(), paginate(text, pageChars));
+        cache.put(workId, fresh);
+        return fresh;
+    }
+
+    public void invalidate(int workId) {
+        cache.invalidate(workId);
+    }
+
+    /**
+     * ページの開始位置を計算する
+     */
+    static int[] paginate(String text, int pageChars) {
+        int n = text.length();
+        int[] offsets = new int[Math.max(2, n / Math.max(1, pageChars - pageChars / SEARCH_BACK_DIVISOR) + 2)];
+        int count = 0;
+        offsets[count++] = 0;
+
+        int pos = 0;
+        while (n - pos > pageChars) {
+            int limit = pos + pageChars;
+            int min = limit - pageChars / SEARCH_BACK_DIVISOR;
+            int cut = lastBreak(text, min, limit, true);
+            if (cut < 0) {
+                cut = lastBreak(text, min, limit, false);
+            }
+            if (cut < 0) {
+                cut = Character.isHighSurrogate(text.charAt(limit - 1)) ? limit - 1 : limit;
+            }
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+            }
+            offsets[count++] = cut;
+            pos = cut;
+        }
+        if (count == offsets.length) {
+            offsets = Arrays.copyOf(offsets, count + 1);
+        }
+        offsets[count++] = n;
+        return Arrays.copyOf(offsets, count);
+    }
+
+    /**
+     * (min, limit] の範囲で、直前の文字が改行 (または文末記号) である最後の位置
+     */
+    private static int lastBreak(String text, int min, int limit, boolean newlineOnly) {
+        for (int i = limit; i > min; i--) {
+            char c = text.charAt(i - 1);
+            if (newlineOnly ? c == '\n' : isSentenceEnd(c)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isSentenceEnd(char c) {
+        return c == '。' || c == '」' || c == '』' || c == '！' || c == '？'
+            || c == '.' || c == '!' || c == '?';
+    }
+}
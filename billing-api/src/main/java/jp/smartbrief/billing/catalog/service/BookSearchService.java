@@ -0,0 +1,274 @@
+package jp.smartbrief.billing.catalog.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import jp.smartbrief.billing.catalog.domain.WorkSummary;
+import jp.smartbrief.billing.catalog.dto.CursorPage;
+import jp.smartbrief.billing.catalog.dto.FacetPage;
+import jp.smartbrief.billing.catalog.repository.WorkSummaryRepository;
+import jp.smartbrief.billing.catalog.search.AuthorDirectory;
+import jp.smartbrief.billing.catalog.search.CatalogSearchEngine;
+import jp.smartbrief.billing.catalog.search.FacetIndex;
+import jp.smartbrief.billing.catalog.search.GenreQuery;
+import lombok.RequiredArgsConstructor;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * 書籍検索サービス
+ * * キーワード検索をインメモリの CatalogSearchEngine で解決し、
+ * ヒットした作品IDのページ分だけを DB から取得します (本文を含まない WorkSummary)。
+ * ジャンル検索は FacetIndex のビットマップ演算 (AND / OR / NOT ＋ カテゴリ) で解決します。
+ * 索引の初回ロードが終わるまでは従来の LIKE 検索にフォールバックします。
+ * また、一覧系 (キーワード・ジャンル・カテゴリ) のキーセット（カーソル）ページングを提供します。
+ */
+@Service
+@RequiredArgsConstructor
+public class BookSearchService {
+
+    private final WorkSummaryRepository workSummaryRepository;
+    private final CatalogSearchEngine searchEngine;
+    private final FacetIndex facetIndex;
+    private final AuthorDirectory authorDirectory;
+
+    /**
+     * キーワード検索（limit/offset/sort の仕様は従来の LIKE 検索と同じ）
+     * @param sort "length_desc" なら文字数の多い順、それ以外は work_id 昇順
+     */
+    public Flux<WorkSummary> searchByKeyword(String query, int limit, int offset, String sort) {
+        String keyword = query.trim();
+        boolean byLength = "length_desc".equals(sort);
+
+        // 索引が未構築の間は従来どおり SQL で検索する
+        if (!searchEngine.isReady()) {
+            String searchPattern = "%" + keyword + "%";
+            return byLength
+                ? workSummaryRepository.searchByKeywordOrderByLength(searchPattern, limit, offset)
+                : workSummaryRepository.searchByKeyword(searchPattern, limit, offset);
+        }
+
+        // 文字数順も索引が保持する text_length でメモリ上で並べ替える
+        int[] ids = byLength ? searchEngine.searchByLength(keyword) : searchEngine.search(keyword);
+        return findAllInOrder(toList(ids, offset, limit));
+    }
+
+    /**
+     * ファセット検索
+     * キーワード・ジャンル条件・著者の積集合の1ページ分と、結果全体のファセット件数を返す
+     * @param keyword キーワード (null / 空なら絞り込まない)
+     * @param author 著者名 (null なら絞り込まない)
+     */
+    public Mono<FacetPage<WorkSummary>> searchWithFacets(
+            String keyword, GenreQuery query, String author, int limit, int offset, String sort, int facetLimit) {
+        boolean hasKeyword = keyword != null && !keyword.isBlank();
+        if (!facetIndex.isReady() || (hasKeyword && !searchEngine.isReady())) {
+            return Mono.error(new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "検索索引を準備中です。しばらくしてから再度お試しください"));
+        }
+
+        int[] hits = hasKeyword ? searchEngine.search(keyword.trim()) : null;
+        FacetIndex.Result result = facetIndex.facets(query, author, hits, facetLimit);
+        int[] ids = "length_desc".equals(sort) ? searchEngine.sortByLength(result.ids()) : result.ids();
+
+        return findAllInOrder(toList(ids, offset, limit))
+            .collectList()
+            .map(items -> new FacetPage<>(items, result.ids().length,
+                result.genres(), result.authors(), result.categories()));
+    }
+
+    // --- キーセット（カーソル）ページング ---
+
+    /**
+     * キーワード検索（カーソル方式）
+     */
+    public Mono<CursorPage<WorkSummary>> searchByKeywordAfter(String query, String cursor, int limit, String sort) {
+        String keyword = query.trim();
+        boolean byLength = "length_desc".equals(sort);
+        PageCursor after = PageCursor.decode(cursor, byLength, false);
+
+        if (!searchEngine.isReady()) {
+            String searchPattern = "%" + keyword + "%";
+            return toPage(byLength
+                ? workSummaryRepository.searchByKeywordOrderByLengthAfter(searchPattern, after.sortKey(), after.workId(), limit + 1)
+                : workSummaryRepository.searchByKeywordAfter(searchPattern, after.workId(), limit + 1),
+                limit, byLength);
+        }
+
+        return pageAfter(searchEngine.search(keyword), after, limit, byLength);
+    }
+
+    /**
+     * ジャンル検索（カーソル方式）
+     */
+    public Mono<CursorPage<WorkSummary>> findByGenreAfter(GenreQuery query, String cursor, int limit, String sort) {
+        boolean byLength = "length_desc".equals(sort);
+        PageCursor after = PageCursor.decode(cursor, byLength, false);
+
+        if (!facetIndex.isReady()) {
+            String searchPattern = "%" + singleGenre(query) + "%";
+            return toPage(byLength
+                ? workSummaryRepository.findByGenreTagContainingOrderByLengthAfter(searchPattern, after.sortKey(), after.workId(), limit + 1)
+                : workSummaryRepository.findByGenreTagContainingAfter(searchPattern, after.workId(), limit + 1),
+                limit, byLength);
+        }
+        return pageAfter(facetIndex.search(query), after, limit, byLength);
+    }
+
+    /**
+     * カテゴリ一覧（カーソル方式・work_id 降順）
+     */
+    public Mono<CursorPage<WorkSummary>> findByCategoryAfter(String category, String cursor, int limit, String sort) {
+        boolean byLength = "length_desc".equals(sort);
+        PageCursor after = PageCursor.decode(cursor, byLength, true);
+        return toPage(byLength
+            ? workSummaryRepository.findByCategoryOrderByLengthAfter(category, after.sortKey(), after.workId(), limit + 1)
+            : workSummaryRepository.findByCategoryBefore(category, after.workId(), limit + 1),
+            limit, byLength);
+    }
+
+    /**
+     * 索引が返した作品ID (work_id 昇順) から、カーソル位置の次の1ページを取得する
+     */
+    private Mono<CursorPage<WorkSummary>> pageAfter(int[] ids, PageCursor after, int limit, boolean byLength) {
+        if (byLength) {
+            int[] sorted = searchEngine.sortByLength(ids);
+            int from = seekAfterLength(sorted, after);
+            return toPage(findAllInOrder(toList(sorted, from, limit + 1)), limit, true);
+        }
+        // work_id 昇順の配列なので、直前の work_id より後ろを二分探索で求める
+        int pos = Arrays.binarySearch(ids, after.workId());
+        int from = pos >= 0 ? pos + 1 : -(pos + 1);
+        return toPage(findAllInOrder(toList(ids, from, limit + 1)), limit, false);
+    }
+
+    /**
+     * (text_length 降順, work_id 降順) に並んだ配列で、カーソル位置より後ろの先頭インデックスを二分探索する
+     */
+    private int seekAfterLength(int[] ids, PageCursor after) {
+        int lo = 0, hi = ids.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            Integer length = searchEngine.textLength(ids[mid]);
+            long len = length != null ? length : -1L;
+            boolean beforeCursor = len > after.sortKey() || (len == after.sortKey() && ids[mid] >= after.workId());
+            if (beforeCursor) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * limit + 1 件取得した結果からページを組み立てる
+     * (limit を超える行があれば次ページあり。末尾の行から次のカーソルを作る)
+     */
+    private static Mono<CursorPage<WorkSummary>> toPage(Flux<WorkSummary> works, int limit, boolean byLength) {
+        return works.collectList().map(list -> {
+            if (limit <= 0) {
+                return new CursorPage<WorkSummary>(List.of(), null);
+            }
+            if (list.size() <= limit) {
+                return new CursorPage<>(list, null);
+            }
+            List<WorkSummary> items = list.subList(0, limit);
+            WorkSummary last = items.get(items.size() - 1);
+            PageCursor next = byLength
+                ? PageCursor.afterLength(last.getTextLength() != null ? last.getTextLength() : 0L, last.getId())
+                : PageCursor.afterId(last.getId());
+            return new CursorPage<>(List.copyOf(items), next.encode());
+        });
+    }
+
+    // --- オフセット方式の一覧 (従来仕様) ---
+
+    /**
+     * ジャンル検索
+     * @param sort "length_desc" なら文字数の多い順、それ以外は work_id 昇順
+     */
+    public Flux<WorkSummary> findByGenre(GenreQuery query, int limit, int offset, String sort) {
+        boolean byLength = "length_desc".equals(sort);
+
+        // 索引が未構築の間は単一ジャンルのみ従来の LIKE 検索で受け付ける
+        if (!facetIndex.isReady()) {
+            String searchPattern = "%" + singleGenre(query) + "%";
+            return byLength
+                ? workSummaryRepository.findByGenreTagContainingOrderByLength(searchPattern, limit, offset)
+                : workSummaryRepository.findByGenreTagContaining(searchPattern, limit, offset);
+        }
+
+        int[] ids = facetIndex.search(query);
+        if (byLength) {
+            ids = searchEngine.sortByLength(ids);
+        }
+        return findAllInOrder(toList(ids, offset, limit));
+    }
+
+    /**
+     * 作家別の作品一覧（作家名簿の作品IDから主キーで取得するため works をスキャンしない）
+     * @param sort "length_desc" なら文字数の多い順、それ以外は work_id 昇順
+     */
+    public Flux<WorkSummary> findByAuthor(String authorName, int limit, int offset, String sort) {
+        if (!authorDirectory.isReady()) {
+            return Flux.error(new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "作家名簿を準備中です。しばらくしてから再度お試しください"));
+        }
+        int[] ids = authorDirectory.worksOf(authorName);
+        if ("length_desc".equals(sort)) {
+            ids = searchEngine.sortByLength(ids);
+        }
+        return findAllInOrder(toList(ids, offset, limit));
+    }
+
+    /**
+     * カテゴリ一覧 (work_id 降順)
+     */
+    public Flux<WorkSummary> findByCategory(String category, int limit, int offset, String sort) {
+        return "length_desc".equals(sort)
+            ? workSummaryRepository.findByCategoryOrderByLength(category, limit, offset)
+            : workSummaryRepository.findByCategory(category, limit, offset);
+    }
+
+    /**
+     * ID順を保ったまま作品を取得する（IN 検索は順序を保証しないため並べ直す）
+     */
+    public Flux<WorkSummary> findAllInOrder(List<Integer> ids) {
+        if (ids.isEmpty()) {
+            return Flux.empty();
+        }
+        return workSummaryRepository.findAllByIdIn(ids)
+            .collectMap(WorkSummary::getId)
+            .flatMapIterable(works -> ordered(ids, works));
+    }
+
+    /**
+     * SQL フォールバックで扱える単一ジャンルを取り出す（複合条件は索引の構築完了まで 503）
+     */
+    private static String singleGenre(GenreQuery query) {
+        if (!query.isSingleGenre()) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "ジャンル索引を準備中です。しばらくしてから再度お試しください");
+        }
+        return query.all().get(0).trim();
+    }
+
+    private static List<WorkSummary> ordered(List<Integer> ids, Map<Integer, WorkSummary> works) {
+        return ids.stream().map(works::get).filter(Objects::nonNull).toList();
+    }
+
+    private static List<Integer> toList(int[] ids, int offset, int limit) {
+        int from = Math.min(Math.max(offset, 0), ids.length);
+        int to = (int) Math.min((long) from + Math.max(limit, 0), ids.length);
+        List<Integer> list = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            list.add(ids[i]);
+        }
+        return list;
+    }
+}
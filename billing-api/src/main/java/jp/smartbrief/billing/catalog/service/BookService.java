@@ -1,18 +1,25 @@
 package jp.smartbrief.billing.catalog.service;
 
-import java.time.LocalDate;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.util.Objects; // ★Nullチェック用に必須
 
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
 
-import jp.smartbrief.billing.catalog.domain.UserBookHistory;
+import jp.smartbrief.billing.catalog.cache.WorkCache;
+import jp.smartbrief.billing.catalog.content.BodyBlobStore;
 import jp.smartbrief.billing.catalog.domain.Work;
+import jp.smartbrief.billing.catalog.dto.BodyPage;
 import jp.smartbrief.billing.catalog.dto.BookResponse;
+import jp.smartbrief.billing.catalog.history.HistoryRecorder;
+import jp.smartbrief.billing.catalog.ranking.RankingEngine;
 import jp.smartbrief.billing.catalog.repository.UserBookHistoryRepository;
-import jp.smartbrief.billing.catalog.repository.WorkRepository;
 // ★修正: 正しいDTOパッケージをインポート
 import jp.smartbrief.billing.shared.dto.UserContext;
 
@@ -25,13 +32,19 @@ import reactor.core.publisher.Mono;
  * 1. 閲覧権限の判定（プレミアム会員 vs 無料会員の回数制限）
  * 2. 書籍データの取得
  * 3. 閲覧履歴の記録（重複閲覧の除外制御を含む）
+ * 4. 本文のページ単位・文字範囲単位での配信
  */
 @Service
 @RequiredArgsConstructor
 public class BookService {
 
-    private final WorkRepository workRepository;
+    private final WorkCache workCache;
     private final UserBookHistoryRepository historyRepository;
+    private final HistoryRecorder historyRecorder;
+    private final RankingEngine rankingEngine;
+    private final BodyPager bodyPager;
+    private final BodyBlobStore bodyBlobStore;
+    private final DailyQuotaService dailyQuotaService;
 
     /**
      * 書籍詳細を取得する（閲覧制限・履歴保存付き）
@@ -40,6 +53,14 @@ public class BookService {
      * @param dailyLimit 無料会員の1日あたりの閲覧上限回数
      */
     public Mono<BookResponse> getBookDetailWithLimit(Integer workId, UserContext context, int dailyLimit) {
+        return getBookDetailWithLimit(workId, context, dailyLimit, false);
+    }
+
+    /**
+     * 書籍詳細を取得する（閲覧制限・履歴保存付き）
+     * @param firstPageOnly true なら本文は先頭ページのみ返し、総ページ数を添える
+     */
+    public Mono<BookResponse> getBookDetailWithLimit(Integer workId, UserContext context, int dailyLimit, boolean firstPageOnly) {
         // 1. バリデーション（Fail-Fast）
         // Integer型はnullの可能性があるため、ここで明確に弾くことで以降のロジックを安全にする
         if (workId == null) {
@@ -49,93 +70,181 @@ public class BookService {
             return Mono.error(new ResponseStatusException(HttpStatus.UNAUTHORIZED, "ログインが必要です"));
         }
 
-        // 2. 権限チェック（プレミアムならスキップ、無料なら回数確認）
+        // 2. 権限チェック（プレミアムならスキップ、無料なら閲覧回数を1回分取得）
         // 判定ロジックを別メソッドに逃がすことで、メインフローを見やすく保つ
-        Mono<Void> permissionCheck = context.isPremium()
-            ? Mono.empty()
-            : checkDailyLimit(context.userId(), dailyLimit);
+        Mono<Boolean> permissionCheck = context.isPremium()
+            ? Mono.just(false)
+            : acquireDailyQuota(context.userId(), dailyLimit);
 
         // 3. データ取得と履歴保存の実行
+        // 取得した回数は、作品が見つからない・重複閲覧で履歴を残さない場合に返却する
         // requireNonNullを通すことで、IDEやコンパイラに「ここは絶対にnullじゃない」と伝える
-        return permissionCheck
-            .then(fetchWorkAndRecordHistory(Objects.requireNonNull(workId), context));
+        return permissionCheck.flatMap(acquired ->
+            fetchWorkAndRecordHistory(Objects.requireNonNull(workId), context, firstPageOnly)
+                .flatMap(result -> !result.recorded() && acquired
+                    ? dailyQuotaService.release(context.userId()).thenReturn(result.response())
+                    : Mono.just(result.response()))
+                .onErrorResume(e -> acquired
+                    ? dailyQuotaService.release(context.userId()).then(Mono.error(e))
+                    : Mono.error(e)));
+    }
+
+    /**
+     * 本文の1ページを取得する（閲覧回数は消費しない）
+     * @param page ページ番号 (1 始まり)
+     */
+    public Mono<BodyPage> getBodyPage(Integer workId, int page, UserContext context) {
+        return readableWork(workId, context).handle((work, sink) -> {
+            BodyPager.Pages pages = bodyPager.pages(work.getId(), work.getBodyText());
+            if (page < 1 || page > pages.pageCount()) {
+                sink.error(new ResponseStatusException(HttpStatus.NOT_FOUND, "ページが存在しません"));
+                return;
+            }
+            int index = page - 1;
+            sink.next(new BodyPage(work.getId(), page, pages.pageCount(), pages.start(index), pages.end(index),
+                pages.totalChars(), work.getBodyText().substring(pages.start(index), pages.end(index))));
+        });
+    }
+
+    /**
+     * 本文を取得する（閲覧回数は消費しない）
+     * Range 指定の解釈は呼び出し側 (CharRange) で行う
+     */
+    public Mono<String> getBodyText(Integer workId, UserContext context) {
+        return readableWork(workId, context).map(Work::getBodyText);
     }
 
     // --- Private Methods: 複雑なロジックを分離 ---
 
     /**
-     * 無料会員の閲覧制限をチェックする
-     * DBアクセスを伴うため、非同期(Mono)で返す
+     * 無料会員の閲覧回数を1回分取得する（判定と加算は DailyQuotaService で原子的に行う）
+     * @return 取得できたら true。上限に達していればエラー
      */
-    private Mono<Void> checkDailyLimit(Long userId, int limit) {
-        LocalDateTime todayStart = LocalDate.now().atStartOfDay();
-        
-        return historyRepository.countByUserIdAndViewedAtAfter(userId, todayStart)
-            .handle((count, sink) -> {
-                if (count >= limit) {
+    private Mono<Boolean> acquireDailyQuota(Long userId, int limit) {
+        return dailyQuotaService.tryAcquire(userId, limit)
+            .handle((acquired, sink) -> {
+                if (!acquired) {
                     sink.error(new ResponseStatusException(HttpStatus.FORBIDDEN, 
                         "無料プランの1日の閲覧制限（" + limit + "回）に達しました。"));
                 } else {
-                    sink.complete(); // チェック通過
+                    sink.next(true); // チェック通過
                 }
             });
     }
 
+    /**
+     * 本文をそのまま配信する形で取得する
+     * ファイルストアに移行済みで、クライアントが gzip を受け付けるなら圧縮ファイルをそのまま返す
+     * (WebFlux がファイルからソケットへゼロコピーで転送する)。それ以外は UTF-8 の本文を返す
+     */
+    public Mono<BodyContent> getBodyContent(Integer workId, UserContext context, boolean acceptsGzip) {
+        return readableWork(workId, context).map(work -> {
+            if (acceptsGzip && work.getBodyRef() != null && bodyBlobStore.isEnabled()) {
+                Path file = bodyBlobStore.compressedFile(work.getBodyRef());
+                // DB 列に新しい本文が戻されている場合はそちらを優先する (ファイルは古い可能性がある)
+                if (file != null && work.isBodyFromStore()) {
+                    return new BodyContent(new FileSystemResource(file), true);
+                }
+            }
+            return new BodyContent(new ByteArrayResource(work.getBodyText().getBytes(StandardCharsets.UTF_8)), false);
+        });
+    }
+
+    /**
+     * 配信する本文
+     * @param gzip resource が gzip 圧縮済みか (Content-Encoding: gzip で返す)
+     */
+    public record BodyContent(Resource resource, boolean gzip) {
+    }
+
+    /**
+     * 本文を読める作品を取得する
+     * プレミアム会員は常に可。無料会員は今日すでに詳細を開いた (閲覧回数を消費した) 作品のみ可
+     */
+    private Mono<Work> readableWork(Integer workId, UserContext context) {
+        if (workId == null) {
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "Book ID is required"));
+        }
+        if (!context.isAuthenticated()) {
+            return Mono.error(new ResponseStatusException(HttpStatus.UNAUTHORIZED, "ログインが必要です"));
+        }
+        // 直近に開いた作品はまだ履歴が書き込まれていないことがあるため、先にメモリ上で判定する
+        Mono<Void> permissionCheck = context.isPremium() || historyRecorder.viewedRecently(context.userId(), workId)
+            ? Mono.empty()
+            : historyRepository.existsByUserIdAndBookIdAndViewedAtAfter(
+                    context.userId(), workId, DailyQuotaService.todayStart())
+                .handle((viewed, sink) -> {
+                    if (!viewed) {
+                        sink.error(new ResponseStatusException(HttpStatus.FORBIDDEN, "先に作品の詳細を開いてください"));
+                    } else {
+                        sink.complete();
+                    }
+                });
+
+        return permissionCheck.then(workCache.get(workId))
+            .switchIfEmpty(Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND, "作品が見つかりません")))
+            .filter(work -> work.getBodyText() != null)
+            .switchIfEmpty(Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND, "本文がありません")));
+    }
+
     /**
      * 書籍を取得し、履歴を保存してレスポンスに変換する
      */
-    private Mono<BookResponse> fetchWorkAndRecordHistory(Integer workId, UserContext context) {
-        // ここでも念のため Objects.requireNonNull を使い、Repositoryへの引数不正を防ぐ
-        return workRepository.findById(Objects.requireNonNull(workId))
+    private Mono<DetailResult> fetchWorkAndRecordHistory(Integer workId, UserContext context, boolean firstPageOnly) {
+        // 本文を含むため、同じ作品の再読み込みを避けて作品キャッシュから取得する
+        return workCache.get(Objects.requireNonNull(workId))
             .switchIfEmpty(Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND, "作品が見つかりません")))
             .flatMap(work -> 
                 // 「履歴保存（副作用）」と「レスポンス生成」をチェーンさせる
                 recordHistoryIfNeeded(work, context.userId())
-                    .thenReturn(createResponse(work, context.isPremium()))
+                    .map(recorded -> new DetailResult(createResponse(work, context.isPremium(), firstPageOnly), recorded))
             );
     }
 
     /**
-     * 履歴を保存する（直近の重複閲覧はスキップ）
-     * ※「1分以内の再アクセスはカウントしない」という仕様をここで表現
+     * 詳細取得の結果
+     * @param recorded 閲覧履歴を新たに保存したか (重複閲覧なら false)
+     */
+    private record DetailResult(BookResponse response, boolean recorded) {
+    }
+
+    /**
+     * 履歴を記録する（直近の重複閲覧はスキップ）
+     * ※「1分以内の再アクセスはカウントしない」という仕様は HistoryRecorder の重複判定ウィンドウで表現
+     * 書き込みはキュー経由でまとめて行うため、ここでは DB の応答を待たない
+     * @return 記録したら true
      */
-    private Mono<Void> recordHistoryIfNeeded(Work work, Long userId) {
+    private Mono<Boolean> recordHistoryIfNeeded(Work work, Long userId) {
         Integer bId = work.getId();
-        if (bId == null) return Mono.empty(); // IDがないデータは履歴保存不可
-
-        return historyRepository.findFirstByUserIdAndBookIdOrderByViewedAtDesc(userId, bId)
-            .filter(latest -> {
-                // 履歴の日時チェック（null安全に）
-                return latest.getViewedAt() != null 
-                    && latest.getViewedAt().isAfter(LocalDateTime.now().minusSeconds(60));
-            })
-            .hasElement() // 直近の履歴があれば true
-            .flatMap(hasRecentHistory -> {
-                if (hasRecentHistory) {
-                    return Mono.empty(); // 保存スキップ
+        if (bId == null) return Mono.just(false); // IDがないデータは履歴保存不可
+
+        return historyRecorder.record(userId, bId, work.getTitle(), work.getAuthorName())
+            // 受け付けた閲覧だけをランキングに反映する
+            .doOnNext(recorded -> {
+                if (recorded) {
+                    rankingEngine.record(bId, LocalDateTime.now());
                 }
-                // 新規保存
-                UserBookHistory history = new UserBookHistory();
-                history.setUserId(userId);
-                history.setBookId(bId);
-                history.setBookTitle(work.getTitle());
-                history.setAuthorName(work.getAuthorName());
-                history.setViewedAt(LocalDateTime.now());
-                
-                // saveの結果には興味がない（保存完了さえすればいい）ので .then() でVoidにする
-                return historyRepository.save(history).then();
             });
     }
 
     /**
      * エンティティからレスポンスへの変換
-     * 詳細API用なので本文(bodyText)を含める
+     * 詳細API用なので本文(bodyText)を含める（firstPageOnly なら先頭ページと総ページ数のみ）
      */
-    private BookResponse createResponse(Work work, boolean isPremium) {
+    private BookResponse createResponse(Work work, boolean isPremium, boolean firstPageOnly) {
         BookResponse response = BookResponse.from(work, isPremium);
         // DTO変換でnullが返るケース（Workがnullなど）は上流で防いでいるが、念のため
-        if (response != null) {
-            response.setBodyText(work.getBodyText());
+        if (response == null) {
+            return null;
+        }
+        String body = work.getBodyText();
+        if (firstPageOnly && body != null) {
+            BodyPager.Pages pages = bodyPager.pages(work.getId(), body);
+            response.setBodyText(body.substring(pages.start(0), pages.end(0)));
+            response.setBodyPageCount(pages.pageCount());
+            response.setBodyTotalChars(pages.totalChars());
+        } else {
+            response.setBodyText(body);
         }
         return response;
     }
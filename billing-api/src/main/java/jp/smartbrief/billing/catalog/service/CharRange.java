@@ -0,0 +1,109 @@
+package jp.smartbrief.billing.catalog.service;
+
+import java.util.Optional;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * 本文の文字範囲 (Range: chars=START-END)
+ *
+ * HTTP の Range ヘッダーと同じ書式を文字単位で解釈します（単一範囲のみ）。
+ * - chars=100-199 : 100 文字目から 199 文字目まで (END を含む)
+ * - chars=100-    : 100 文字目から末尾まで
+ * - chars=-500    : 末尾の 500 文字
+ * 文字数は String の長さ (UTF-16) で数えます。サロゲートペアの途中で切れる場合は、ペア全体を含むよう範囲を広げます。
+ * chars 以外の単位 (bytes など) の Range は無視します（全文を返す）。
+ *
+ * @param start 開始位置 (含む)
+ * @param end   終了位置 (含まない)
+ */
+public record CharRange(int start, int end) {
+
+    public static final String UNIT = "chars";
+
+    /**
+     * Range ヘッダーを解釈する
+     * @param text 本文
+     * @return Range がない・chars 以外の単位なら空 (全文を返す)
+     * @throws ResponseStatusException 書式不正・範囲外 (416。Content-Range で総文字数を返す)
+     */
+    public static Optional<CharRange> parse(String header, String text) {
+        String prefix = UNIT + "=";
+        if (header == null || !header.regionMatches(true, 0, prefix, 0, prefix.length())) {
+            return Optional.empty();
+        }
+        int total = text.length();
+        if (header.indexOf(',') >= 0) {
+            throw unsatisfiable(total);
+        }
+        String spec = header.substring(prefix.length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            throw unsatisfiable(total);
+        }
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            if (first.isEmpty()) {
+                // 末尾からの文字数指定
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0 || total == 0) {
+                    throw unsatisfiable(total);
+                }
+                return Optional.of(aligned(text, (int) Math.max(0, total - suffix), total));
+            }
+            long start = Long.parseLong(first);
+            long endInclusive = last.isEmpty() ? total - 1L : Math.min(Long.parseLong(last), total - 1L);
+            if (start >= total || endInclusive < start) {
+                throw unsatisfiable(total);
+            }
+            return Optional.of(aligned(text, (int) start, (int) endInclusive + 1));
+        } catch (NumberFormatException e) {
+            throw unsatisfiable(total);
+        }
+    }
+
+    /**
+     * Content-Range ヘッダーの値 (chars START-END/TOTAL)
+     */
+    public String contentRange(int total) {
+        return UNIT + " " + start + "-" + (end - 1) + "/" + total;
+    }
+
+    // --- Private Methods ---
+
+    // サロゲートペアを分断しないよう、開始は前へ・終了は後ろへずらす
+    private static CharRange aligned(String text, int start, int end) {
+        if (start > 0 && Character.isLowSurrogate(text.charAt(start)) && Character.isHighSurrogate(text.charAt(start - 1))) {
+            start--;
+        }
+        if (end < text.length() && Character.isLowSurrogate(text.charAt(end)) && Character.isHighSurrogate(text.charAt(end - 1))) {
+            end++;
+        }
+        return new CharRange(start, end);
+    }
+
+    private static ResponseStatusException unsatisfiable(int total) {
+        return new RangeNotSatisfiableException(total);
+    }
+
+    /**
+     * 416 (応答の Content-Range で総文字数を伝える)
+     */
+    private static final class RangeNotSatisfiableException extends ResponseStatusException {
+
+        private final HttpHeaders headers = new HttpHeaders();
+
+        RangeNotSatisfiableException(int total) {
+            super(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE, "Range の指定が不正です");
+            headers.set(HttpHeaders.CONTENT_RANGE, UNIT + " */" + total);
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+    }
+}
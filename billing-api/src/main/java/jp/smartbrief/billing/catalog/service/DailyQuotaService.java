@@ -0,0 +1,217 @@
+package jp.smartbrief.billing.catalog.service;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jp.smartbrief.billing.catalog.repository.DailyQuotaRepository;
+import jp.smartbrief.billing.catalog.repository.UserBookHistoryRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+/**
+ * 無料会員の日次閲覧回数サービス
+ *
+ * (ユーザーID, JST の日付) ごとの閲覧回数を数え、上限判定と加算を原子的に行います。
+ * 「件数を数えてから履歴を保存する」方式では、Web と LINE から同時に開くと
+ * 両方が上限をすり抜けていたため、判定と加算を1回の操作にまとめています。
+ *
+ * - memory モード (既定): ユーザーごとの AtomicLong に (日付, 回数) を詰めて CAS で更新する。
+ *   ロックはユーザー単位 (ConcurrentHashMap の分割ロック) のみで、日付が変わったら CAS の中で 0 に戻す。
+ *   カウンタのないユーザーは初回に閲覧履歴の件数から作る（起動時は全ユーザー分をまとめて作る）
+ * - database モード: daily_quota テーブルの UPDATE で判定と加算を行い、複数インスタンスで共有する
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DailyQuotaService {
+
+    public static final ZoneId JST = ZoneId.of("Asia/Tokyo");
+
+    private final UserBookHistoryRepository historyRepository;
+    private final DailyQuotaRepository dailyQuotaRepository;
+
+    // memory / database
+    @Value("${catalog.quota.mode:memory}")
+    private String mode;
+
+    // database モードで残しておく日数
+    @Value("${catalog.quota.retention-days:7}")
+    private int retentionDays;
+
+    private final Map<Long, Counter> counters = new ConcurrentHashMap<>();
+
+    /**
+     * 閲覧回数を1回分取得する（上限に達していれば取得しない）
+     * @return 取得できたら true
+     */
+    public Mono<Boolean> tryAcquire(Long userId, int limit) {
+        LocalDate today = today();
+        if (isDatabaseMode()) {
+            return tryAcquireInDatabase(userId, today, limit);
+        }
+        return counter(userId, today).map(counter -> counter.tryIncrement(today.toEpochDay(), limit));
+    }
+
+    /**
+     * 取得した1回分を返す（作品が見つからない・重複閲覧で履歴を残さなかった場合など）
+     */
+    public Mono<Void> release(Long userId) {
+        LocalDate today = today();
+        if (isDatabaseMode()) {
+            return dailyQuotaRepository.decrement(userId, today).then();
+        }
+        Counter counter = counters.get(userId);
+        if (counter != null) {
+            counter.decrement(today.toEpochDay());
+        }
+        return Mono.empty();
+    }
+
+    /**
+     * JST の今日
+     */
+    public static LocalDate today() {
+        return LocalDate.now(JST);
+    }
+
+    /**
+     * JST の今日の 0:00 を、閲覧履歴 (viewed_at はサーバーのローカル時刻) と比較できる形で返す
+     */
+    public static LocalDateTime todayStart() {
+        return today().atStartOfDay(JST).withZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime();
+    }
+
+    /**
+     * サーバーのローカル時刻の UTC オフセット (+HH:MM)
+     * SQL で viewed_at を JST の日付に直すときに使う: DATE(CONVERT_TZ(viewed_at, :offset, '+09:00'))
+     */
+    public static String localOffset() {
+        ZoneOffset offset = ZoneId.systemDefault().getRules().getOffset(Instant.now());
+        return offset.equals(ZoneOffset.UTC) ? "+00:00" : offset.getId();
+    }
+
+    // --- 起動時の復元・日次の掃除 ---
+
+    /**
+     * 今日すでに閲覧したユーザーのカウンタをまとめて作る
+     * (作成済みのカウンタは上書きしないため、起動直後に受け付けた閲覧と二重に数えない)
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (isDatabaseMode()) {
+            return;
+        }
+        long day = today().toEpochDay();
+        historyRepository.findViewCountsByUserSince(todayStart())
+            .filter(count -> count.userId() != null && count.views() != null)
+            .doOnNext(count -> counters.putIfAbsent(count.userId(), new Counter(day, count.views())))
+            .count()
+            .doOnNext(users -> log.info("Daily quota counters restored: {} users", users))
+            .doOnError(e -> log.warn("Daily quota restore failed: {}", e.getMessage()))
+            .onErrorResume(e -> Mono.empty())
+            .subscribe();
+    }
+
+    @Scheduled(cron = "${catalog.quota.cleanup-cron:0 5 0 * * *}", zone = "Asia/Tokyo")
+    public Mono<Void> cleanup() {
+        if (isDatabaseMode()) {
+            return dailyQuotaRepository.deleteBefore(today().minusDays(retentionDays))
+                .doOnError(e -> log.warn("Daily quota cleanup failed: {}", e.getMessage()))
+                .onErrorResume(e -> Mono.empty())
+                .then();
+        }
+        // 前日以前のカウンタは使われないので外す（次の閲覧時に今日の分として作り直す）
+        long day = today().toEpochDay();
+        counters.entrySet().removeIf(entry -> entry.getValue().day() < day);
+        return Mono.empty();
+    }
+
+    // --- Private Methods ---
+
+    private boolean isDatabaseMode() {
+        return "database".equalsIgnoreCase(mode);
+    }
+
+    /**
+     * ユーザーのカウンタを返す（なければ今日の閲覧履歴の件数から作る）
+     */
+    private Mono<Counter> counter(Long userId, LocalDate today) {
+        Counter existing = counters.get(userId);
+        if (existing != null) {
+            return Mono.just(existing);
+        }
+        return historyRepository.countByUserIdAndViewedAtAfter(userId, todayStart())
+            .map(count -> counters.computeIfAbsent(userId, id -> new Counter(today.toEpochDay(), count)));
+    }
+
+    /**
+     * database モード: 上限未満なら加算、行がなければ履歴から作ってもう一度だけ試す
+     */
+    private Mono<Boolean> tryAcquireInDatabase(Long userId, LocalDate today, int limit) {
+        return dailyQuotaRepository.incrementIfBelow(userId, today, limit)
+            .flatMap(updated -> updated > 0
+                ? Mono.just(true)
+                : dailyQuotaRepository.insertFromHistory(userId, today, todayStart())
+                    .then(dailyQuotaRepository.incrementIfBelow(userId, today, limit))
+                    .map(retried -> retried > 0));
+    }
+
+    /**
+     * ユーザー1人分のカウンタ
+     * 上位 32 ビットに日付 (epochDay)、下位 32 ビットに回数を詰めて1つの CAS で更新する
+     */
+    private static final class Counter {
+        private final AtomicLong state;
+
+        Counter(long day, long count) {
+            this.state = new AtomicLong(pack(day, count));
+        }
+
+        long day() {
+            return state.get() >>> 32;
+        }
+
+        boolean tryIncrement(long today, int limit) {
+            while (true) {
+                long current = state.get();
+                long count = (current >>> 32) == today ? current & 0xFFFFFFFFL : 0; // 日付が変わっていれば 0 から
+                if (count >= limit) {
+                    return false;
+                }
+                if (state.compareAndSet(current, pack(today, count + 1))) {
+                    return true;
+                }
+            }
+        }
+
+        void decrement(long today) {
+            while (true) {
+                long current = state.get();
+                long count = current & 0xFFFFFFFFL;
+                if ((current >>> 32) != today || count == 0) {
+                    return;
+                }
+                if (state.compareAndSet(current, pack(today, count - 1))) {
+                    return;
+                }
+            }
+        }
+
+        private static long pack(long day, long count) {
+            return (day << 32) | Math.min(count, 0xFFFFFFFFL);
+        }
+    }
+}
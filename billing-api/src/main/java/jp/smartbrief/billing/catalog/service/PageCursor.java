@@ -0,0 +1,78 @@
+package jp.smartbrief.billing.catalog.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * キーセットページング用カーソル
+ *
+ * 直前ページ末尾の (並び替えキー, work_id) を保持し、次ページは
+ * 「その位置より後ろ」をインデックスでシークして取得します (OFFSET を使わない)。
+ * クライアントには Base64URL でエンコードした不透明な文字列として渡します。
+ *
+ * 形式: "id:{workId}" (work_id 順) / "len:{文字数}:{workId}" (文字数順)
+ */
+public record PageCursor(boolean byLength, long sortKey, int workId) {
+
+    /**
+     * work_id 順の先頭ページ (work_id 昇順用)
+     */
+    public static PageCursor firstById() {
+        return new PageCursor(false, 0, 0);
+    }
+
+    /**
+     * work_id 降順の先頭ページ
+     */
+    public static PageCursor firstByIdDesc() {
+        return new PageCursor(false, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 文字数 (降順) の先頭ページ
+     */
+    public static PageCursor firstByLength() {
+        return new PageCursor(true, Long.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    public static PageCursor afterId(int workId) {
+        return new PageCursor(false, 0, workId);
+    }
+
+    public static PageCursor afterLength(long length, int workId) {
+        return new PageCursor(true, length, workId);
+    }
+
+    public String encode() {
+        String raw = byLength ? "len:" + sortKey + ":" + workId : "id:" + workId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * カーソル文字列を復元する（空文字・null は先頭ページ）
+     * @param byLength リクエストの並び順が文字数順か
+     * @param descending work_id 順の場合に降順か
+     */
+    public static PageCursor decode(String cursor, boolean byLength, boolean descending) {
+        if (cursor == null || cursor.isBlank()) {
+            if (byLength) return firstByLength();
+            return descending ? firstByIdDesc() : firstById();
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split(":");
+            if (byLength && parts.length == 3 && "len".equals(parts[0])) {
+                return afterLength(Long.parseLong(parts[1]), Integer.parseInt(parts[2]));
+            }
+            if (!byLength && parts.length == 2 && "id".equals(parts[0])) {
+                return afterId(Integer.parseInt(parts[1]));
+            }
+        } catch (IllegalArgumentException e) {
+            // 下で 400 にする (NumberFormatException も含む)
+        }
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "カーソルが不正です");
+    }
+}
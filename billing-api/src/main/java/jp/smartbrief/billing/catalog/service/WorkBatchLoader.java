@@ -0,0 +1,69 @@
+package jp.smartbrief.billing.catalog.service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jp.smartbrief.billing.catalog.domain.WorkSummary;
+import jp.smartbrief.billing.catalog.repository.WorkSummaryRepository;
+import lombok.RequiredArgsConstructor;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * 作品の一括ローダー
+ *
+ * 閲覧履歴・お気に入りなど「作品IDを持つ行」のストリームを受け取り、
+ * 一定件数 (または短い待ち時間) ごとにまとめて IN (...) で作品を引き当てます。
+ * 1行ごとの findById (N+1) を避け、コネクションプールを1リクエストで使い切らないようにします。
+ * バッファはリクエストのストリームごとに作られるため、リクエスト間で状態は共有しません。
+ */
+@Component
+@RequiredArgsConstructor
+public class WorkBatchLoader {
+
+    private final WorkSummaryRepository workSummaryRepository;
+
+    // 1回の IN 検索にまとめる最大件数
+    @Value("${catalog.batch-loader.max-batch-size:200}")
+    private int maxBatchSize;
+
+    // バッチが埋まらなくても問い合わせるまでの待ち時間 (ミリ秒)
+    @Value("${catalog.batch-loader.max-wait-ms:5}")
+    private long maxWaitMillis;
+
+    /**
+     * 各行に対応する作品を引き当てて変換する（行の順序を保つ）
+     * @param bookId 行から作品IDを取り出す関数 (null の行は捨てる)
+     * @param found 作品が見つかった行の変換
+     * @param missing 作品が見つからない行 (削除済みなど) の変換。null を返せば捨てる
+     */
+    public <T, R> Flux<R> load(
+            Flux<T> rows,
+            Function<T, Integer> bookId,
+            Function<WorkSummary, R> found,
+            Function<T, R> missing) {
+        return rows
+            .filter(row -> bookId.apply(row) != null)
+            .bufferTimeout(maxBatchSize, Duration.ofMillis(maxWaitMillis))
+            // concatMap でバッチの順序を保つ（同時に使うコネクションも1本に抑えられる）
+            .concatMap(batch -> fetch(batch, bookId)
+                .flatMapIterable(works -> batch.stream()
+                    .map(row -> {
+                        WorkSummary work = works.get(bookId.apply(row));
+                        return work != null ? found.apply(work) : missing.apply(row);
+                    })
+                    .filter(Objects::nonNull)
+                    .toList()));
+    }
+
+    private <T> Mono<Map<Integer, WorkSummary>> fetch(List<T> batch, Function<T, Integer> bookId) {
+        List<Integer> ids = batch.stream().map(bookId).distinct().toList();
+        return workSummaryRepository.findAllByIdIn(ids).collectMap(WorkSummary::getId);
+    }
+}
@@ -7,22 +7,22 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
 
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.lang.NonNull;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.transaction.reactive.TransactionalOperator;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
-import org.springframework.web.reactive.function.client.WebClient;
 
 import jp.smartbrief.billing.identity.domain.User;
 import jp.smartbrief.billing.identity.repository.UserRepository;
+import jp.smartbrief.billing.identity.service.EmailOutboxService;
+import jp.smartbrief.billing.identity.service.PasswordHashingService;
 import jp.smartbrief.billing.shared.security.JwtUtil;
+import jp.smartbrief.billing.shared.security.PrincipalCache;
 import reactor.core.publisher.Mono;
 
 /**
@@ -35,19 +35,21 @@ import reactor.core.publisher.Mono;
 public class AuthController {
 
     private final UserRepository userRepository;
-    private final PasswordEncoder passwordEncoder;
+    private final PasswordHashingService passwordHashingService;
     private final JwtUtil jwtUtil;
-    
-    @Value("${n8n.webhook.email:https://n8n.smartbrief.jp/webhook/send-email}")
-    private String n8nEmailWebhookUrl;
-
-    @Value("${n8n.webhook.verify:https://n8n.smartbrief.jp/webhook/webhook/verify-email}")
-    private String n8nVerifyEmailWebhookUrl;
+    private final PrincipalCache principalCache;
+    private final EmailOutboxService emailOutboxService;
+    private final TransactionalOperator transactionalOperator;
 
-    public AuthController(UserRepository userRepository, PasswordEncoder passwordEncoder, JwtUtil jwtUtil) {
+    public AuthController(UserRepository userRepository, PasswordHashingService passwordHashingService, JwtUtil jwtUtil,
+                          PrincipalCache principalCache, EmailOutboxService emailOutboxService,
+                          TransactionalOperator transactionalOperator) {
         this.userRepository = userRepository;
-        this.passwordEncoder = passwordEncoder;
+        this.passwordHashingService = passwordHashingService;
         this.jwtUtil = jwtUtil;
+        this.principalCache = principalCache;
+        this.emailOutboxService = emailOutboxService;
+        this.transactionalOperator = transactionalOperator;
     }
 
     // --- ヘルパーメソッド: JSON形式のレスポンスを作成 ---
@@ -61,8 +63,9 @@ public class AuthController {
     // --- 1. ログイン処理 ---
     @PostMapping("/login")
     public Mono<ResponseEntity<Map<String, String>>> login(@RequestBody @NonNull AuthRequest request) {
+        // BCrypt の照合はイベントループを塞がないよう専用プールで行う（混雑時は 503、同じIDへの連続試行は 429）
         return userRepository.findByUsernameOrEmail(request.getUsername()) 
-            .filter(user -> passwordEncoder.matches(request.getPassword(), user.getPassword()))
+            .filterWhen(user -> passwordHashingService.matches(request.getUsername(), request.getPassword(), user.getPassword()))
             .flatMap(user -> {
                 if (!Boolean.TRUE.equals(user.getIsVerified())) {
                     return Mono.just(createResponse("メールアドレスの認証が完了していません。受信トレイを確認してください。", HttpStatus.UNAUTHORIZED));
@@ -105,11 +108,11 @@ public class AuthController {
             .switchIfEmpty(
                 userRepository.findByEmail(email)
                     .flatMap(u -> Mono.just(createResponse("このメールアドレスは既に登録されています", HttpStatus.BAD_REQUEST)))
-                    .switchIfEmpty(Mono.defer(() -> {
+                    .switchIfEmpty(passwordHashingService.encode(password).flatMap(encodedPassword -> {
                         User newUser = new User();
                         newUser.setUsername(username);
                         newUser.setEmail(email);
-                        newUser.setPassword(passwordEncoder.encode(password));
+                        newUser.setPassword(encodedPassword);
                         newUser.setRoles("ROLE_USER");
                         newUser.setPlanType("FREE");
                         
@@ -117,23 +120,11 @@ public class AuthController {
                         String token = UUID.randomUUID().toString();
                         newUser.setVerificationToken(token);
                         
+                        // ユーザーと認証メールの送信依頼を同じトランザクションで保存する（送信はアウトボックスから非同期）
                         return userRepository.save(newUser)
-                            .flatMap(savedUser -> {
-                                WebClient.create()
-                                    .post()
-                                    .uri(Objects.requireNonNull(n8nVerifyEmailWebhookUrl))
-                                    .contentType(Objects.requireNonNull(MediaType.APPLICATION_JSON)) // ★ラップ
-                                    .bodyValue(Objects.requireNonNull(Map.of(
-                                        "email", savedUser.getEmail(),
-                                        "username", savedUser.getUsername(),
-                                        "verification_token", token
-                                    )))
-                                    .retrieve()
-                                    .toBodilessEntity()
-                                    .subscribe();
-
-                                return Mono.just(createResponse("仮登録が完了しました。送信されたメール内のリンクをクリックして認証を完了してください。", HttpStatus.OK));
-                            });
+                            .flatMap(savedUser -> emailOutboxService.enqueueVerification(savedUser.getEmail(), savedUser.getUsername(), token))
+                            .as(transactionalOperator::transactional)
+                            .thenReturn(createResponse("仮登録が完了しました。送信されたメール内のリンクをクリックして認証を完了してください。", HttpStatus.OK));
                     }))
             );
     }
@@ -155,6 +146,7 @@ public class AuthController {
                 user.setVerificationToken(null);
 
                 return userRepository.save(user)
+                    .doOnNext(saved -> principalCache.invalidate(saved.getUsername()))
                     .map(saved -> createResponse("メール認証が完了しました！", HttpStatus.OK));
             })
             .switchIfEmpty(Mono.just(createResponse("無効なトークンか、期限切れです。", HttpStatus.BAD_REQUEST)));
@@ -175,20 +167,9 @@ public class AuthController {
                 user.setResetPasswordExpiresAt(LocalDateTime.now().plusHours(1));
 
                 return userRepository.save(user)
-                    .flatMap(savedUser -> {
-                        return WebClient.create()
-                            .post()
-                            .uri(Objects.requireNonNull(n8nEmailWebhookUrl))
-                            .contentType(Objects.requireNonNull(MediaType.APPLICATION_JSON)) // ★ラップ
-                            .bodyValue(Objects.requireNonNull(Map.of(
-                                "email", savedUser.getEmail(),
-                                "username", savedUser.getUsername(),
-                                "resetToken", token
-                            )))
-                            .retrieve()
-                            .toBodilessEntity()
-                            .thenReturn(createResponse("パスワード再設定メールを送信しました。", HttpStatus.OK));
-                    });
+                    .flatMap(savedUser -> emailOutboxService.enqueuePasswordReset(savedUser.getEmail(), savedUser.getUsername(), token))
+                    .as(transactionalOperator::transactional)
+                    .thenReturn(createResponse("パスワード再設定メールを送信しました。", HttpStatus.OK));
             })
             .switchIfEmpty(Mono.just(createResponse("そのメールアドレスは登録されていません。", HttpStatus.NOT_FOUND)));
     }
@@ -214,11 +195,14 @@ public class AuthController {
                     return Mono.just(createResponse("リンクの有効期限が切れています。もう一度リクエストしてください。", HttpStatus.BAD_REQUEST));
                 }
 
-                user.setPassword(passwordEncoder.encode(newPassword));
-                user.setResetPasswordToken(null);
-                user.setResetPasswordExpiresAt(null);
-
-                return userRepository.save(user)
+                return passwordHashingService.encode(newPassword)
+                    .flatMap(encodedPassword -> {
+                        user.setPassword(encodedPassword);
+                        user.setResetPasswordToken(null);
+                        user.setResetPasswordExpiresAt(null);
+                        return userRepository.save(user);
+                    })
+                    .doOnNext(saved -> principalCache.invalidate(saved.getUsername()))
                     .map(saved -> createResponse("パスワードが正常に変更されました。新しいパスワードでログインしてください。", HttpStatus.OK));
             })
             .switchIfEmpty(Mono.just(createResponse("無効なリクエストです。", HttpStatus.BAD_REQUEST)));
@@ -243,22 +227,9 @@ public class AuthController {
                 user.setVerificationToken(newToken);
 
                 return userRepository.save(user)
-                    .flatMap(savedUser -> {
-                        WebClient.create()
-                            .post()
-                            .uri(Objects.requireNonNull(n8nVerifyEmailWebhookUrl))
-                            .contentType(Objects.requireNonNull(MediaType.APPLICATION_JSON)) // ★ラップ
-                            .bodyValue(Objects.requireNonNull(Map.of(
-                                "email", savedUser.getEmail(),
-                                "username", savedUser.getUsername(),
-                                "verification_token", newToken
-                            )))
-                            .retrieve()
-                            .toBodilessEntity()
-                            .subscribe();
-
-                        return Mono.just(createResponse("認証メールを再送しました。受信トレイを確認してください。", HttpStatus.OK));
-                    });
+                    .flatMap(savedUser -> emailOutboxService.enqueueVerification(savedUser.getEmail(), savedUser.getUsername(), newToken))
+                    .as(transactionalOperator::transactional)
+                    .thenReturn(createResponse("認証メールを再送しました。受信トレイを確認してください。", HttpStatus.OK));
             })
             .switchIfEmpty(Mono.just(createResponse("そのメールアドレスは登録されていません。", HttpStatus.NOT_FOUND)));
     }
@@ -5,7 +5,6 @@ import java.util.Objects; // ★ これで未使用警告が消えます
 
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -16,7 +15,10 @@ import org.springframework.web.server.ResponseStatusException;
 import jp.smartbrief.billing.catalog.service.BookService;
 import jp.smartbrief.billing.identity.domain.User;
 import jp.smartbrief.billing.identity.repository.UserRepository;
+import jp.smartbrief.billing.identity.service.PasswordHashingService;
+import jp.smartbrief.billing.payment.entitlement.EntitlementService;
 import jp.smartbrief.billing.shared.dto.UserContext;
+import jp.smartbrief.billing.shared.security.PrincipalCache;
 
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
@@ -34,8 +36,10 @@ import reactor.core.publisher.Mono;
 public class LineController {
 
     private final UserRepository userRepository;
-    private final PasswordEncoder passwordEncoder;
+    private final PasswordHashingService passwordHashingService;
     private final BookService bookService;
+    private final PrincipalCache principalCache;
+    private final EntitlementService entitlementService;
 
     /**
      * アカウント連携API
@@ -49,11 +53,12 @@ public class LineController {
         }
 
         return userRepository.findByUsername(request.getUsername())
-                .filter(user -> passwordEncoder.matches(request.getPassword(), user.getPassword()))
+                .filterWhen(user -> passwordHashingService.matches(request.getUsername(), request.getPassword(), user.getPassword()))
                 .flatMap(user -> {
                     user.setLineUserId(request.getLineUserId());
                     return userRepository.save(user);
                 })
+                .doOnNext(saved -> principalCache.invalidate(saved.getUsername()))
                 .map(this::createLinkSuccessResponse)
                 .defaultIfEmpty(createResponse("IDまたはパスワードが間違っています。", HttpStatus.UNAUTHORIZED));
     }
@@ -74,7 +79,8 @@ public class LineController {
 
         // 1. ユーザー特定 -> 2. コンテキスト生成 -> 3. 閲覧処理 -> 4. エラーハンドリング
         return userRepository.findByLineUserId(request.getLineUserId())
-                .map(UserContext::from)
+                .doOnNext(entitlementService::observe)
+                .map(user -> UserContext.from(user, entitlementService))
                 .defaultIfEmpty(UserContext.guest())
                 .flatMap(context -> executeReadBook(context, request.getBookId()))
                 .onErrorResume(this::handleReadError);
@@ -0,0 +1,57 @@
+package jp.smartbrief.billing.identity.domain;
+
+import java.time.LocalDateTime;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Column;
+import org.springframework.data.relational.core.mapping.Table;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * メール送信アウトボックスエンティティ
+ *
+ * 認証メール・パスワード再設定メールの送信依頼です。
+ * API はこの行を INSERT するだけで応答し、EmailOutboxDispatcher が n8n の Webhook へ送ります。
+ */
+@Table("email_outbox")
+@Data
+@NoArgsConstructor
+public class EmailOutbox {
+
+    public enum Kind {
+        VERIFY_EMAIL,   // 会員登録・認証メール再送
+        PASSWORD_RESET  // パスワード再設定
+    }
+
+    public enum Status {
+        PENDING, // 送信待ち (失敗後の再試行待ちを含む)
+        SENT,    // 送信済み
+        DEAD     // 再試行の上限に達した (手動で確認する)
+    }
+
+    @Id
+    private Long id;
+
+    private String kind;
+
+    // Webhook に送る JSON
+    private String payload;
+
+    private String status;
+
+    private Integer attempts;
+
+    @Column("next_attempt_at")
+    private LocalDateTime nextAttemptAt;
+
+    @Column("last_error")
+    private String lastError;
+
+    @Column("created_at")
+    private LocalDateTime createdAt;
+
+    @Column("sent_at")
+    private LocalDateTime sentAt;
+}
@@ -28,7 +28,7 @@ import lombok.NoArgsConstructor;
  * UserDetails インターフェースを実装し、Spring Security と統合します。
  */
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 @Table("users")
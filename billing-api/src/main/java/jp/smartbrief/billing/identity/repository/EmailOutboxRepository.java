@@ -0,0 +1,52 @@
+package jp.smartbrief.billing.identity.repository;
+
+import java.time.LocalDateTime;
+
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import org.springframework.stereotype.Repository;
+
+import jp.smartbrief.billing.identity.domain.EmailOutbox;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * メール送信アウトボックスリポジトリ
+ *
+ * 送信待ちの取得と、送信結果 (送信済み・再試行・デッドレター) の更新を行います。
+ * 複数インスタンスで同じ行を二重に送らないよう、送信前に claim で行を確保します。
+ */
+@Repository
+public interface EmailOutboxRepository extends ReactiveCrudRepository<EmailOutbox, Long> {
+
+    // 送信時刻を過ぎた送信待ち (古い順)
+    @Query("SELECT * FROM email_outbox WHERE status = 'PENDING' AND next_attempt_at <= :now "
+         + "ORDER BY next_attempt_at, id LIMIT :limit")
+    Flux<EmailOutbox> findDue(LocalDateTime now, int limit);
+
+    // 送信する行を確保する（next_attempt_at を leaseUntil まで進める。更新件数 1 = 確保できた）
+    @Modifying
+    @Query("UPDATE email_outbox SET next_attempt_at = :leaseUntil "
+         + "WHERE id = :id AND status = 'PENDING' AND next_attempt_at <= :now")
+    Mono<Integer> claim(Long id, LocalDateTime now, LocalDateTime leaseUntil);
+
+    @Modifying
+    @Query("UPDATE email_outbox SET status = 'SENT', attempts = attempts + 1, sent_at = :sentAt, last_error = NULL WHERE id = :id")
+    Mono<Integer> markSent(Long id, LocalDateTime sentAt);
+
+    @Modifying
+    @Query("UPDATE email_outbox SET attempts = attempts + 1, next_attempt_at = :nextAttemptAt, last_error = :error WHERE id = :id")
+    Mono<Integer> markRetry(Long id, LocalDateTime nextAttemptAt, String error);
+
+    @Modifying
+    @Query("UPDATE email_outbox SET status = 'DEAD', attempts = attempts + 1, last_error = :error WHERE id = :id")
+    Mono<Integer> markDead(Long id, String error);
+
+    @Modifying
+    @Query("DELETE FROM email_outbox WHERE status = 'SENT' AND sent_at < :before")
+    Mono<Integer> deleteSentBefore(LocalDateTime before);
+
+    @Query("SELECT COUNT(*) FROM email_outbox WHERE status = :status")
+    Mono<Long> countByStatus(String status);
+}
@@ -1,10 +1,15 @@
 package jp.smartbrief.billing.identity.repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+import org.springframework.data.r2dbc.repository.Modifying;
 import org.springframework.data.r2dbc.repository.Query; // ★これが必要です
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
 import org.springframework.stereotype.Repository;
 
 import jp.smartbrief.billing.identity.domain.User;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 /**
@@ -37,4 +42,31 @@ public interface UserRepository extends ReactiveCrudRepository<User, Long> {
     
     // ★追加
     Mono<User> findByVerificationToken(String verificationToken);
+
+    // Stripe Webhook (請求・サブスクリプション更新) の突き合わせ用
+    Mono<User> findByStripeCustomerId(String stripeCustomerId);
+
+    // Stripe との突き合わせ (SubscriptionReconciler) で1ページ分の顧客をまとめて引く
+    Flux<User> findByStripeCustomerIdIn(Collection<String> stripeCustomerIds);
+
+    // Stripe 顧客に紐付いたプレミアム会員 (突き合わせで Stripe 側に見つからなかった会員の確認用)
+    @Query("SELECT * FROM users WHERE plan_type = 'PREMIUM' AND stripe_customer_id IS NOT NULL")
+    Flux<User> findPremiumWithStripeCustomer();
+
+    // 有効なプレミアム会員 (EntitlementService の起動時読み込み用。必要な列だけ読む)
+    @Query("SELECT id, plan_type, subscription_expires_at FROM users "
+         + "WHERE plan_type = 'PREMIUM' AND subscription_expires_at > :now")
+    Flux<User> findActivePremium(LocalDateTime now);
+
+    // 期限切れのプレミアム会員を FREE に戻す (期限が延長されていれば更新しない)
+    @Modifying
+    @Query("UPDATE users SET plan_type = 'FREE' "
+         + "WHERE id IN (:ids) AND plan_type = 'PREMIUM' AND subscription_expires_at <= :now")
+    Mono<Integer> downgradeExpired(Collection<Long> ids, LocalDateTime now);
+
+    // 期限切れのまま残っているプレミアム会員をまとめて FREE に戻す (起動時・定期的な取りこぼし対策)
+    @Modifying
+    @Query("UPDATE users SET plan_type = 'FREE' "
+         + "WHERE plan_type = 'PREMIUM' AND subscription_expires_at <= :now")
+    Mono<Integer> downgradeAllExpired(LocalDateTime now);
 }
\ No newline at end of file
@@ -0,0 +1,210 @@
+package jp.smartbrief.billing.identity.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jp.smartbrief.billing.identity.domain.EmailOutbox;
+import jp.smartbrief.billing.identity.repository.EmailOutboxRepository;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * メール送信アウトボックスの配送
+ *
+ * email_outbox の送信待ちを定期的にまとめて取り出し、n8n の Webhook へ送ります。
+ * 1. n8n への接続は1つの WebClient (接続プール付き) を使い回す
+ * 2. 1回の取り出しは batch-size 件まで、同時送信は concurrency 件まで
+ * 3. 失敗したら指数バックオフ (ジッター付き) で再試行し、max-attempts 回で DEAD (デッドレター) にする
+ *    (4xx のうち 408/429 以外は再試行しても成功しないため、すぐに DEAD にする)
+ * 4. 送信前に行を lease の間だけ確保するため、複数インスタンスで同じメールを二重に送らない
+ * メトリクス: email.outbox.sent / retried / dead、email.outbox.send (送信時間)
+ */
+@Slf4j
+@Component
+public class EmailOutboxDispatcher {
+
+    private static final int MAX_ERROR_LENGTH = 500;
+
+    private final EmailOutboxRepository outboxRepository;
+    private final WebClient webClient;
+
+    @Value("${n8n.webhook.email:https://n8n.smartbrief.jp/webhook/send-email}")
+    private String n8nEmailWebhookUrl;
+
+    @Value("${n8n.webhook.verify:https://n8n.smartbrief.jp/webhook/webhook/verify-email}")
+    private String n8nVerifyEmailWebhookUrl;
+
+    @Value("${email.outbox.batch-size:50}")
+    private int batchSize;
+
+    @Value("${email.outbox.concurrency:4}")
+    private int concurrency;
+
+    @Value("${email.outbox.max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${email.outbox.backoff-initial:PT10S}")
+    private Duration backoffInitial;
+
+    @Value("${email.outbox.backoff-max:PT1H}")
+    private Duration backoffMax;
+
+    // 送信中の行を他のインスタンスが取らないようにする時間 (request-timeout より長くする)
+    @Value("${email.outbox.lease:PT2M}")
+    private Duration lease;
+
+    @Value("${email.outbox.retention-days:7}")
+    private int retentionDays;
+
+    private final AtomicBoolean dispatching = new AtomicBoolean(false);
+
+    private final Counter sent;
+    private final Counter retried;
+    private final Counter dead;
+    private final Timer sendTimer;
+
+    public EmailOutboxDispatcher(
+            EmailOutboxRepository outboxRepository,
+            WebClient.Builder webClientBuilder,
+            MeterRegistry meterRegistry,
+            @Value("${email.outbox.max-connections:16}") int maxConnections,
+            @Value("${email.outbox.request-timeout:PT10S}") Duration requestTimeout) {
+        this.outboxRepository = outboxRepository;
+        ConnectionProvider provider = ConnectionProvider.builder("n8n-webhook")
+            .maxConnections(maxConnections)
+            .pendingAcquireTimeout(requestTimeout)
+            .maxIdleTime(Duration.ofMinutes(1))
+            .build();
+        this.webClient = webClientBuilder
+            .clientConnector(new ReactorClientHttpConnector(HttpClient.create(provider).responseTimeout(requestTimeout)))
+            .build();
+        this.sent = meterRegistry.counter("email.outbox.sent");
+        this.retried = meterRegistry.counter("email.outbox.retried");
+        this.dead = meterRegistry.counter("email.outbox.dead");
+        this.sendTimer = meterRegistry.timer("email.outbox.send");
+    }
+
+    @Scheduled(fixedDelayString = "${email.outbox.poll-interval-ms:1000}")
+    public Mono<Void> scheduledDispatch() {
+        return dispatch()
+            .doOnError(e -> log.warn("Email outbox dispatch failed: {}", e.getMessage()))
+            .onErrorResume(e -> Mono.empty())
+            .then();
+    }
+
+    /**
+     * 送信時刻を過ぎた送信待ちを1バッチ分送る（実行中なら何もしない）
+     * @return 送信に成功した件数
+     */
+    public Mono<Long> dispatch() {
+        if (!dispatching.compareAndSet(false, true)) {
+            return Mono.just(0L);
+        }
+        LocalDateTime now = LocalDateTime.now();
+        return outboxRepository.findDue(now, batchSize)
+            .flatMap(outbox -> outboxRepository.claim(outbox.getId(), now, now.plus(lease))
+                .filter(claimed -> claimed > 0)
+                .flatMap(claimed -> send(outbox)), concurrency)
+            .filter(Boolean::booleanValue)
+            .count()
+            .doFinally(signal -> dispatching.set(false));
+    }
+
+    @Scheduled(cron = "${email.outbox.cleanup-cron:0 15 4 * * *}", zone = "Asia/Tokyo")
+    public Mono<Void> cleanup() {
+        return outboxRepository.deleteSentBefore(LocalDateTime.now().minusDays(retentionDays))
+            .doOnError(e -> log.warn("Email outbox cleanup failed: {}", e.getMessage()))
+            .onErrorResume(e -> Mono.empty())
+            .then();
+    }
+
+    // --- Private Methods ---
+
+    /**
+     * 1件送って結果を記録する
+     * @return 送信できたら true
+     */
+    private Mono<Boolean> send(EmailOutbox outbox) {
+        long start = System.nanoTime();
+        return webClient.post()
+            .uri(webhookUrl(outbox))
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(outbox.getPayload())
+            .retrieve()
+            .toBodilessEntity()
+            .doFinally(signal -> sendTimer.record(Duration.ofNanos(System.nanoTime() - start)))
+            .thenReturn(true)
+            .onErrorResume(e -> recordFailure(outbox, e).thenReturn(false))
+            .flatMap(delivered -> delivered ? markSent(outbox) : Mono.just(false));
+    }
+
+    /**
+     * 送信済みを記録する
+     * 記録に失敗しても送信の失敗としては扱わない（lease が切れた後に再送されうるが、再試行の回数は消費しない）
+     */
+    private Mono<Boolean> markSent(EmailOutbox outbox) {
+        sent.increment();
+        return outboxRepository.markSent(outbox.getId(), LocalDateTime.now())
+            .thenReturn(true)
+            .onErrorResume(e -> {
+                log.warn("Email sent but not marked as sent, may be resent after lease: id={}, error={}",
+                    outbox.getId(), e.getMessage());
+                return Mono.just(true);
+            });
+    }
+
+    private Mono<Void> recordFailure(EmailOutbox outbox, Throwable error) {
+        int attempts = (outbox.getAttempts() != null ? outbox.getAttempts() : 0) + 1;
+        String message = truncate(error.getClass().getSimpleName() + ": " + error.getMessage());
+        if (attempts >= maxAttempts || isPermanent(error)) {
+            dead.increment();
+            log.error("Email moved to dead letter: id={}, kind={}, attempts={}, error={}",
+                outbox.getId(), outbox.getKind(), attempts, message);
+            return outboxRepository.markDead(outbox.getId(), message).then();
+        }
+        retried.increment();
+        log.warn("Email send failed, will retry: id={}, attempts={}, error={}", outbox.getId(), attempts, message);
+        return outboxRepository.markRetry(outbox.getId(), LocalDateTime.now().plus(backoff(attempts)), message).then();
+    }
+
+    /**
+     * 指数バックオフ (initial × 2^(attempts-1)、上限 backoff-max) に ±20% のジッターを加える
+     */
+    private Duration backoff(int attempts) {
+        long base = backoffInitial.toMillis() << Math.min(attempts - 1, 20);
+        long capped = Math.min(base, backoffMax.toMillis());
+        double jitter = 0.8 + ThreadLocalRandom.current().nextDouble() * 0.4;
+        return Duration.ofMillis((long) (capped * jitter));
+    }
+
+    private static boolean isPermanent(Throwable error) {
+        if (error instanceof WebClientResponseException response) {
+            int status = response.getStatusCode().value();
+            return status >= 400 && status < 500 && status != 408 && status != 429;
+        }
+        return false;
+    }
+
+    private String webhookUrl(EmailOutbox outbox) {
+        return EmailOutbox.Kind.PASSWORD_RESET.name().equals(outbox.getKind()) ? n8nEmailWebhookUrl : n8nVerifyEmailWebhookUrl;
+    }
+
+    private static String truncate(String message) {
+        return message.length() <= MAX_ERROR_LENGTH ? message : message.substring(0, MAX_ERROR_LENGTH);
+    }
+}
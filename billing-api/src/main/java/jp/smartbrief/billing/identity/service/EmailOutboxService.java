@@ -0,0 +1,73 @@
+package jp.smartbrief.billing.identity.service;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jp.smartbrief.billing.identity.domain.EmailOutbox;
+import jp.smartbrief.billing.identity.repository.EmailOutboxRepository;
+import lombok.RequiredArgsConstructor;
+import reactor.core.publisher.Mono;
+
+/**
+ * メール送信依頼サービス
+ *
+ * 送信内容を email_outbox に1行 INSERT するだけで返します（n8n への送信は EmailOutboxDispatcher）。
+ * ユーザーの更新と同じトランザクションで呼ぶと、「ユーザーは保存されたがメールが送られない」状態になりません。
+ */
+@Service
+@RequiredArgsConstructor
+public class EmailOutboxService {
+
+    private final EmailOutboxRepository outboxRepository;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * 認証メール (会員登録・再送)
+     */
+    public Mono<EmailOutbox> enqueueVerification(String email, String username, String verificationToken) {
+        return enqueue(EmailOutbox.Kind.VERIFY_EMAIL, Map.of(
+            "email", email,
+            "username", username,
+            "verification_token", verificationToken));
+    }
+
+    /**
+     * パスワード再設定メール
+     */
+    public Mono<EmailOutbox> enqueuePasswordReset(String email, String username, String resetToken) {
+        return enqueue(EmailOutbox.Kind.PASSWORD_RESET, Map.of(
+            "email", email,
+            "username", username,
+            "resetToken", resetToken));
+    }
+
+    // --- Private Methods ---
+
+    private Mono<EmailOutbox> enqueue(EmailOutbox.Kind kind, Map<String, Object> payload) {
+        return Mono.fromCallable(() -> {
+                LocalDateTime now = LocalDateTime.now();
+                EmailOutbox outbox = new EmailOutbox();
+                outbox.setKind(kind.name());
+                outbox.setPayload(toJson(payload));
+                outbox.setStatus(EmailOutbox.Status.PENDING.name());
+                outbox.setAttempts(0);
+                outbox.setNextAttemptAt(now);
+                outbox.setCreatedAt(now);
+                return outbox;
+            })
+            .flatMap(outboxRepository::save);
+    }
+
+    private String toJson(Map<String, Object> payload) {
+        try {
+            return objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Email payload is not serializable", e);
+        }
+    }
+}
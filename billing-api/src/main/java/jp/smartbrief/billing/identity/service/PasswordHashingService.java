@@ -0,0 +1,157 @@
+package jp.smartbrief.billing.identity.service;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+/**
+ * パスワードハッシュサービス
+ *
+ * BCrypt の照合・ハッシュ化は1回あたり約100msの CPU 処理のため、
+ * Netty のイベントループではなく専用のスレッドプールで実行します。
+ * 1. 同時実行数は concurrency (既定: CPU コア数) まで
+ * 2. 待ち行列が queue-capacity を超えたら実行せずに 503 を返す（ログイン集中時に他のリクエストを巻き込まない）
+ * 3. 同じユーザー名への照合は window ごとに max-attempts 回まで（超えたら 429）
+ * メトリクス: password.hash (処理時間)、password.hash.wait (待ち時間)、password.hash.rejected、
+ * password.hash.active / password.hash.queue
+ */
+@Slf4j
+@Service
+public class PasswordHashingService {
+
+    private final PasswordEncoder passwordEncoder;
+    private final ThreadPoolExecutor executor;
+    private final int maxAttempts;
+
+    // ユーザー名 → window 内の照合回数（window 経過で消える固定ウィンドウ）
+    private final Cache<String, AtomicInteger> attempts;
+
+    private final MeterRegistry meterRegistry;
+    private final Timer waitTimer;
+    private final Counter saturated;
+    private final Counter throttled;
+
+    public PasswordHashingService(
+            PasswordEncoder passwordEncoder,
+            MeterRegistry meterRegistry,
+            @Value("${identity.password-hashing.concurrency:0}") int concurrency,
+            @Value("${identity.password-hashing.queue-capacity:64}") int queueCapacity,
+            @Value("${identity.password-hashing.max-attempts:10}") int maxAttempts,
+            @Value("${identity.password-hashing.window:PT1M}") Duration window) {
+        this.passwordEncoder = passwordEncoder;
+        this.meterRegistry = meterRegistry;
+        this.maxAttempts = maxAttempts;
+
+        int threads = concurrency > 0 ? concurrency : Runtime.getRuntime().availableProcessors();
+        this.executor = new ThreadPoolExecutor(
+            threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            new CustomizableThreadFactory("password-hash-"),
+            new ThreadPoolExecutor.AbortPolicy());
+        this.attempts = Caffeine.newBuilder()
+            .expireAfterWrite(window)
+            .maximumSize(100_000)
+            .build();
+
+        Gauge.builder("password.hash.active", executor, ThreadPoolExecutor::getActiveCount).register(meterRegistry);
+        Gauge.builder("password.hash.queue", executor, e -> e.getQueue().size()).register(meterRegistry);
+        this.waitTimer = meterRegistry.timer("password.hash.wait");
+        this.saturated = meterRegistry.counter("password.hash.rejected", "reason", "saturated");
+        this.throttled = meterRegistry.counter("password.hash.rejected", "reason", "throttled");
+    }
+
+    /**
+     * パスワードを照合する（ログイン・アカウント連携用）
+     * @param username 試行回数を数えるキー (ログインID またはメールアドレス)
+     * @return 一致すれば true
+     */
+    public Mono<Boolean> matches(String username, String rawPassword, String encodedPassword) {
+        if (rawPassword == null || encodedPassword == null) {
+            return Mono.just(false);
+        }
+        return Mono.defer(() -> {
+            if (!tryAttempt(username)) {
+                throttled.increment();
+                return Mono.error(new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS,
+                    "試行回数が多すぎます。しばらくしてから再度お試しください。"));
+            }
+            return submit("matches", () -> passwordEncoder.matches(rawPassword, encodedPassword));
+        });
+    }
+
+    /**
+     * パスワードをハッシュ化する（登録・パスワード再設定用）
+     */
+    public Mono<String> encode(String rawPassword) {
+        return Mono.defer(() -> submit("encode", () -> passwordEncoder.encode(rawPassword)));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    // --- Private Methods ---
+
+    private boolean tryAttempt(String username) {
+        if (username == null) {
+            return true;
+        }
+        String key = username.trim().toLowerCase(Locale.ROOT);
+        return attempts.get(key, k -> new AtomicInteger()).incrementAndGet() <= maxAttempts;
+    }
+
+    /**
+     * 専用プールで実行する（待ち行列が満杯なら 503）
+     */
+    private <T> Mono<T> submit(String operation, Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        long enqueuedAt = System.nanoTime();
+        try {
+            executor.execute(() -> {
+                long start = System.nanoTime();
+                waitTimer.record(start - enqueuedAt, TimeUnit.NANOSECONDS);
+                String outcome = "success";
+                try {
+                    future.complete(task.call());
+                } catch (Exception e) {
+                    outcome = "error";
+                    future.completeExceptionally(e);
+                } finally {
+                    meterRegistry.timer("password.hash", "operation", operation, "outcome", outcome)
+                        .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            saturated.increment();
+            log.warn("Password hashing saturated: operation={}, queued={}", operation, executor.getQueue().size());
+            return Mono.error(new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                "混み合っています。しばらくしてから再度お試しください。"));
+        }
+        return Mono.fromFuture(future);
+    }
+}
@@ -12,6 +12,7 @@ import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
 
 import jp.smartbrief.billing.identity.domain.User;
+import jp.smartbrief.billing.payment.entitlement.EntitlementService;
 import jp.smartbrief.billing.payment.service.BillingService;
 import jp.smartbrief.billing.shared.dto.UserContext;
 import lombok.RequiredArgsConstructor;
@@ -27,10 +28,11 @@ import reactor.core.publisher.Mono;
 public class BillingController {
 
     private final BillingService billingService;
+    private final EntitlementService entitlementService;
 
     @GetMapping("/portal")
     public Mono<ResponseEntity<Map<String, String>>> createPortalSession(@AuthenticationPrincipal User user) {
-        UserContext context = UserContext.from(user);
+        UserContext context = UserContext.from(user, entitlementService);
 
         // 1. 認証ガード (Fail-Fast)
         if (!context.isAuthenticated()) {
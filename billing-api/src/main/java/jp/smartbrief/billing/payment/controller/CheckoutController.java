@@ -13,6 +13,7 @@ import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
 
 import jp.smartbrief.billing.identity.domain.User;
+import jp.smartbrief.billing.payment.entitlement.EntitlementService;
 import jp.smartbrief.billing.payment.service.BillingService;
 import jp.smartbrief.billing.shared.dto.UserContext;
 import lombok.Data;
@@ -29,6 +30,7 @@ import reactor.core.publisher.Mono;
 public class CheckoutController {
 
     private final BillingService billingService;
+    private final EntitlementService entitlementService;
 
     @PostMapping("/create-session")
     public Mono<ResponseEntity<Map<String, String>>> createCheckoutSession(
@@ -36,7 +38,7 @@ public class CheckoutController {
             @RequestBody(required = false) CheckoutRequest request) {
 
         // 1. コンテキスト解決
-        UserContext context = UserContext.from(user);
+        UserContext context = UserContext.from(user, entitlementService);
         
         // 2. 認証ガード (Fail-Fast)
         if (!context.isAuthenticated()) {
@@ -12,12 +12,9 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
-import jp.smartbrief.billing.identity.domain.User;
-import jp.smartbrief.billing.payment.service.BillingService;
+import jp.smartbrief.billing.payment.webhook.StripeWebhookPipeline;
 
-import com.stripe.exception.EventDataObjectDeserializationException;
 import com.stripe.model.Event;
-import com.stripe.model.checkout.Session;
 import com.stripe.net.Webhook;
 
 import lombok.RequiredArgsConstructor;
@@ -27,9 +24,9 @@ import reactor.core.publisher.Mono;
 /**
  * Stripe ウェブフック コントローラー
  * 
- * Stripe からの webhook イベントを受信・処理します。
- * 主にチェックアウトセッション完了イベントを処理し、
- * ユーザーの購読情報をデータベースに保存します。
+ * Stripe からの webhook イベントを受信します。
+ * 署名を検証してイベントを記録したらすぐに 200 を返し、
+ * 購読情報の更新は StripeWebhookPipeline で非同期に行います（Stripe の再送は event_id で重複排除）。
  */
 @Slf4j
 @RestController
@@ -40,7 +37,7 @@ public class StripeWebhookController {
     @Value("${stripe.webhook-secret}")
     private String endpointSecret;
 
-    private final BillingService billingService;
+    private final StripeWebhookPipeline webhookPipeline;
 
     @PostMapping
     public Mono<ResponseEntity<String>> handleStripeWebhook(ServerHttpRequest request) {
@@ -74,38 +71,9 @@ public class StripeWebhookController {
                     return Mono.just(ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Invalid Signature"));
                 }
 
-                // 決済完了イベントの処理
-                if ("checkout.session.completed".equals(event.getType())) {
-                    try {
-                        Session session = (Session) event.getDataObjectDeserializer().deserializeUnsafe();
-                        if (session != null) {
-                            // metadata から userId を抽出 (CheckoutController でセットしたもの)
-                            String userIdStr = session.getMetadata() != null ? session.getMetadata().get("userId") : null;
-                            String customerId = session.getCustomer();
-
-                            if (userIdStr == null) {
-                                log.warn("★ [Webhook] userId not found in session metadata");
-                                return Mono.just(ResponseEntity.ok("User ID missing"));
-                            }
-
-                            log.info("★ [Webhook] SUCCESS! UserID: {}, CustomerID: {}", userIdStr, customerId);
-
-                            // BillingService に委譲して DB を更新
-                            return billingService.updateSubscriptionFromWebhook(userIdStr, User.Plan.PREMIUM, customerId)
-                                .map(user -> {
-                                    log.info("★ [Webhook] DB Updated for user: {}", user.getUsername());
-                                    return ResponseEntity.ok("Success");
-                                })
-                                .defaultIfEmpty(ResponseEntity.status(HttpStatus.NOT_FOUND).body("User not found"));
-                        }
-                    } catch (EventDataObjectDeserializationException e) {
-                        log.error("★ [Webhook] Deserialization failed", e);
-                        return Mono.just(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Deserialization Error"));
-                    }
-                }
-
-                // その他のイベントは正常応答だけ返して無視
-                return Mono.just(ResponseEntity.ok("Event received and ignored"));
+                // 記録だけして即座に応答する（処理は StripeWebhookPipeline が非同期で行う）
+                return webhookPipeline.accept(event, payload)
+                    .map(accepted -> ResponseEntity.ok(accepted ? "Event received" : "Duplicate event"));
             });
     }
 }
\ No newline at end of file
@@ -0,0 +1,57 @@
+package jp.smartbrief.billing.payment.domain;
+
+import java.time.LocalDateTime;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Column;
+import org.springframework.data.relational.core.mapping.Table;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 受信した Stripe Webhook イベント
+ *
+ * event_id を主キーにして重複受信を弾き (Stripe の再送対策)、
+ * 処理が終わるまで payload を保持して再起動後も処理を続けられるようにします。
+ * 更新は StripeWebhookEventRepository の条件付き UPDATE でのみ行います。
+ */
+@Table("stripe_webhook_event")
+@Data
+@NoArgsConstructor
+public class StripeWebhookEvent {
+
+    public enum Status {
+        PENDING,    // 処理待ち (失敗後の再試行待ちを含む)
+        PROCESSING, // 処理中 (next_attempt_at までに終わらなければ再び取り出せる)
+        PROCESSED,  // 処理済み
+        FAILED      // 再試行の上限に達した (手動で確認する)
+    }
+
+    @Id
+    @Column("event_id")
+    private String eventId;
+
+    private String type;
+
+    @Column("customer_id")
+    private String customerId;
+
+    private String payload;
+
+    private String status;
+
+    private Integer attempts;
+
+    @Column("next_attempt_at")
+    private LocalDateTime nextAttemptAt;
+
+    @Column("last_error")
+    private String lastError;
+
+    @Column("received_at")
+    private LocalDateTime receivedAt;
+
+    @Column("processed_at")
+    private LocalDateTime processedAt;
+}
@@ -0,0 +1,79 @@
+package jp.smartbrief.billing.payment.domain;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.Objects;
+import java.util.Optional;
+
+import com.stripe.model.Subscription;
+
+import jp.smartbrief.billing.identity.domain.User;
+
+/**
+ * Stripe のサブスクリプションから決まる、users に入るべきプランと有効期限
+ *
+ * Webhook の処理 (StripeEventHandler) と夜間の突き合わせ (SubscriptionReconciler) で同じ判定を使います。
+ * - active / trialing / past_due: 期間の終わり (current_period_end) まで PREMIUM
+ *   (解約予約中でも期間の終わりまでは PREMIUM)
+ * - canceled / unpaid / incomplete_expired、または削除: FREE
+ * - incomplete (初回支払い前): 判定しない
+ */
+public record SubscriptionSnapshot(User.Plan plan, LocalDateTime expiresAt) {
+
+    public static final SubscriptionSnapshot FREE = new SubscriptionSnapshot(User.Plan.FREE, null);
+
+    /**
+     * @param deleted customer.subscription.deleted で届いた場合は true
+     * @return 判定しない状態 (incomplete) なら empty
+     */
+    public static Optional<SubscriptionSnapshot> of(Subscription subscription, boolean deleted) {
+        String status = subscription.getStatus();
+        boolean ended = deleted
+            || "canceled".equals(status) || "unpaid".equals(status) || "incomplete_expired".equals(status);
+        if (ended) {
+            return Optional.of(FREE);
+        }
+        if ("incomplete".equals(status)) {
+            return Optional.empty();
+        }
+        LocalDateTime expiresAt = subscription.getCurrentPeriodEnd() == null
+            ? null : toLocalDateTime(subscription.getCurrentPeriodEnd());
+        return Optional.of(new SubscriptionSnapshot(User.Plan.PREMIUM, expiresAt));
+    }
+
+    /**
+     * 同じ顧客に複数のサブスクリプションがある場合に採る方 (PREMIUM を優先し、期限の遅い方)
+     */
+    public static SubscriptionSnapshot better(SubscriptionSnapshot a, SubscriptionSnapshot b) {
+        if (a.plan() != b.plan()) {
+            return a.plan() == User.Plan.PREMIUM ? a : b;
+        }
+        if (a.expiresAt() == null || b.expiresAt() == null) {
+            return a.expiresAt() != null ? a : b;
+        }
+        return a.expiresAt().isAfter(b.expiresAt()) ? a : b;
+    }
+
+    /**
+     * ユーザーの現在のプラン・期限がこの状態と一致するか（期限は秒単位で比べる）
+     */
+    public boolean matches(User user) {
+        if (!plan.name().equalsIgnoreCase(user.getPlanType())) {
+            return false;
+        }
+        if (plan == User.Plan.FREE) {
+            return true; // FREE の期限は見ない
+        }
+        return Objects.equals(truncate(expiresAt), truncate(user.getSubscriptionExpiresAt()));
+    }
+
+    private static LocalDateTime truncate(LocalDateTime value) {
+        return value == null ? null : value.truncatedTo(ChronoUnit.SECONDS);
+    }
+
+    private static LocalDateTime toLocalDateTime(long epochSeconds) {
+        return LocalDateTime.ofInstant(Instant.ofEpochSecond(epochSeconds), ZoneId.systemDefault());
+    }
+}
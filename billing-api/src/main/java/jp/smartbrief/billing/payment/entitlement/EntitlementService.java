@@ -0,0 +1,221 @@
+package jp.smartbrief.billing.payment.entitlement;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jp.smartbrief.billing.identity.domain.User;
+import jp.smartbrief.billing.identity.repository.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * 利用資格 (プレミアム会員かどうか) の管理
+ *
+ * リクエストのたびに User の plan_type と subscriptionExpiresAt を比べるのをやめ、
+ * 有効なプレミアム会員だけを「ユーザーID → 期限 (エポック秒)」のマップに持ちます。
+ * 1. isPremium(userId) はマップを1回引いて期限と比べるだけ
+ * 2. 期限は ExpiryWheel (階層型タイミングホイール) に登録し、毎秒進めて期限切れのユーザーを拾う
+ * 3. 期限切れのユーザーはマップから外し、batch-size 件ずつ UPDATE 1回で FREE に戻す
+ *    (期限が延長されていれば SQL の条件で更新しない)
+ * 4. 起動時に有効なプレミアム会員を読み込み、期限切れのまま残っている会員は FREE に戻す
+ * 5. Webhook で更新したユーザーは apply()、DB から読み直したユーザーは observe() で反映する
+ *    (他のインスタンスが更新した分は PrincipalCache の ttl で追いつく)
+ * メトリクス: entitlement.premium.size、entitlement.wheel.size、entitlement.expired、entitlement.downgraded
+ */
+@Slf4j
+@Service
+public class EntitlementService {
+
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+
+    private final UserRepository userRepository;
+    private final int batchSize;
+
+    private final Map<Long, Long> premiumUntil = new ConcurrentHashMap<>();
+    private final ExpiryWheel<Long> expiryWheel;
+    private final ConcurrentLinkedQueue<Long> pendingDowngrades = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean downgrading = new AtomicBoolean(false);
+
+    private final Counter expired;
+    private final Counter downgraded;
+
+    public EntitlementService(
+            UserRepository userRepository,
+            MeterRegistry meterRegistry,
+            @Value("${payment.entitlement.downgrade-batch-size:500}") int batchSize) {
+        this.userRepository = userRepository;
+        this.batchSize = batchSize;
+        this.expiryWheel = new ExpiryWheel<>(nowSeconds());
+
+        Gauge.builder("entitlement.premium.size", premiumUntil, Map::size).register(meterRegistry);
+        Gauge.builder("entitlement.wheel.size", expiryWheel, ExpiryWheel::size).register(meterRegistry);
+        this.expired = meterRegistry.counter("entitlement.expired");
+        this.downgraded = meterRegistry.counter("entitlement.downgraded");
+    }
+
+    /**
+     * 有効なプレミアム会員か
+     */
+    public boolean isPremium(Long userId) {
+        if (userId == null) {
+            return false;
+        }
+        Long until = premiumUntil.get(userId);
+        return until != null && until > nowSeconds();
+    }
+
+    /**
+     * プランを更新したユーザーを反映する（Webhook で保存した直後に呼ぶ）
+     */
+    public void apply(User user) {
+        if (user == null || user.getId() == null) {
+            return;
+        }
+        long until = premiumUntilOf(user);
+        if (until <= nowSeconds()) {
+            premiumUntil.remove(user.getId());
+            return;
+        }
+        Long previous = premiumUntil.put(user.getId(), until);
+        if (previous == null || previous != until) {
+            expiryWheel.schedule(user.getId(), until);
+        }
+    }
+
+    /**
+     * DB から読み直したユーザーを反映する（変化がなければ何もしない）
+     */
+    public void observe(User user) {
+        if (user == null || user.getId() == null) {
+            return;
+        }
+        Long current = premiumUntil.get(user.getId());
+        long until = premiumUntilOf(user);
+        if (current == null ? until > nowSeconds() : current != until) {
+            apply(user);
+        }
+    }
+
+    // --- 起動・定期処理 ---
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        load().subscribe();
+    }
+
+    /**
+     * 期限切れのまま残っている会員を FREE に戻し、有効なプレミアム会員を読み込む
+     */
+    public Mono<Void> load() {
+        LocalDateTime now = LocalDateTime.now();
+        return userRepository.downgradeAllExpired(now)
+            .doOnNext(count -> {
+                if (count > 0) {
+                    downgraded.increment(count);
+                    log.info("Entitlement: downgraded {} expired premium users on startup", count);
+                }
+            })
+            .thenMany(userRepository.findActivePremium(now))
+            .doOnNext(this::apply)
+            .count()
+            .doOnNext(count -> log.info("Entitlement: loaded {} premium users", count))
+            .doOnError(e -> log.error("Entitlement load failed: {}", e.getMessage()))
+            .onErrorResume(e -> Mono.empty())
+            .then();
+    }
+
+    @Scheduled(fixedRate = 1000)
+    public Mono<Void> tick() {
+        long now = nowSeconds();
+        expiryWheel.advance(now, userId -> {
+            // 延長・再登録されていれば、その後の予約で扱う
+            Long until = premiumUntil.get(userId);
+            if (until != null && until <= now && premiumUntil.remove(userId, until)) {
+                expired.increment();
+                pendingDowngrades.add(userId);
+            }
+        });
+        return downgradePending();
+    }
+
+    /**
+     * 取りこぼし対策: DB 上で期限切れのまま残っている会員を FREE に戻す
+     */
+    @Scheduled(cron = "${payment.entitlement.reconcile-cron:0 30 * * * *}", zone = "Asia/Tokyo")
+    public Mono<Void> reconcile() {
+        return userRepository.downgradeAllExpired(LocalDateTime.now())
+            .doOnNext(count -> downgraded.increment(count))
+            .doOnError(e -> log.warn("Entitlement reconcile failed: {}", e.getMessage()))
+            .onErrorResume(e -> Mono.empty())
+            .then();
+    }
+
+    // --- Private Methods ---
+
+    /**
+     * 期限切れのユーザーを batch-size 件ずつ FREE に戻す（実行中なら次の tick に回す）
+     */
+    private Mono<Void> downgradePending() {
+        if (pendingDowngrades.isEmpty() || !downgrading.compareAndSet(false, true)) {
+            return Mono.empty();
+        }
+        List<List<Long>> batches = new ArrayList<>();
+        List<Long> batch = new ArrayList<>(batchSize);
+        Long userId;
+        while ((userId = pendingDowngrades.poll()) != null) {
+            batch.add(userId);
+            if (batch.size() >= batchSize) {
+                batches.add(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        LocalDateTime now = LocalDateTime.now();
+        return Flux.fromIterable(batches)
+            .concatMap(ids -> userRepository.downgradeExpired(ids, now)
+                .doOnNext(count -> {
+                    downgraded.increment(count);
+                    log.info("Entitlement: downgraded {} of {} expired premium users", count, ids.size());
+                })
+                .onErrorResume(e -> {
+                    // 失敗した分は次の tick で再試行する
+                    log.warn("Entitlement downgrade failed: {}", e.getMessage());
+                    pendingDowngrades.addAll(ids);
+                    return Mono.empty();
+                }))
+            .then()
+            .doFinally(signal -> downgrading.set(false));
+    }
+
+    /**
+     * プレミアムの期限 (エポック秒)。プレミアムでなければ 0
+     */
+    private static long premiumUntilOf(User user) {
+        if (!User.Plan.PREMIUM.name().equalsIgnoreCase(user.getPlanType()) || user.getSubscriptionExpiresAt() == null) {
+            return 0L;
+        }
+        return user.getSubscriptionExpiresAt().atZone(ZONE).toEpochSecond();
+    }
+
+    private static long nowSeconds() {
+        return System.currentTimeMillis() / 1000;
+    }
+}
@@ -0,0 +1,121 @@
+package jp.smartbrief.billing.payment.entitlement;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 期限切れの予約 (階層型タイミングホイール)
+ *
+ * 秒 (60) → 分 (60) → 時 (24) → 日 (400) の4段のホイールで、キーを期限の秒に登録します。
+ * 期限が遠いキーは粗い段に置き、その段のスロットが回ってきたら細かい段へ移すため、
+ * 1ヶ月先の期限でも登録・取り出しはキー数に比例せず、毎秒の処理は1スロット分だけで済みます。
+ * 400日より先の期限は overflow に置き、日が変わるたびに置き直します。
+ * 同じキーを何度登録してもよく、古い予約の要否は取り出した側で判断します。
+ */
+final class ExpiryWheel<K> {
+
+    private static final long[] TICK_SECONDS = {1, 60, 3_600, 86_400};
+    private static final int[] SLOTS = {60, 60, 24, 400};
+
+    private record Timer<K>(K key, long deadline) {
+    }
+
+    private final List<List<List<Timer<K>>>> levels = new ArrayList<>(TICK_SECONDS.length);
+    private List<Timer<K>> overflow = new ArrayList<>();
+    private long current;
+    private int size;
+
+    ExpiryWheel(long nowSeconds) {
+        for (int level = 0; level < TICK_SECONDS.length; level++) {
+            List<List<Timer<K>>> slots = new ArrayList<>(SLOTS[level]);
+            for (int i = 0; i < SLOTS[level]; i++) {
+                slots.add(new ArrayList<>());
+            }
+            levels.add(slots);
+        }
+        this.current = nowSeconds;
+    }
+
+    /**
+     * deadline (エポック秒) に期限切れにする
+     * @return 既に期限を過ぎていて登録しなかったら false
+     */
+    synchronized boolean schedule(K key, long deadline) {
+        if (deadline <= current) {
+            return false;
+        }
+        place(new Timer<>(key, deadline));
+        size++;
+        return true;
+    }
+
+    /**
+     * ホイールを nowSeconds まで進め、期限切れになったキーを渡す
+     */
+    synchronized void advance(long nowSeconds, Consumer<K> expired) {
+        while (current < nowSeconds) {
+            current++;
+            // 粗い段から順に、このスロットの予約を細かい段へ移す
+            if (current % TICK_SECONDS[3] == 0) {
+                List<Timer<K>> pending = overflow;
+                overflow = new ArrayList<>();
+                pending.forEach(timer -> replace(timer, expired));
+            }
+            for (int level = TICK_SECONDS.length - 1; level >= 1; level--) {
+                if (current % TICK_SECONDS[level] == 0) {
+                    cascade(level, expired);
+                }
+            }
+            List<Timer<K>> slot = levels.get(0).get(slotOf(0, current));
+            for (Timer<K> timer : slot) {
+                expired.accept(timer.key());
+            }
+            size -= slot.size();
+            slot.clear();
+        }
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    // --- Private Methods ---
+
+    private void cascade(int level, Consumer<K> expired) {
+        List<Timer<K>> slot = levels.get(level).get(slotOf(level, current));
+        if (slot.isEmpty()) {
+            return;
+        }
+        List<Timer<K>> pending = new ArrayList<>(slot);
+        slot.clear();
+        pending.forEach(timer -> replace(timer, expired));
+    }
+
+    private void replace(Timer<K> timer, Consumer<K> expired) {
+        if (timer.deadline() <= current) {
+            expired.accept(timer.key());
+            size--;
+        } else {
+            place(timer);
+        }
+    }
+
+    /**
+     * 残り時間が収まる最も細かい段に置く
+     */
+    private void place(Timer<K> timer) {
+        long delay = timer.deadline() - current;
+        for (int level = 0; level < TICK_SECONDS.length; level++) {
+            if (delay < TICK_SECONDS[level] * SLOTS[level]) {
+                levels.get(level).get(slotOf(level, timer.deadline())).add(timer);
+                return;
+            }
+        }
+        overflow.add(timer);
+    }
+
+    private static int slotOf(int level, long seconds) {
+        return (int) ((seconds / TICK_SECONDS[level]) % SLOTS[level]);
+    }
+}
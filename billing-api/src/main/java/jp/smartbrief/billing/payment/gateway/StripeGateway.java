@@ -0,0 +1,262 @@
+package jp.smartbrief.billing.payment.gateway;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.stripe.exception.StripeException;
+import com.stripe.model.StripeCollection;
+import com.stripe.model.Subscription;
+import com.stripe.net.RequestOptions;
+import com.stripe.param.SubscriptionListParams;
+import com.stripe.param.checkout.SessionCreateParams;
+
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Stripe ゲートウェイ
+ *
+ * Stripe SDK のブロッキング呼び出しを、アプリ共有の boundedElastic ではなく専用の小さなプールに隔離します。
+ * 1. 専用プール (threads + queue-capacity) が埋まっていたら待たずに 503 を返す (バルクヘッド)
+ * 2. 1回の呼び出しは deadline で打ち切る（SDK の接続・読み取りタイムアウトも同じ値にする）
+ * 3. 失敗が続いたらサーキットブレーカーを開き、しばらく Stripe を呼ばずに 503 を返す
+ *    (4xx = こちらのリクエストの誤りは失敗として数えない)
+ * 4. 作成リクエストには冪等キーを付け、同じユーザーの同じ時間枠内の再送で別のセッションを作らない
+ * 5. 作成したセッションの URL はユーザーごとに短時間 (checkout-reuse / portal-reuse) 使い回す
+ *    （連打や同時リクエストでもセッションは1つ。プラン変更時は forget() で捨てる）
+ * メトリクス: resilience4j.circuitbreaker.* (name=stripe)
+ */
+@Slf4j
+@Component
+public class StripeGateway {
+
+    private final String apiKey;
+    private final String frontendUrl;
+    private final String premiumPriceId;
+    private final Duration deadline;
+    private final Duration checkoutReuse;
+    private final Duration portalReuse;
+
+    private final ThreadPoolExecutor executor;
+    private final Scheduler scheduler;
+    private final CircuitBreaker circuitBreaker;
+
+    // 再利用するセッション URL ("checkout:{userId}" / "portal:{customerId}" → URL)
+    private final AsyncCache<String, String> checkoutSessions;
+    private final AsyncCache<String, String> portalSessions;
+
+    public StripeGateway(
+            @Value("${stripe.api.key}") String apiKey,
+            @Value("${app.frontend.url:http://localhost:3000}") String frontendUrl,
+            @Value("${stripe.price.id:price_H5ggYJDqBoLV53}") String premiumPriceId,
+            @Value("${stripe.gateway.threads:8}") int threads,
+            @Value("${stripe.gateway.queue-capacity:16}") int queueCapacity,
+            @Value("${stripe.gateway.deadline:PT10S}") Duration deadline,
+            @Value("${stripe.gateway.checkout-reuse:PT5M}") Duration checkoutReuse,
+            @Value("${stripe.gateway.portal-reuse:PT1M}") Duration portalReuse,
+            @Value("${stripe.gateway.circuit-breaker.failure-rate-threshold:50}") float failureRateThreshold,
+            @Value("${stripe.gateway.circuit-breaker.minimum-calls:10}") int minimumCalls,
+            @Value("${stripe.gateway.circuit-breaker.wait-in-open:PT30S}") Duration waitInOpen,
+            MeterRegistry meterRegistry) {
+        this.apiKey = apiKey;
+        this.frontendUrl = frontendUrl;
+        this.premiumPriceId = premiumPriceId;
+        this.deadline = deadline;
+        this.checkoutReuse = checkoutReuse;
+        this.portalReuse = portalReuse;
+
+        this.executor = new ThreadPoolExecutor(
+            threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            new CustomizableThreadFactory("stripe-"),
+            new ThreadPoolExecutor.AbortPolicy());
+        this.scheduler = Schedulers.fromExecutorService(executor, "stripe");
+
+        CircuitBreakerRegistry registry = CircuitBreakerRegistry.of(CircuitBreakerConfig.custom()
+            .failureRateThreshold(failureRateThreshold)
+            .minimumNumberOfCalls(minimumCalls)
+            .slidingWindowSize(Math.max(minimumCalls * 2, 1))
+            .waitDurationInOpenState(waitInOpen)
+            .recordException(StripeGateway::isFailure)
+            .build());
+        this.circuitBreaker = registry.circuitBreaker("stripe");
+        TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(registry).bindTo(meterRegistry);
+
+        this.checkoutSessions = Caffeine.newBuilder().expireAfterWrite(checkoutReuse).maximumSize(10_000).buildAsync();
+        this.portalSessions = Caffeine.newBuilder().expireAfterWrite(portalReuse).maximumSize(10_000).buildAsync();
+    }
+
+    /**
+     * プレミアムプランの Checkout セッションを作成する（短時間内なら作成済みの URL を返す）
+     * @return Checkout の URL
+     */
+    public Mono<String> checkoutUrl(Long userId, String email) {
+        String idempotencyKey = "checkout-" + userId + "-" + premiumPriceId + "-" + timeBucket(checkoutReuse);
+        return Mono.fromFuture(() -> checkoutSessions.get("checkout:" + userId, (key, unused) ->
+            call("checkout", () -> {
+                SessionCreateParams params = SessionCreateParams.builder()
+                    .setMode(SessionCreateParams.Mode.SUBSCRIPTION)
+                    .setCustomerEmail(email)
+                    .setSuccessUrl(frontendUrl + "/settings?session_id={CHECKOUT_SESSION_ID}")
+                    .setCancelUrl(frontendUrl + "/pricing")
+                    .addLineItem(
+                        SessionCreateParams.LineItem.builder()
+                            .setQuantity(1L)
+                            .setPrice(premiumPriceId)
+                            .build()
+                    )
+                    .putMetadata("userId", String.valueOf(userId)) // Webhookでの突き合わせ用
+                    .build();
+                return com.stripe.model.checkout.Session.create(params, options(idempotencyKey)).getUrl();
+            }).toFuture()));
+    }
+
+    /**
+     * カスタマーポータルのセッションを作成する（短時間内なら作成済みの URL を返す）
+     * @return ポータルの URL
+     */
+    public Mono<String> portalUrl(String customerId) {
+        String idempotencyKey = "portal-" + customerId + "-" + timeBucket(portalReuse);
+        return Mono.fromFuture(() -> portalSessions.get("portal:" + customerId, (key, unused) ->
+            call("portal", () -> {
+                com.stripe.param.billingportal.SessionCreateParams params =
+                    com.stripe.param.billingportal.SessionCreateParams.builder()
+                        .setCustomer(customerId)
+                        .setReturnUrl(frontendUrl + "/settings")
+                        .build();
+                return com.stripe.model.billingportal.Session.create(params, options(idempotencyKey)).getUrl();
+            }).toFuture()));
+    }
+
+    /**
+     * サブスクリプションを1ページ分取得する（canceled 以外。新しい順）
+     * @param customerId 顧客で絞り込む場合に指定 (null なら全顧客)
+     * @param startingAfter 前のページの最後のサブスクリプションID (最初のページは null)
+     */
+    public Mono<StripeCollection<Subscription>> listSubscriptions(String customerId, String startingAfter, int limit) {
+        return call("subscriptions", () -> {
+            SubscriptionListParams.Builder params = SubscriptionListParams.builder().setLimit((long) limit);
+            if (customerId != null) {
+                params.setCustomer(customerId);
+            }
+            if (startingAfter != null) {
+                params.setStartingAfter(startingAfter);
+            }
+            return Subscription.list(params.build(), options(null));
+        });
+    }
+
+    /**
+     * ユーザーの再利用中のセッションを捨てる（プラン変更後に古い Checkout を返さないように）
+     */
+    public void forget(Long userId, String customerId) {
+        if (userId != null) {
+            checkoutSessions.synchronous().invalidate("checkout:" + userId);
+        }
+        if (customerId != null) {
+            portalSessions.synchronous().invalidate("portal:" + customerId);
+        }
+    }
+
+    public CircuitBreaker.State circuitState() {
+        return circuitBreaker.getState();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.dispose();
+        executor.shutdown();
+    }
+
+    // --- Private Methods ---
+
+    /**
+     * 専用プール・期限・サーキットブレーカーの下で Stripe を呼ぶ
+     */
+    private <T> Mono<T> call(String operation, Callable<T> request) {
+        return Mono.fromCallable(request)
+            .subscribeOn(scheduler)
+            .timeout(deadline)
+            .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+            .onErrorMap(e -> toResponseStatus(operation, e));
+    }
+
+    /**
+     * @param idempotencyKey 作成リクエストの冪等キー (参照系は null)
+     */
+    private RequestOptions options(String idempotencyKey) {
+        int timeoutMillis = (int) deadline.toMillis();
+        RequestOptions.RequestOptionsBuilder builder = RequestOptions.builder().setApiKey(apiKey);
+        if (idempotencyKey != null) {
+            builder.setIdempotencyKey(idempotencyKey);
+        }
+        return builder
+            .setConnectTimeout(timeoutMillis)
+            .setReadTimeout(timeoutMillis)
+            .setMaxNetworkRetries(0) // 再試行は呼び出し側 (冪等キー付き) に任せ、期限を超えないようにする
+            .build();
+    }
+
+    /**
+     * 冪等キーの時間枠（同じ枠内の再送は Stripe 側でも同じセッションになる）
+     */
+    private static long timeBucket(Duration window) {
+        return System.currentTimeMillis() / Math.max(window.toMillis(), 1);
+    }
+
+    /**
+     * サーキットブレーカーが失敗として数える例外（Stripe の 4xx はこちらの誤りなので数えない）
+     */
+    private static boolean isFailure(Throwable e) {
+        if (e instanceof StripeException stripe) {
+            Integer status = stripe.getStatusCode();
+            return status == null || status >= 500 || status == 429;
+        }
+        return !(e instanceof RejectedExecutionException);
+    }
+
+    private static Throwable toResponseStatus(String operation, Throwable e) {
+        if (e instanceof ResponseStatusException) {
+            return e;
+        }
+        if (e instanceof CallNotPermittedException) {
+            log.warn("Stripe {} skipped: circuit breaker is open", operation);
+            return new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                "決済サービスが一時的に利用できません。しばらくしてから再度お試しください。", e);
+        }
+        if (e instanceof RejectedExecutionException) {
+            log.warn("Stripe {} rejected: gateway pool is saturated", operation);
+            return new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                "決済サービスが混み合っています。しばらくしてから再度お試しください。", e);
+        }
+        if (e instanceof TimeoutException) {
+            log.warn("Stripe {} timed out", operation);
+            return new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT, "決済サービスの応答がありません。", e);
+        }
+        log.error("Stripe {} failed: {}", operation, e.getMessage());
+        return new ResponseStatusException(HttpStatus.BAD_GATEWAY, "決済サービスとの通信に失敗しました。", e);
+    }
+}
@@ -0,0 +1,32 @@
+package jp.smartbrief.billing.payment.reconcile;
+
+import jp.smartbrief.billing.identity.domain.User;
+import jp.smartbrief.billing.payment.domain.SubscriptionSnapshot;
+
+/**
+ * 突き合わせで見つかった1ユーザー分のずれ
+ * @param user 訂正前のユーザー
+ * @param drift ずれの種類 (plan: プランが違う / expiry: 期限だけ違う / orphan: Stripe 側に有効なサブスクリプションがない)
+ */
+public record SubscriptionCorrection(User user, SubscriptionSnapshot expected, String drift) {
+
+    static SubscriptionCorrection between(User user, SubscriptionSnapshot expected, boolean orphan) {
+        String drift = orphan ? "orphan"
+            : expected.plan().name().equalsIgnoreCase(user.getPlanType()) ? "expiry" : "plan";
+        return new SubscriptionCorrection(user, expected, drift);
+    }
+
+    Long userId() {
+        return user.getId();
+    }
+
+    /**
+     * 訂正後のユーザー (EntitlementService に反映する用)
+     */
+    User corrected() {
+        return user.toBuilder()
+            .planType(expected.plan().name())
+            .subscriptionExpiresAt(expected.expiresAt())
+            .build();
+    }
+}
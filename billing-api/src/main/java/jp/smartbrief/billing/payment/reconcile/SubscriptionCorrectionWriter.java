@@ -0,0 +1,82 @@
+package jp.smartbrief.billing.payment.reconcile;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+
+import jp.smartbrief.billing.identity.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import reactor.core.publisher.Mono;
+
+/**
+ * 突き合わせで見つかったずれを users にまとめて書き込む
+ *
+ * 1ページ分の訂正を、CASE 式の UPDATE 1回で反映します（ユーザーごとに UPDATE を発行しない）。
+ * 各行は突き合わせたときのプラン・有効期限のままである場合だけ書き換えます
+ * （その間に Webhook が書いた新しい状態を、Stripe から読んだ古い状態で上書きしない）。
+ */
+@Component
+@RequiredArgsConstructor
+public class SubscriptionCorrectionWriter {
+
+    private final DatabaseClient databaseClient;
+    private final UserRepository userRepository;
+
+    /**
+     * @return 実際に書き込んだ訂正 (途中で書き換えられていた行は含まない)
+     */
+    public Mono<List<SubscriptionCorrection>> apply(List<SubscriptionCorrection> corrections) {
+        if (corrections.isEmpty()) {
+            return Mono.just(List.of());
+        }
+        StringBuilder plan = new StringBuilder("plan_type = CASE id");
+        StringBuilder expires = new StringBuilder("subscription_expires_at = CASE id");
+        StringBuilder conditions = new StringBuilder();
+        for (int i = 0; i < corrections.size(); i++) {
+            plan.append(" WHEN :u").append(i).append(" THEN :p").append(i);
+            expires.append(" WHEN :u").append(i).append(" THEN :e").append(i);
+            // <=> は NULL 同士も一致とみなす
+            conditions.append(i == 0 ? "" : " OR ")
+                .append("(id = :u").append(i)
+                .append(" AND plan_type <=> :op").append(i)
+                .append(" AND subscription_expires_at <=> :oe").append(i).append(')');
+        }
+        String sql = "UPDATE users SET " + plan + " END, " + expires + " END WHERE " + conditions;
+
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(sql);
+        for (int i = 0; i < corrections.size(); i++) {
+            SubscriptionCorrection correction = corrections.get(i);
+            spec = spec.bind("u" + i, correction.userId())
+                .bind("p" + i, correction.expected().plan().name());
+            spec = bindNullable(spec, "e" + i, correction.expected().expiresAt(), LocalDateTime.class);
+            spec = bindNullable(spec, "op" + i, correction.user().getPlanType(), String.class);
+            spec = bindNullable(spec, "oe" + i, correction.user().getSubscriptionExpiresAt(), LocalDateTime.class);
+        }
+        return spec.fetch().rowsUpdated()
+            .flatMap(updated -> updated == corrections.size() ? Mono.just(corrections) : written(corrections));
+    }
+
+    // --- Private Methods ---
+
+    /**
+     * 一部の行が書き換わらなかったときは、読み直して訂正後の状態になっている行だけを返す
+     */
+    private Mono<List<SubscriptionCorrection>> written(List<SubscriptionCorrection> corrections) {
+        Map<Long, SubscriptionCorrection> byId = corrections.stream()
+            .collect(Collectors.toMap(SubscriptionCorrection::userId, Function.identity()));
+        return userRepository.findAllById(byId.keySet())
+            .filter(user -> byId.get(user.getId()).expected().matches(user))
+            .map(user -> byId.get(user.getId()))
+            .collectList();
+    }
+
+    private static <T> DatabaseClient.GenericExecuteSpec bindNullable(
+            DatabaseClient.GenericExecuteSpec spec, String name, T value, Class<T> type) {
+        return value != null ? spec.bind(name, value) : spec.bindNull(name, type);
+    }
+}
@@ -0,0 +1,280 @@
+package jp.smartbrief.billing.payment.reconcile;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.stripe.model.StripeCollection;
+import com.stripe.model.Subscription;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jp.smartbrief.billing.identity.domain.User;
+import jp.smartbrief.billing.identity.repository.UserRepository;
+import jp.smartbrief.billing.payment.domain.SubscriptionSnapshot;
+import jp.smartbrief.billing.payment.entitlement.EntitlementService;
+import jp.smartbrief.billing.payment.gateway.StripeGateway;
+import jp.smartbrief.billing.shared.security.PrincipalCache;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Stripe とのサブスクリプション突き合わせ (夜間バッチ)
+ *
+ * Webhook を取りこぼすと users の plan_type / subscription_expires_at が Stripe とずれたままになるため、
+ * 夜間に Stripe 側の状態を正として次の手順で直します。
+ * 1. Stripe のサブスクリプション (canceled 以外) を page-size 件ずつカーソルでたどる
+ *    (Stripe への呼び出しは StripeGateway 経由で1本ずつ、max-requests-per-second 以下に間隔を空ける)
+ * 2. 1ページ分の顧客を users から IN 検索1回で引き、SubscriptionSnapshot と違うユーザーだけを訂正する
+ *    (DB 側の処理は最大 page-prefetch ページ分だけ Stripe の取得と並行して進む)
+ * 3. 訂正はページごとに UPDATE 1回 (SubscriptionCorrectionWriter) で書き込み、利用資格と Principal キャッシュに反映する
+ *    (突き合わせの後に Webhook が書き換えた行は上書きせず、反映もしない)
+ * 4. 最後まで読めたら、Stripe 側に見つからなかったプレミアム会員を顧客ごとに確認し、有効なものがなければ FREE にする
+ *    (途中で失敗した回はこの手順を行わない。確認は verify-concurrency 本まで並行、同じ間隔制限の下で行う)
+ * dry-run では書き込まずにずれの件数だけを記録します。
+ * メトリクス: reconcile.subscriptions.scanned、reconcile.drift (kind=plan/expiry/orphan)、reconcile.corrected、
+ * reconcile.run (所要時間。scanned と合わせてスループットを見る)
+ */
+@Slf4j
+@Component
+public class SubscriptionReconciler {
+
+    /**
+     * 1回の突き合わせの結果
+     */
+    public record Report(long pages, long scanned, long drifted, long corrected, Duration elapsed) {
+
+        /** 1秒あたりに突き合わせたサブスクリプション数 */
+        public double throughput() {
+            return elapsed.isZero() ? scanned : scanned * 1000.0 / elapsed.toMillis();
+        }
+    }
+
+    private final StripeGateway stripeGateway;
+    private final UserRepository userRepository;
+    private final SubscriptionCorrectionWriter correctionWriter;
+    private final EntitlementService entitlementService;
+    private final PrincipalCache principalCache;
+    private final MeterRegistry meterRegistry;
+
+    private final int pageSize;
+    private final Duration requestInterval;
+    private final int pagePrefetch;
+    private final int verifyConcurrency;
+    private final boolean dryRun;
+
+    @Value("${payment.reconcile.enabled:true}")
+    private boolean enabled;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    private final Counter scanned;
+    private final Counter corrected;
+    private final Timer runTimer;
+
+    public SubscriptionReconciler(
+            StripeGateway stripeGateway,
+            UserRepository userRepository,
+            SubscriptionCorrectionWriter correctionWriter,
+            EntitlementService entitlementService,
+            PrincipalCache principalCache,
+            MeterRegistry meterRegistry,
+            @Value("${payment.reconcile.page-size:100}") int pageSize,
+            @Value("${payment.reconcile.max-requests-per-second:20}") int maxRequestsPerSecond,
+            @Value("${payment.reconcile.page-prefetch:4}") int pagePrefetch,
+            @Value("${payment.reconcile.verify-concurrency:4}") int verifyConcurrency,
+            @Value("${payment.reconcile.dry-run:false}") boolean dryRun) {
+        this.stripeGateway = stripeGateway;
+        this.userRepository = userRepository;
+        this.correctionWriter = correctionWriter;
+        this.entitlementService = entitlementService;
+        this.principalCache = principalCache;
+        this.meterRegistry = meterRegistry;
+        this.pageSize = pageSize;
+        this.requestInterval = Duration.ofMillis(1000L / Math.max(maxRequestsPerSecond, 1));
+        this.pagePrefetch = pagePrefetch;
+        this.verifyConcurrency = verifyConcurrency;
+        this.dryRun = dryRun;
+
+        this.scanned = meterRegistry.counter("reconcile.subscriptions.scanned");
+        this.corrected = meterRegistry.counter("reconcile.corrected");
+        this.runTimer = meterRegistry.timer("reconcile.run");
+    }
+
+    @Scheduled(cron = "${payment.reconcile.cron:0 0 5 * * *}", zone = "Asia/Tokyo")
+    public Mono<Void> scheduledReconcile() {
+        if (!enabled) {
+            return Mono.empty();
+        }
+        return reconcile()
+            .doOnError(e -> log.error("Subscription reconciliation failed: {}", e.getMessage()))
+            .onErrorResume(e -> Mono.empty())
+            .then();
+    }
+
+    /**
+     * Stripe の状態に合わせて users を訂正する（実行中なら何もしない）
+     */
+    public Mono<Report> reconcile() {
+        if (!running.compareAndSet(false, true)) {
+            return Mono.empty();
+        }
+        Run run = new Run();
+        long start = System.nanoTime();
+        return pages()
+            .concatMap(page -> reconcilePage(page, run), pagePrefetch)
+            .then(Mono.defer(() -> reconcileMissing(run)))
+            .then(Mono.fromSupplier(() -> run.report(Duration.ofNanos(System.nanoTime() - start))))
+            .doOnNext(report -> {
+                runTimer.record(report.elapsed());
+                log.info("Subscription reconciliation finished: pages={}, scanned={}, drifted={}, corrected={}, "
+                    + "elapsed={}ms, throughput={}/s{}", report.pages(), report.scanned(), report.drifted(),
+                    report.corrected(), report.elapsed().toMillis(), Math.round(report.throughput()),
+                    dryRun ? " (dry-run)" : "");
+            })
+            .doFinally(signal -> running.set(false));
+    }
+
+    // --- Private Methods ---
+
+    /**
+     * Stripe のサブスクリプションを1ページずつ読む（2ページ目以降は requestInterval を空ける）
+     */
+    private Flux<List<Subscription>> pages() {
+        return fetchPage(null, Duration.ZERO)
+            .expand(page -> Boolean.TRUE.equals(page.getHasMore()) && !page.getData().isEmpty()
+                ? fetchPage(page.getData().get(page.getData().size() - 1).getId(), requestInterval)
+                : Mono.empty())
+            .map(StripeCollection::getData);
+    }
+
+    private Mono<StripeCollection<Subscription>> fetchPage(String startingAfter, Duration wait) {
+        return Mono.delay(wait).then(stripeGateway.listSubscriptions(null, startingAfter, pageSize));
+    }
+
+    /**
+     * 1ページ分を users と突き合わせる（users の検索・更新は1回ずつ）
+     */
+    private Mono<Void> reconcilePage(List<Subscription> subscriptions, Run run) {
+        run.pages.incrementAndGet();
+        run.scanned.addAndGet(subscriptions.size());
+        scanned.increment(subscriptions.size());
+
+        Set<String> customers = new HashSet<>();
+        for (Subscription subscription : subscriptions) {
+            String customerId = subscription.getCustomer();
+            if (customerId == null) {
+                continue;
+            }
+            run.seen.add(customerId);
+            // 同じ顧客の複数のサブスクリプションは、PREMIUM で期限の遅い方を採る
+            SubscriptionSnapshot.of(subscription, false)
+                .ifPresent(snapshot -> {
+                    run.expected.merge(customerId, snapshot, SubscriptionSnapshot::better);
+                    customers.add(customerId);
+                });
+        }
+        if (customers.isEmpty()) {
+            return Mono.empty();
+        }
+        return userRepository.findByStripeCustomerIdIn(customers)
+            .flatMapIterable(user -> Optional.ofNullable(run.expected.get(user.getStripeCustomerId()))
+                .filter(expected -> !expected.matches(user))
+                .map(expected -> List.of(SubscriptionCorrection.between(user, expected, false)))
+                .orElse(List.of()))
+            .collectList()
+            .flatMap(corrections -> applyCorrections(corrections, run));
+    }
+
+    /**
+     * Stripe 側に (canceled 以外の) サブスクリプションが見つからなかったプレミアム会員を、顧客ごとに確認する
+     */
+    private Mono<Void> reconcileMissing(Run run) {
+        return userRepository.findPremiumWithStripeCustomer()
+            .filter(user -> !run.seen.contains(user.getStripeCustomerId()))
+            .delayElements(requestInterval)
+            .flatMap(this::verifyMissing, verifyConcurrency)
+            .buffer(pageSize)
+            .concatMap(corrections -> applyCorrections(corrections, run))
+            .then();
+    }
+
+    private Mono<SubscriptionCorrection> verifyMissing(User user) {
+        return stripeGateway.listSubscriptions(user.getStripeCustomerId(), null, 10)
+            .map(page -> page.getData().stream()
+                .map(subscription -> SubscriptionSnapshot.of(subscription, false))
+                .flatMap(Optional::stream)
+                .reduce(SubscriptionSnapshot::better)
+                .orElse(SubscriptionSnapshot.FREE))
+            .filter(expected -> !expected.matches(user))
+            .map(expected -> SubscriptionCorrection.between(user, expected, true))
+            .onErrorResume(e -> {
+                // 確認できなかった会員は今回は訂正しない（次回の突き合わせで再び確認する）
+                log.warn("Reconcile: could not verify customer {}: {}", user.getStripeCustomerId(), e.getMessage());
+                return Mono.empty();
+            });
+    }
+
+    private Mono<Void> applyCorrections(List<SubscriptionCorrection> corrections, Run run) {
+        if (corrections.isEmpty()) {
+            return Mono.empty();
+        }
+        for (SubscriptionCorrection correction : corrections) {
+            run.drifted.incrementAndGet();
+            meterRegistry.counter("reconcile.drift", "kind", correction.drift()).increment();
+            log.info("Reconcile: user={} drift={} plan {} -> {}, expiresAt {} -> {}{}",
+                correction.userId(), correction.drift(),
+                correction.user().getPlanType(), correction.expected().plan(),
+                correction.user().getSubscriptionExpiresAt(), correction.expected().expiresAt(),
+                dryRun ? " (dry-run)" : "");
+        }
+        if (dryRun) {
+            return Mono.empty();
+        }
+        return correctionWriter.apply(corrections)
+            .doOnNext(written -> {
+                run.corrected.addAndGet(written.size());
+                corrected.increment(written.size());
+                if (written.size() < corrections.size()) {
+                    log.info("Reconcile: {} of {} corrections skipped (users changed during reconciliation)",
+                        corrections.size() - written.size(), corrections.size());
+                }
+                // 書き込んだ行だけを反映する (書き換わっていた行は、書き換えた側が反映済み)
+                for (SubscriptionCorrection correction : written) {
+                    entitlementService.apply(correction.corrected());
+                    principalCache.invalidate(correction.user().getUsername());
+                }
+            })
+            .then();
+    }
+
+    /**
+     * 1回の突き合わせの途中経過
+     */
+    private static final class Run {
+        // Stripe 側で見つかった顧客 (incomplete を含む)
+        private final Set<String> seen = ConcurrentHashMap.newKeySet();
+        // 顧客ごとの users に入るべき状態
+        private final Map<String, SubscriptionSnapshot> expected = new ConcurrentHashMap<>();
+        private final AtomicLong pages = new AtomicLong();
+        private final AtomicLong scanned = new AtomicLong();
+        private final AtomicLong drifted = new AtomicLong();
+        private final AtomicLong corrected = new AtomicLong();
+
+        Report report(Duration elapsed) {
+            return new Report(pages.get(), scanned.get(), drifted.get(), corrected.get(), elapsed);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package jp.smartbrief.billing.payment.repository;
+
+import java.time.LocalDateTime;
+
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.Repository;
+
+import jp.smartbrief.billing.payment.domain.StripeWebhookEvent;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Stripe Webhook イベントリポジトリ
+ *
+ * 受信記録 (INSERT IGNORE。更新件数 0 = 受信済みの重複イベント) と、
+ * 処理状態の更新を行います。処理前に claim で行を確保するため、同じイベントを二重に処理しません。
+ */
+public interface StripeWebhookEventRepository extends Repository<StripeWebhookEvent, String> {
+
+    @Modifying
+    @Query("INSERT IGNORE INTO stripe_webhook_event "
+         + "(event_id, type, customer_id, payload, status, attempts, next_attempt_at, received_at) "
+         + "VALUES (:eventId, :type, :customerId, :payload, 'PENDING', 0, :now, :now)")
+    Mono<Integer> insertIfAbsent(String eventId, String type, String customerId, String payload, LocalDateTime now);
+
+    // 処理時刻を過ぎた未処理イベント (処理中のまま lease が切れたものを含む)
+    @Query("SELECT * FROM stripe_webhook_event WHERE status IN ('PENDING', 'PROCESSING') AND next_attempt_at <= :now "
+         + "ORDER BY received_at LIMIT :limit")
+    Flux<StripeWebhookEvent> findDue(LocalDateTime now, int limit);
+
+    // 処理するイベントを確保する (更新件数 1 = 確保できた)
+    @Modifying
+    @Query("UPDATE stripe_webhook_event SET status = 'PROCESSING', next_attempt_at = :leaseUntil "
+         + "WHERE event_id = :eventId AND status IN ('PENDING', 'PROCESSING') AND next_attempt_at <= :now")
+    Mono<Integer> claim(String eventId, LocalDateTime now, LocalDateTime leaseUntil);
+
+    @Modifying
+    @Query("UPDATE stripe_webhook_event SET status = 'PROCESSED', attempts = attempts + 1, processed_at = :processedAt, "
+         + "payload = NULL, last_error = NULL WHERE event_id = :eventId")
+    Mono<Integer> markProcessed(String eventId, LocalDateTime processedAt);
+
+    @Modifying
+    @Query("UPDATE stripe_webhook_event SET status = 'PENDING', attempts = attempts + 1, next_attempt_at = :nextAttemptAt, "
+         + "last_error = :error WHERE event_id = :eventId")
+    Mono<Integer> markRetry(String eventId, LocalDateTime nextAttemptAt, String error);
+
+    @Modifying
+    @Query("UPDATE stripe_webhook_event SET status = 'FAILED', attempts = attempts + 1, last_error = :error WHERE event_id = :eventId")
+    Mono<Integer> markFailed(String eventId, String error);
+
+    // 顧客ごとに反映済みのイベントの created (エポック秒)。まだ何も反映していなければ空
+    @Query("SELECT last_event_created FROM stripe_customer_watermark WHERE customer_id = :customerId")
+    Mono<Long> findWatermark(String customerId);
+
+    // 反映済みの created を進める (小さい値では戻さない)
+    @Modifying
+    @Query("INSERT INTO stripe_customer_watermark (customer_id, last_event_created, updated_at) "
+         + "VALUES (:customerId, :created, :now) "
+         + "ON DUPLICATE KEY UPDATE last_event_created = GREATEST(last_event_created, :created), updated_at = :now")
+    Mono<Integer> advanceWatermark(String customerId, long created, LocalDateTime now);
+
+    // 処理済みの記録は重複判定に必要な期間 (Stripe の再送期間 = 最大3日) を過ぎたら消す
+    @Modifying
+    @Query("DELETE FROM stripe_webhook_event WHERE status = 'PROCESSED' AND processed_at < :before")
+    Mono<Integer> deleteProcessedBefore(LocalDateTime before);
+}
@@ -11,23 +11,22 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
 
 import com.stripe.Stripe;
-import com.stripe.model.billingportal.Session;
-import com.stripe.param.billingportal.SessionCreateParams;
-import com.stripe.param.checkout.SessionCreateParams.LineItem;
 
 import jp.smartbrief.billing.identity.domain.User;
 import jp.smartbrief.billing.identity.repository.UserRepository;
 import jp.smartbrief.billing.payment.dto.BillingStatusDto;
+import jp.smartbrief.billing.payment.entitlement.EntitlementService;
+import jp.smartbrief.billing.payment.gateway.StripeGateway;
+import jp.smartbrief.billing.shared.security.PrincipalCache;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Schedulers;
 
 /**
  * 課金ドメインサービス
  * * 責務:
  * 1. 課金ステータスの参照
- * 2. Stripe API との通信（Checkout/Portal）- ※ブロッキング処理の隔離
+ * 2. Stripe API との通信（Checkout/Portal）- ※StripeGateway に委譲
  * 3. Webhook によるステータス更新 - ※トランザクション管理
  */
 @Slf4j
@@ -36,16 +35,13 @@ import reactor.core.scheduler.Schedulers;
 public class BillingService {
 
     private final UserRepository userRepository;
+    private final PrincipalCache principalCache;
+    private final StripeGateway stripeGateway;
+    private final EntitlementService entitlementService;
 
     @Value("${stripe.api.key}")
     private String stripeApiKey;
 
-    @Value("${app.frontend.url:http://localhost:3000}")
-    private String frontendUrl;
-
-    @Value("${stripe.price.id:price_H5ggYJDqBoLV53}") 
-    private String premiumPriceId;
-
     /**
      * アプリ起動時にStripe APIキーを初期化
      */
@@ -62,34 +58,18 @@ public class BillingService {
     public Mono<BillingStatusDto> getBillingStatus(String username) {
         return userRepository.findByUsername(username)
                 .switchIfEmpty(Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found")))
+                .doOnNext(entitlementService::observe)
                 .map(this::mapToStatusDto);
     }
 
-    // --- 2. Stripe連携ロジック (Bounded Elastic Scheduler利用) ---
+    // --- 2. Stripe連携ロジック (StripeGateway に隔離) ---
 
     /**
      * 決済セッション作成 (Checkout)
-     * Stripe SDKはブロッキングI/Oを行うため、専用スレッドで実行してイベントループを守る
+     * Stripe SDKはブロッキングI/Oを行うため、StripeGateway の専用プールで実行してイベントループを守る
      */
     public Mono<String> createCheckoutSession(Long userId, String email) {
-        return Mono.fromCallable(() -> {
-            com.stripe.param.checkout.SessionCreateParams params = com.stripe.param.checkout.SessionCreateParams.builder()
-                .setMode(com.stripe.param.checkout.SessionCreateParams.Mode.SUBSCRIPTION)
-                .setCustomerEmail(email)
-                .setSuccessUrl(frontendUrl + "/settings?session_id={CHECKOUT_SESSION_ID}")
-                .setCancelUrl(frontendUrl + "/pricing")
-                .addLineItem(
-                    LineItem.builder()
-                        .setQuantity(1L)
-                        .setPrice(premiumPriceId)
-                        .build()
-                )
-                .putMetadata("userId", String.valueOf(userId)) // Webhookでの突き合わせ用
-                .build();
-
-            return com.stripe.model.checkout.Session.create(params).getUrl();
-        })
-        .subscribeOn(Schedulers.boundedElastic()); // ★重要: ノンブロッキングを維持
+        return stripeGateway.checkoutUrl(userId, email);
     }
 
     /**
@@ -100,16 +80,7 @@ public class BillingService {
         if (customerId == null || customerId.isEmpty()) {
             return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "課金履歴が見つかりません"));
         }
-
-        return Mono.fromCallable(() -> {
-            SessionCreateParams params = SessionCreateParams.builder()
-                    .setCustomer(customerId)
-                    .setReturnUrl(frontendUrl + "/settings")
-                    .build();
-
-            return Session.create(params).getUrl();
-        })
-        .subscribeOn(Schedulers.boundedElastic());
+        return stripeGateway.portalUrl(customerId);
     }
 
     // --- 3. 更新系ロジック (Transactional) ---
@@ -137,14 +108,42 @@ public class BillingService {
                     updateUserPlan(user, newPlan, stripeCustomerId);
                     log.info("Subscription updated: UserID={}, Plan={}", user.getId(), newPlan);
                     return userRepository.save(user);
+                })
+                // 次のリクエストから新しいプランで認証されるようにする
+                .doOnNext(saved -> {
+                    entitlementService.apply(saved);
+                    principalCache.invalidate(saved.getUsername());
+                    // 決済済みの Checkout セッションを再利用させない
+                    stripeGateway.forget(saved.getId(), saved.getStripeCustomerId());
+                });
+    }
+
+    /**
+     * Stripe の顧客IDでユーザーを特定し、プランと有効期限を設定する
+     * (invoice.paid / customer.subscription.updated / deleted から呼ばれる)
+     * @param expiresAt 有効期限 (FREE にする場合は null)
+     * @return ユーザーが見つからなければ empty（Checkout 完了の通知より先に届いた場合など）
+     */
+    @Transactional
+    public Mono<User> updateSubscriptionByCustomer(String stripeCustomerId, User.Plan newPlan, LocalDateTime expiresAt) {
+        return userRepository.findByStripeCustomerId(stripeCustomerId)
+                .flatMap(user -> {
+                    user.setPlanType(newPlan.name());
+                    user.setSubscriptionExpiresAt(newPlan == User.Plan.PREMIUM ? expiresAt : null);
+                    log.info("Subscription synced: UserID={}, Plan={}, ExpiresAt={}", user.getId(), newPlan, expiresAt);
+                    return userRepository.save(user);
+                })
+                .doOnNext(saved -> {
+                    entitlementService.apply(saved);
+                    principalCache.invalidate(saved.getUsername());
+                    stripeGateway.forget(saved.getId(), saved.getStripeCustomerId());
                 });
     }
 
     // --- Private Helper Methods ---
 
     private BillingStatusDto mapToStatusDto(User user) {
-        boolean isPremium = User.Plan.PREMIUM.name().equals(user.getPlanType())
-                && (user.getSubscriptionExpiresAt() == null || user.getSubscriptionExpiresAt().isAfter(LocalDateTime.now()));
+        boolean isPremium = entitlementService.isPremium(user.getId());
 
         return new BillingStatusDto(
                 user.getUsername(),
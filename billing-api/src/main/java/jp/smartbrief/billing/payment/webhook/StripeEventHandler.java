@@ -0,0 +1,171 @@
+package jp.smartbrief.billing.payment.webhook;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Objects;
+import java.util.Set;
+
+import org.springframework.stereotype.Component;
+
+import com.stripe.exception.EventDataObjectDeserializationException;
+import com.stripe.model.Event;
+import com.stripe.model.Invoice;
+import com.stripe.model.InvoiceLineItem;
+import com.stripe.model.StripeObject;
+import com.stripe.model.Subscription;
+import com.stripe.model.checkout.Session;
+
+import jp.smartbrief.billing.identity.domain.User;
+import jp.smartbrief.billing.payment.domain.SubscriptionSnapshot;
+import jp.smartbrief.billing.payment.repository.StripeWebhookEventRepository;
+import jp.smartbrief.billing.payment.service.BillingService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+/**
+ * Stripe イベントの処理内容
+ *
+ * イベントの種類ごとに BillingService を呼び、プランと subscriptionExpiresAt を Stripe の状態に合わせます。
+ * - checkout.session.completed: metadata の userId に顧客IDを紐付けて PREMIUM にする
+ * - invoice.paid: 請求明細の期間の終わりまで PREMIUM を延長する
+ * - customer.subscription.updated: 状態と current_period_end をそのまま反映する
+ *   (解約予約中でも期間の終わりまでは PREMIUM。canceled / unpaid / incomplete_expired は FREE)
+ * - customer.subscription.deleted: FREE に戻す
+ * ユーザーがまだ顧客IDと紐付いていない場合はエラーにして、パイプラインに再試行させます。
+ *
+ * 再試行・sweep で拾い直したイベントは、同じ顧客の後のイベントより遅れて届くことがあります。
+ * 顧客ごとに反映済みのイベントの created を stripe_customer_watermark に記録し、
+ * それより古いイベントは反映せずに捨てます（解約の後に古い更新で PREMIUM に戻さないため）。
+ * created は秒単位のため、同じ秒のイベントは古いとみなさず反映します。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class StripeEventHandler {
+
+    // プランと有効期限を書き換えるイベント (反映済みの created と比べる対象)
+    private static final Set<String> STATE_EVENTS = Set.of(
+        "checkout.session.completed", "invoice.paid",
+        "customer.subscription.updated", "customer.subscription.deleted");
+
+    private final BillingService billingService;
+    private final StripeWebhookEventRepository eventRepository;
+
+    /**
+     * イベントの突き合わせに使う顧客ID (同じ顧客のイベントは同じ順序で処理する)
+     * @return 顧客IDが取れなければ null
+     */
+    public String customerOf(Event event) {
+        StripeObject object = dataObject(event);
+        if (object instanceof Session session) {
+            return session.getCustomer();
+        }
+        if (object instanceof Invoice invoice) {
+            return invoice.getCustomer();
+        }
+        if (object instanceof Subscription subscription) {
+            return subscription.getCustomer();
+        }
+        return null;
+    }
+
+    public Mono<Void> handle(Event event) {
+        String customerId = customerOf(event);
+        if (customerId == null || event.getCreated() == null || !STATE_EVENTS.contains(event.getType())) {
+            return apply(event);
+        }
+        long created = event.getCreated();
+        return eventRepository.findWatermark(customerId)
+            .map(applied -> created < applied)
+            .defaultIfEmpty(false)
+            .flatMap(stale -> {
+                if (stale) {
+                    log.info("Webhook stale event skipped: id={}, type={}, customer={}", event.getId(), event.getType(), customerId);
+                    return Mono.empty();
+                }
+                return apply(event)
+                    .then(eventRepository.advanceWatermark(customerId, created, LocalDateTime.now()))
+                    .then();
+            });
+    }
+
+    // --- Private Methods ---
+
+    private Mono<Void> apply(Event event) {
+        StripeObject object = dataObject(event);
+        return switch (event.getType()) {
+            case "checkout.session.completed" -> object instanceof Session session
+                ? checkoutCompleted(session) : Mono.empty();
+            case "invoice.paid" -> object instanceof Invoice invoice
+                ? invoicePaid(invoice) : Mono.empty();
+            case "customer.subscription.updated", "customer.subscription.deleted" ->
+                object instanceof Subscription subscription
+                    ? subscriptionChanged(subscription, "customer.subscription.deleted".equals(event.getType()))
+                    : Mono.empty();
+            default -> Mono.empty(); // その他のイベントは無視
+        };
+    }
+
+    private Mono<Void> checkoutCompleted(Session session) {
+        // metadata から userId を抽出 (CheckoutController でセットしたもの)
+        String userIdStr = session.getMetadata() != null ? session.getMetadata().get("userId") : null;
+        if (userIdStr == null) {
+            log.warn("Webhook checkout.session.completed ignored: userId not found in session metadata");
+            return Mono.empty();
+        }
+        return billingService.updateSubscriptionFromWebhook(userIdStr, User.Plan.PREMIUM, session.getCustomer()).then();
+    }
+
+    private Mono<Void> invoicePaid(Invoice invoice) {
+        if (invoice.getLines() == null || invoice.getLines().getData() == null) {
+            return Mono.empty();
+        }
+        Long periodEnd = invoice.getLines().getData().stream()
+            .map(InvoiceLineItem::getPeriod)
+            .filter(Objects::nonNull)
+            .map(InvoiceLineItem.Period::getEnd)
+            .filter(Objects::nonNull)
+            .max(Long::compare)
+            .orElse(null);
+        if (periodEnd == null) {
+            return Mono.empty();
+        }
+        return requireUser(invoice.getCustomer(),
+            billingService.updateSubscriptionByCustomer(invoice.getCustomer(), User.Plan.PREMIUM, toLocalDateTime(periodEnd)));
+    }
+
+    private Mono<Void> subscriptionChanged(Subscription subscription, boolean deleted) {
+        // incomplete (初回支払い前) は Checkout 完了 / invoice.paid を待つ
+        return SubscriptionSnapshot.of(subscription, deleted)
+            .map(snapshot -> requireUser(subscription.getCustomer(),
+                billingService.updateSubscriptionByCustomer(subscription.getCustomer(), snapshot.plan(), snapshot.expiresAt())))
+            .orElse(Mono.empty());
+    }
+
+    /**
+     * ユーザーが見つからなければエラーにする（Checkout 完了の通知を処理した後に再試行される）
+     */
+    private static Mono<Void> requireUser(String customerId, Mono<User> update) {
+        return update
+            .switchIfEmpty(Mono.error(new IllegalStateException("No user linked to Stripe customer " + customerId)))
+            .then();
+    }
+
+    private static StripeObject dataObject(Event event) {
+        // SDK と API バージョンが異なると getObject() は空になるため、その場合はそのまま読み込む
+        return event.getDataObjectDeserializer().getObject().orElseGet(() -> {
+            try {
+                return event.getDataObjectDeserializer().deserializeUnsafe();
+            } catch (EventDataObjectDeserializationException e) {
+                log.error("Webhook deserialization failed: id={}, type={}", event.getId(), event.getType(), e);
+                return null;
+            }
+        });
+    }
+
+    private static LocalDateTime toLocalDateTime(long epochSeconds) {
+        return LocalDateTime.ofInstant(Instant.ofEpochSecond(epochSeconds), ZoneId.systemDefault());
+    }
+}
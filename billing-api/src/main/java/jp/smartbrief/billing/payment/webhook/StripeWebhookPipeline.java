@@ -0,0 +1,272 @@
+package jp.smartbrief.billing.payment.webhook;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.stripe.model.Event;
+import com.stripe.net.ApiResource;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import jp.smartbrief.billing.payment.domain.StripeWebhookEvent;
+import jp.smartbrief.billing.payment.repository.StripeWebhookEventRepository;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+import reactor.core.Scannable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+/**
+ * Stripe Webhook の非同期処理パイプライン
+ *
+ * 1. accept(): 署名検証済みのイベントを stripe_webhook_event に INSERT IGNORE して即座に返す
+ *    (event_id が既にあれば重複として何もしない = Stripe の再送で二重に処理しない)
+ * 2. 新しいイベントは顧客IDのハッシュで選んだレーン (上限付きキュー) に積み、レーンごとに1件ずつ順に処理する
+ *    → 同じ顧客のイベントは受信順に処理され、別の顧客同士は並行して処理される
+ * 3. 失敗したイベントは指数バックオフで再試行し、max-attempts 回で FAILED にする
+ *    (再試行・sweep を経たイベントは後のイベントより遅れて処理されうるため、
+ *     同じ顧客の反映済みイベントより古いものは StripeEventHandler が捨てる)
+ * 4. キューが満杯だったイベント・再起動前に処理しきれなかったイベントは、定期的に DB から拾い直す
+ * メトリクス: stripe.webhook.received / duplicate / processed / retried / failed / overflow、stripe.webhook.queued (キュー内の件数)
+ */
+@Slf4j
+@Component
+public class StripeWebhookPipeline {
+
+    private static final int MAX_ERROR_LENGTH = 500;
+
+    private final StripeWebhookEventRepository eventRepository;
+    private final StripeEventHandler eventHandler;
+
+    private final List<Lane> lanes;
+    private final int maxAttempts;
+    private final Duration lease;
+    private final Duration backoffInitial;
+    private final Duration backoffMax;
+    private final int sweepBatchSize;
+    private final int retentionDays;
+
+    private final Counter received;
+    private final Counter duplicate;
+    private final Counter processed;
+    private final Counter retried;
+    private final Counter failed;
+    private final Counter overflow;
+
+    public StripeWebhookPipeline(
+            StripeWebhookEventRepository eventRepository,
+            StripeEventHandler eventHandler,
+            MeterRegistry meterRegistry,
+            @Value("${stripe.webhook.lanes:8}") int laneCount,
+            @Value("${stripe.webhook.queue-capacity:256}") int queueCapacity,
+            @Value("${stripe.webhook.max-attempts:10}") int maxAttempts,
+            @Value("${stripe.webhook.lease:PT2M}") Duration lease,
+            @Value("${stripe.webhook.backoff-initial:PT5S}") Duration backoffInitial,
+            @Value("${stripe.webhook.backoff-max:PT1H}") Duration backoffMax,
+            @Value("${stripe.webhook.sweep-batch-size:100}") int sweepBatchSize,
+            @Value("${stripe.webhook.retention-days:7}") int retentionDays) {
+        this.eventRepository = eventRepository;
+        this.eventHandler = eventHandler;
+        this.maxAttempts = maxAttempts;
+        this.lease = lease;
+        this.backoffInitial = backoffInitial;
+        this.backoffMax = backoffMax;
+        this.sweepBatchSize = sweepBatchSize;
+        this.retentionDays = retentionDays;
+
+        this.lanes = new ArrayList<>(laneCount);
+        for (int i = 0; i < Math.max(laneCount, 1); i++) {
+            lanes.add(new Lane(queueCapacity));
+        }
+        this.received = meterRegistry.counter("stripe.webhook.received");
+        this.duplicate = meterRegistry.counter("stripe.webhook.duplicate");
+        this.processed = meterRegistry.counter("stripe.webhook.processed");
+        this.retried = meterRegistry.counter("stripe.webhook.retried");
+        this.failed = meterRegistry.counter("stripe.webhook.failed");
+        this.overflow = meterRegistry.counter("stripe.webhook.overflow");
+        meterRegistry.gauge("stripe.webhook.queued", lanes, list -> list.stream().mapToInt(Lane::size).sum());
+    }
+
+    /**
+     * 署名検証済みのイベントを受け付ける（処理の完了は待たない）
+     * @return 新しいイベントなら true、受信済みの重複なら false
+     */
+    public Mono<Boolean> accept(Event event, String payload) {
+        String customerId = eventHandler.customerOf(event);
+        return eventRepository.insertIfAbsent(event.getId(), event.getType(), customerId, payload, LocalDateTime.now())
+            .map(inserted -> {
+                if (inserted == 0) {
+                    duplicate.increment();
+                    log.info("Webhook duplicate ignored: id={}, type={}", event.getId(), event.getType());
+                    return false;
+                }
+                received.increment();
+                enqueue(Task.received(event, customerId));
+                return true;
+            });
+    }
+
+    // --- レーンの起動・定期処理 ---
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        lanes.forEach(Lane::start);
+        // 停止前に処理しきれなかったイベントを拾い直す
+        sweep().subscribe();
+    }
+
+    @Scheduled(fixedDelayString = "${stripe.webhook.sweep-interval-ms:30000}",
+               initialDelayString = "${stripe.webhook.sweep-interval-ms:30000}")
+    public Mono<Void> scheduledSweep() {
+        return sweep();
+    }
+
+    /**
+     * 処理時刻を過ぎた未処理イベントを DB から読み、レーンに積み直す
+     */
+    public Mono<Void> sweep() {
+        return eventRepository.findDue(LocalDateTime.now(), sweepBatchSize)
+            .doOnNext(row -> enqueue(Task.stored(row)))
+            .then()
+            .doOnError(e -> log.warn("Webhook sweep failed: {}", e.getMessage()))
+            .onErrorResume(e -> Mono.empty());
+    }
+
+    @Scheduled(cron = "${stripe.webhook.cleanup-cron:0 45 4 * * *}", zone = "Asia/Tokyo")
+    public Mono<Void> cleanup() {
+        return eventRepository.deleteProcessedBefore(LocalDateTime.now().minusDays(retentionDays))
+            .doOnError(e -> log.warn("Webhook event cleanup failed: {}", e.getMessage()))
+            .onErrorResume(e -> Mono.empty())
+            .then();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // キューに残ったイベントは DB 上で PENDING のままなので、次回起動時に処理される
+        lanes.forEach(Lane::stop);
+    }
+
+    // --- Private Methods ---
+
+    private void enqueue(Task task) {
+        String key = task.customerId() != null ? task.customerId() : task.eventId();
+        Lane lane = lanes.get(Math.floorMod(key.hashCode(), lanes.size()));
+        if (!lane.offer(task)) {
+            // 満杯: DB 上は PENDING のままなので、次の sweep で拾い直す
+            overflow.increment();
+            log.warn("Webhook lane full, deferred to sweep: id={}", task.eventId());
+        }
+    }
+
+    /**
+     * 1件処理する（他のインスタンス・sweep と二重に処理しないよう、先に行を確保する）
+     */
+    private Mono<Void> process(Task task) {
+        LocalDateTime now = LocalDateTime.now();
+        return eventRepository.claim(task.eventId(), now, now.plus(lease))
+            .filter(claimed -> claimed > 0)
+            .flatMap(claimed -> loadEvent(task)
+                .flatMap(eventHandler::handle)
+                .then(eventRepository.markProcessed(task.eventId(), LocalDateTime.now()))
+                .doOnSuccess(updated -> processed.increment())
+                .onErrorResume(e -> recordFailure(task, e)))
+            .then()
+            .onErrorResume(e -> {
+                log.warn("Webhook processing aborted: id={}, error={}", task.eventId(), e.getMessage());
+                return Mono.empty();
+            });
+    }
+
+    /**
+     * 受信直後のイベントはそのまま使い、sweep で拾ったものは保存済みの payload から読み直す
+     */
+    private Mono<Event> loadEvent(Task task) {
+        if (task.event() != null) {
+            return Mono.just(task.event());
+        }
+        return Mono.fromCallable(() -> ApiResource.GSON.fromJson(task.payload(), Event.class));
+    }
+
+    private Mono<Integer> recordFailure(Task task, Throwable error) {
+        int attempts = task.attempts() + 1;
+        String message = truncate(error.getClass().getSimpleName() + ": " + error.getMessage());
+        if (attempts >= maxAttempts) {
+            failed.increment();
+            log.error("Webhook event failed permanently: id={}, attempts={}, error={}", task.eventId(), attempts, message);
+            return eventRepository.markFailed(task.eventId(), message);
+        }
+        retried.increment();
+        log.warn("Webhook processing failed, will retry: id={}, attempts={}, error={}", task.eventId(), attempts, message);
+        return eventRepository.markRetry(task.eventId(), LocalDateTime.now().plus(backoff(attempts)), message);
+    }
+
+    /**
+     * 指数バックオフ (initial × 2^(attempts-1)、上限 backoff-max) に ±20% のジッターを加える
+     */
+    private Duration backoff(int attempts) {
+        long base = backoffInitial.toMillis() << Math.min(attempts - 1, 20);
+        long capped = Math.min(base, backoffMax.toMillis());
+        double jitter = 0.8 + ThreadLocalRandom.current().nextDouble() * 0.4;
+        return Duration.ofMillis((long) (capped * jitter));
+    }
+
+    private static String truncate(String message) {
+        return message.length() <= MAX_ERROR_LENGTH ? message : message.substring(0, MAX_ERROR_LENGTH);
+    }
+
+    /**
+     * レーンに積む処理単位（event があればそのまま、なければ payload から読み直す）
+     */
+    private record Task(String eventId, String customerId, Event event, String payload, int attempts) {
+
+        static Task received(Event event, String customerId) {
+            return new Task(event.getId(), customerId, event, null, 0);
+        }
+
+        static Task stored(StripeWebhookEvent row) {
+            return new Task(row.getEventId(), row.getCustomerId(), null, row.getPayload(),
+                row.getAttempts() != null ? row.getAttempts() : 0);
+        }
+    }
+
+    /**
+     * 1つのレーン（上限付きキュー + 1件ずつ順に処理する購読）
+     */
+    private final class Lane {
+        private final Sinks.Many<Task> sink;
+        private Disposable subscription;
+
+        Lane(int capacity) {
+            this.sink = Sinks.many().unicast().onBackpressureBuffer(new ArrayBlockingQueue<>(capacity));
+        }
+
+        void start() {
+            subscription = sink.asFlux().concatMap(StripeWebhookPipeline.this::process).subscribe();
+        }
+
+        synchronized boolean offer(Task task) {
+            return sink.tryEmitNext(task).isSuccess();
+        }
+
+        int size() {
+            return sink.scanOrDefault(Scannable.Attr.BUFFERED, 0);
+        }
+
+        void stop() {
+            if (subscription != null) {
+                subscription.dispose();
+            }
+        }
+    }
+}
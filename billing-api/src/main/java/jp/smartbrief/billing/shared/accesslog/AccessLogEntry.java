@@ -0,0 +1,20 @@
+package jp.smartbrief.billing.shared.accesslog;
+
+/**
+ * アクセスログ1件分（リクエストの完了時に作る）
+ * @param timestampMillis リクエストを受け付けた時刻 (エポックミリ秒)
+ * @param durationNanos 受け付けから完了までの時間
+ * @param status レスポンスのステータス (クライアントが切断した場合は 499)
+ * @param bytes レスポンス本文のバイト数
+ * @param sampleRate この行を記録した確率 (集計時の重み付け用。必ず記録した行は 1.0)
+ */
+record AccessLogEntry(
+        long timestampMillis,
+        String method,
+        String path,
+        int status,
+        long durationNanos,
+        long bytes,
+        String remoteAddress,
+        double sampleRate) {
+}
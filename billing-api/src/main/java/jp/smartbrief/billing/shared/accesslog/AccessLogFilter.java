@@ -0,0 +1,193 @@
+package jp.smartbrief.billing.shared.accesslog;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+/**
+ * アクセスログフィルター
+ *
+ * 受け付け時には時刻だけを控え、ステータス・所要時間・レスポンスのバイト数はリクエストの完了時に確定させて
+ * AccessLogWriter のリングバッファに積みます（文字列の整形・出力はイベントループの外で行う）。
+ * 記録するかどうかはパスごとの抽出率 (sampling) で決めますが、
+ * 5xx・クライアントの切断・slow-threshold を超えた遅いリクエストは必ず記録します。
+ * 例外で終わったリクエストは、ステータスを例外から決めます（本文はこの後に書かれるため bytes は 0）。
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class AccessLogFilter implements WebFilter {
+
+    private static final int CLIENT_CLOSED_REQUEST = 499;
+
+    private record SampleRule(String pathPrefix, double rate) {
+    }
+
+    private final AccessLogWriter writer;
+    private final boolean enabled;
+    private final double defaultSampleRate;
+    private final long slowThresholdNanos;
+    // 長いプレフィックスから順に照合する
+    private final List<SampleRule> sampleRules;
+
+    public AccessLogFilter(
+            AccessLogWriter writer,
+            @Value("${access-log.enabled:true}") boolean enabled,
+            @Value("${access-log.default-sample-rate:1.0}") double defaultSampleRate,
+            @Value("${access-log.sampling:}") String sampling,
+            @Value("${access-log.slow-threshold:PT1S}") Duration slowThreshold) {
+        this.writer = writer;
+        this.enabled = enabled;
+        this.defaultSampleRate = defaultSampleRate;
+        this.slowThresholdNanos = slowThreshold.toNanos();
+        this.sampleRules = parseRules(sampling);
+    }
+
+    @Override
+    @NonNull
+    public Mono<Void> filter(@NonNull ServerWebExchange exchange, @NonNull WebFilterChain chain) {
+        if (!enabled) {
+            return chain.filter(exchange);
+        }
+        long startMillis = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
+        CountingResponse response = new CountingResponse(exchange.getResponse());
+        return chain.filter(exchange.mutate().response(response).build())
+            .doOnError(response::failed)
+            .doFinally(signal -> complete(exchange.getRequest(), response, signal, startMillis, startNanos));
+    }
+
+    // --- Private Methods ---
+
+    private void complete(ServerHttpRequest request, CountingResponse response, SignalType signal,
+                          long startMillis, long startNanos) {
+        long durationNanos = System.nanoTime() - startNanos;
+        int status = status(response, signal);
+        String path = request.getPath().value();
+
+        double rate = 1.0;
+        boolean always = status >= 500 || status == CLIENT_CLOSED_REQUEST || durationNanos >= slowThresholdNanos;
+        if (!always) {
+            rate = sampleRate(path);
+            if (rate <= 0.0 || (rate < 1.0 && ThreadLocalRandom.current().nextDouble() >= rate)) {
+                return;
+            }
+        }
+        writer.submit(new AccessLogEntry(
+            startMillis, request.getMethod().name(), path, status, durationNanos,
+            response.bytesWritten(), remoteAddress(request), rate));
+    }
+
+    private double sampleRate(String path) {
+        for (SampleRule rule : sampleRules) {
+            if (path.startsWith(rule.pathPrefix())) {
+                return rule.rate();
+            }
+        }
+        return defaultSampleRate;
+    }
+
+    private static int status(CountingResponse response, SignalType signal) {
+        if (signal == SignalType.CANCEL) {
+            return CLIENT_CLOSED_REQUEST;
+        }
+        if (signal == SignalType.ON_ERROR) {
+            // エラーのレスポンスはこの後 GlobalExceptionHandler が書くため、例外から決める
+            return response.error() instanceof ResponseStatusException e ? e.getStatusCode().value() : 500;
+        }
+        HttpStatusCode code = response.getStatusCode();
+        return code != null ? code.value() : 200;
+    }
+
+    private static String remoteAddress(ServerHttpRequest request) {
+        InetSocketAddress address = request.getRemoteAddress();
+        if (address == null) {
+            return null;
+        }
+        // getHostName() は逆引きが走るため使わない
+        return address.getAddress() != null ? address.getAddress().getHostAddress() : address.getHostString();
+    }
+
+    /**
+     * "/actuator=0,/api/v1/books=0.2" 形式の設定を読む
+     */
+    private static List<SampleRule> parseRules(String sampling) {
+        List<SampleRule> rules = new ArrayList<>();
+        if (sampling == null || sampling.isBlank()) {
+            return rules;
+        }
+        for (String pair : sampling.split(",")) {
+            String[] parts = pair.trim().split("=", 2);
+            if (parts.length == 2 && !parts[0].isBlank()) {
+                rules.add(new SampleRule(parts[0].trim(), Double.parseDouble(parts[1].trim())));
+            }
+        }
+        rules.sort(Comparator.comparingInt((SampleRule rule) -> rule.pathPrefix().length()).reversed());
+        return List.copyOf(rules);
+    }
+
+    /**
+     * 書き出したレスポンス本文のバイト数を数える
+     */
+    private static final class CountingResponse extends ServerHttpResponseDecorator {
+
+        private final AtomicLong bytes = new AtomicLong();
+        private volatile Throwable error;
+
+        CountingResponse(ServerHttpResponse delegate) {
+            super(delegate);
+        }
+
+        @Override
+        @NonNull
+        public Mono<Void> writeWith(@NonNull Publisher<? extends DataBuffer> body) {
+            // Mono のままにしておくと、1回の書き込みで済む経路が使われる
+            if (body instanceof Mono<? extends DataBuffer> mono) {
+                return super.writeWith(mono.doOnNext(buffer -> bytes.addAndGet(buffer.readableByteCount())));
+            }
+            return super.writeWith(Flux.from(body).doOnNext(buffer -> bytes.addAndGet(buffer.readableByteCount())));
+        }
+
+        @Override
+        @NonNull
+        public Mono<Void> writeAndFlushWith(@NonNull Publisher<? extends Publisher<? extends DataBuffer>> body) {
+            return super.writeAndFlushWith(Flux.from(body).map(inner ->
+                Flux.from(inner).doOnNext(buffer -> bytes.addAndGet(buffer.readableByteCount()))));
+        }
+
+        long bytesWritten() {
+            return bytes.get();
+        }
+
+        void failed(Throwable error) {
+            this.error = error;
+        }
+
+        Throwable error() {
+            return error;
+        }
+    }
+}
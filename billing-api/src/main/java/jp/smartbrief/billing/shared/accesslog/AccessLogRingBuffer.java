@@ -0,0 +1,78 @@
+package jp.smartbrief.billing.shared.accesslog;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * アクセスログのリングバッファ (ロックなし、書き込み側は複数・読み出し側は1スレッド)
+ *
+ * 各スロットに「次に書ける / 読める位置」を表すシーケンス番号を持たせ、
+ * 書き込み側は書き込み位置を CAS で1つ進めるだけで、ロックも待ちもしません。
+ * 満杯なら書かずに false を返します（リクエストを待たせるより、ログを落とす方を選ぶ）。
+ */
+final class AccessLogRingBuffer {
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<AccessLogEntry> entries;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    // 読み出し側 (drainer) のスレッドだけが触る
+    private long head;
+
+    AccessLogRingBuffer(int requestedCapacity) {
+        this.capacity = Integer.highestOneBit(Math.max(requestedCapacity - 1, 1)) << 1; // 2の累乗に切り上げ
+        this.mask = capacity - 1;
+        this.entries = new AtomicReferenceArray<>(capacity);
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * 1件書き込む（どのスレッドからでも呼べる）
+     * @return 満杯で書けなかったら false
+     */
+    boolean offer(AccessLogEntry entry) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long diff = sequences.get(index) - position;
+            if (diff == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    entries.lazySet(index, entry);
+                    sequences.lazySet(index, position + 1); // 読み出し側に公開する
+                    return true;
+                }
+                position = tail.get();
+            } else if (diff < 0) {
+                return false; // 1周前の行がまだ読まれていない = 満杯
+            } else {
+                position = tail.get(); // 他のスレッドに先を越された
+            }
+        }
+    }
+
+    /**
+     * 1件取り出す（drainer のスレッドからだけ呼ぶ）
+     * @return 空なら null
+     */
+    AccessLogEntry poll() {
+        int index = (int) (head & mask);
+        if (sequences.get(index) != head + 1) {
+            return null;
+        }
+        AccessLogEntry entry = entries.get(index);
+        entries.lazySet(index, null);
+        sequences.lazySet(index, head + capacity); // 次の周の書き込み側に返す
+        head++;
+        return entry;
+    }
+
+    // 件数の目安 (メトリクス用。別スレッドから読むため厳密ではない)
+    int size() {
+        return (int) Math.max(0, Math.min(tail.get() - head, capacity));
+    }
+}
@@ -0,0 +1,158 @@
+package jp.smartbrief.billing.shared.accesslog;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * アクセスログの書き出し
+ *
+ * リクエストの処理中はリングバッファに積むだけにして、整形と出力は専用スレッド (access-log) 1本で行います。
+ * 1. 1行ずつ JSON にして、ロガー "access" に INFO で出す（出力先は logback 側で振り分ける）
+ * 2. バッファが空の間は idle-wait だけ休む（イベントループのスレッドは一切待たせない）
+ * 3. バッファが満杯のときは捨てて件数を数える
+ * 4. シャットダウン時はバッファに残った分を書き切る
+ * メトリクス: access_log.written / dropped、access_log.buffer.size
+ */
+@Slf4j
+@Component
+public class AccessLogWriter {
+
+    private static final Logger ACCESS_LOG = LoggerFactory.getLogger("access");
+
+    private final AccessLogRingBuffer buffer;
+    private final long idleWaitNanos;
+    private final Thread drainer;
+    private volatile boolean running = true;
+
+    private final Counter written;
+    private final Counter dropped;
+
+    public AccessLogWriter(
+            MeterRegistry meterRegistry,
+            @Value("${access-log.buffer-size:8192}") int bufferSize,
+            @Value("${access-log.idle-wait:PT0.005S}") Duration idleWait) {
+        this.buffer = new AccessLogRingBuffer(bufferSize);
+        this.idleWaitNanos = idleWait.toNanos();
+
+        Gauge.builder("access_log.buffer.size", buffer, AccessLogRingBuffer::size).register(meterRegistry);
+        this.written = meterRegistry.counter("access_log.written");
+        this.dropped = meterRegistry.counter("access_log.dropped");
+
+        this.drainer = new Thread(this::drainLoop, "access-log");
+        this.drainer.setDaemon(true);
+        this.drainer.start();
+    }
+
+    /**
+     * 1件積む（リクエストの完了時にイベントループから呼ばれる。待たない）
+     */
+    void submit(AccessLogEntry entry) {
+        if (!buffer.offer(entry)) {
+            dropped.increment();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        LockSupport.unpark(drainer);
+        try {
+            drainer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // --- Private Methods ---
+
+    private void drainLoop() {
+        StringBuilder line = new StringBuilder(256);
+        while (running) {
+            if (drain(line) == 0) {
+                LockSupport.parkNanos(idleWaitNanos);
+            }
+        }
+        drain(line); // 停止前に残りを書き切る
+    }
+
+    private int drain(StringBuilder line) {
+        int count = 0;
+        AccessLogEntry entry;
+        while ((entry = buffer.poll()) != null) {
+            try {
+                line.setLength(0);
+                ACCESS_LOG.info(format(entry, line).toString());
+                count++;
+            } catch (RuntimeException e) {
+                log.warn("Access log write failed: {}", e.getMessage());
+            }
+        }
+        if (count > 0) {
+            written.increment(count);
+        }
+        return count;
+    }
+
+    /**
+     * {"ts":"...","method":"GET","path":"/api/v1/books","status":200,"duration_ms":1.234,"bytes":512,"ip":"...","sample_rate":1.0}
+     */
+    static StringBuilder format(AccessLogEntry entry, StringBuilder out) {
+        out.append("{\"ts\":\"").append(Instant.ofEpochMilli(entry.timestampMillis())).append('"');
+        out.append(",\"method\":");
+        appendString(out, entry.method());
+        out.append(",\"path\":");
+        appendString(out, entry.path());
+        out.append(",\"status\":").append(entry.status());
+        long micros = TimeUnit.NANOSECONDS.toMicros(entry.durationNanos());
+        out.append(",\"duration_ms\":").append(micros / 1000).append('.');
+        long fraction = micros % 1000;
+        if (fraction < 100) {
+            out.append(fraction < 10 ? "00" : "0");
+        }
+        out.append(fraction);
+        out.append(",\"bytes\":").append(entry.bytes());
+        out.append(",\"ip\":");
+        appendString(out, entry.remoteAddress());
+        out.append(",\"sample_rate\":").append(entry.sampleRate());
+        return out.append('}');
+    }
+
+    private static void appendString(StringBuilder out, String value) {
+        if (value == null) {
+            out.append("null");
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> out.append("\\\"");
+                case '\\' -> out.append("\\\\");
+                case '\n' -> out.append("\\n");
+                case '\r' -> out.append("\\r");
+                case '\t' -> out.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+                }
+            }
+        }
+        out.append('"');
+    }
+}
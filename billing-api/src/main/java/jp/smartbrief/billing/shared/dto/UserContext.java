@@ -1,6 +1,7 @@
 package jp.smartbrief.billing.shared.dto;
 
 import jp.smartbrief.billing.identity.domain.User;
+import jp.smartbrief.billing.payment.entitlement.EntitlementService;
 
 /**
  * ユーザーコンテキスト
@@ -15,12 +16,12 @@ public record UserContext(Long userId, String username, boolean isPremium, User
     }
 
     // ★追加: Spring SecurityのUserから変換する便利メソッド
-    public static UserContext from(User user) {
+    public static UserContext from(User user, EntitlementService entitlements) {
         if (user == null) {
             return guest();
         }
-        // Userエンティティの getPremium() ロジックをそのまま活用
-        return new UserContext(user.getId(), user.getUsername(), user.getPremium(), user);
+        // 課金状態は EntitlementService のマップを引くだけ（期限切れはタイミングホイールで反映済み）
+        return new UserContext(user.getId(), user.getUsername(), entitlements.isPremium(user.getId()), user);
     }
 
     // ログインしているかどうかの判定
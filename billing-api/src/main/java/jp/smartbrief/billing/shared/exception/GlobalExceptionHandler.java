@@ -12,6 +12,7 @@ import org.springframework.core.annotation.Order;
 import org.springframework.http.MediaType;
 import org.springframework.http.codec.ServerCodecConfigurer;
 import org.springframework.stereotype.Component;
+import org.springframework.web.ErrorResponse;
 import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.server.*;
 
@@ -57,7 +58,14 @@ public class GlobalExceptionHandler extends AbstractErrorWebExceptionHandler {
             "path", request.path()
         );
 
+        // 例外が持つヘッダー (416 の Content-Range など) はそのまま返す
+        Throwable exception = getError(request);
         return ServerResponse.status(status)
+                .headers(headers -> {
+                    if (exception instanceof ErrorResponse errorResponse) {
+                        headers.addAll(errorResponse.getHeaders());
+                    }
+                })
                 // ★修正: 定数や生成したMapであっても、厳格な環境ではNullチェックを求められるためラップする
                 .contentType(Objects.requireNonNull(MediaType.APPLICATION_JSON))
                 .body(BodyInserters.fromValue(Objects.requireNonNull(body)));
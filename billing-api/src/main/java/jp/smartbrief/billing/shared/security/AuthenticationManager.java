@@ -1,11 +1,12 @@
 package jp.smartbrief.billing.shared.security;
 
+import java.util.Optional;
+
 import org.springframework.security.authentication.ReactiveAuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Component;
 
-import jp.smartbrief.billing.identity.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import reactor.core.publisher.Mono;
@@ -14,7 +15,7 @@ import reactor.core.publisher.Mono;
  * リアクティブ認証マネージャー
  * * 責務:
  * 1. JWTトークンの検証 (形式チェック・期限チェック)
- * 2. DBからのユーザー情報ロード (存在チェック・権限ロード)
+ * 2. ユーザー情報ロード (存在チェック・権限ロード。PrincipalCache 経由で DB を引く)
  * 3. Spring Security用 認証オブジェクトの生成
  */
 @Component
@@ -23,29 +24,24 @@ import reactor.core.publisher.Mono;
 public class AuthenticationManager implements ReactiveAuthenticationManager {
 
     private final JwtUtil jwtUtil;
-    private final UserRepository userRepository;
+    private final PrincipalCache principalCache;
 
     @Override
     public Mono<Authentication> authenticate(Authentication authentication) {
         String authToken = authentication.getCredentials().toString();
-        String username;
 
         // --- Phase 1: トークンの解析と検証 (Fail-Fast) ---
-        try {
-            username = jwtUtil.extractUsername(authToken);
-            
-            // ユーザー名が取れない、またはトークンが無効な場合は即座に終了
-            if (username == null || !jwtUtil.validateToken(authToken, username)) {
-                log.warn("Authentication failed: Token invalid or expired.");
-                return Mono.empty();
-            }
-        } catch (Exception e) {
-            log.warn("Authentication failed: Invalid token format. Error: {}", e.getMessage());
+        // 署名・期限・ユーザー名を1回の解析で確認する（検証済みトークンはキャッシュから返る）
+        Optional<VerifiedToken> verified = jwtUtil.verify(authToken);
+        if (verified.isEmpty()) {
+            log.warn("Authentication failed: Token invalid or expired.");
             return Mono.empty();
         }
+        String username = verified.get().username();
 
         // --- Phase 2: DB参照と認証オブジェクト生成 (Happy Path) ---
-        return userRepository.findByUsername(username)
+        // ユーザーは短時間キャッシュする（更新時は各更新箇所で無効化される）
+        return principalCache.get(username)
             .map(user -> {
                 log.debug("User authenticated successfully: {}", username);
                 
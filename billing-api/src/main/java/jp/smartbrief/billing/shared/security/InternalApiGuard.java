@@ -0,0 +1,37 @@
+package jp.smartbrief.billing.shared.security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * 内部API (n8n などのバックエンド連携専用) の認証
+ *
+ * ユーザーの JWT ではなく、共有トークン (X-Internal-Token ヘッダー) で呼び出し元を確認します。
+ * トークンが未設定の環境では内部APIそのものを無効にします。
+ */
+@Component
+public class InternalApiGuard {
+
+    public static final String HEADER = "X-Internal-Token";
+
+    @Value("${internal.api-token:}")
+    private String apiToken;
+
+    /**
+     * 提示されたトークンを検証する（一致しなければ例外）
+     */
+    public void verify(String presented) {
+        if (apiToken == null || apiToken.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "内部APIは無効です");
+        }
+        if (presented == null || !MessageDigest.isEqual(
+                apiToken.getBytes(StandardCharsets.UTF_8), presented.getBytes(StandardCharsets.UTF_8))) {
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "内部APIトークンが不正です");
+        }
+    }
+}
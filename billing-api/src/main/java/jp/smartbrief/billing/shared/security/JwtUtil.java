@@ -1,9 +1,15 @@
 package jp.smartbrief.billing.shared.security;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Base64;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
 import java.util.function.Function;
 
 import javax.crypto.SecretKey;
@@ -11,32 +17,89 @@ import javax.crypto.SecretKey;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 
 /**
  * JWT ユーティリティクラス
  * 
  * JWT トークンの生成、検証、ユーザー情報抽出を行うユーティリティです。
  * トークンの署名作成、有効期限の確認、ペイロードからのクレーム抽出などを提供します。
+ * 
+ * 署名鍵とパーサーは起動時に1度だけ作ります。
+ * リクエストごとの検証は verify() でトークンを1回だけ解析し、検証済みトークンは
+ * トークンのハッシュをキーに有効期限までキャッシュします (メトリクス: cache.* cache=jwt.verified)。
  */
 @Component
 public class JwtUtil {
 
-    // application.yml で設定する秘密鍵（後述）
-	@Value("${JWT_SECRET_KEY}")
-    private String secret;
-
-    // トークンの有効期限（例: 24時間）
-	@Value("${JWT_EXPIRATION}")
-    private long expirationTime;
+    private final SecretKey signingKey;
+    private final JwtParser parser;
+    private final long expirationTime;
+
+    // 検証済みトークン (SHA-256 ハッシュ → クレーム)。エントリはトークンの exp で消える
+    private final Cache<String, VerifiedToken> verified;
+
+    public JwtUtil(
+            @Value("${JWT_SECRET_KEY}") String secret,
+            @Value("${JWT_EXPIRATION}") long expirationTime,
+            @Value("${jwt.verified-cache.max-size:10000}") long cacheMaxSize,
+            MeterRegistry meterRegistry) {
+        // ★修正点: 秘密鍵を Base64 デコードして鍵を生成する（起動時に1回だけ）
+        this.signingKey = Keys.hmacShaKeyFor(Base64.getDecoder().decode(secret));
+        this.parser = Jwts.parserBuilder().setSigningKey(signingKey).build();
+        this.expirationTime = expirationTime;
+        this.verified = Caffeine.newBuilder()
+            .maximumSize(cacheMaxSize)
+            .expireAfter(new UntilTokenExpiry())
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, verified, "jwt.verified");
+    }
 
-	private SecretKey getSignInKey() {
-        // ★修正点: 秘密鍵を Base64 デコードして鍵を生成する
-        byte[] keyBytes = Base64.getDecoder().decode(secret); 
-        return Keys.hmacShaKeyFor(keyBytes); 
+    /**
+     * トークンを検証する（署名・有効期限）
+     * 同じトークンの2回目以降は、期限内であれば解析せずキャッシュから返す
+     * @return 不正・期限切れなら empty
+     */
+    public Optional<VerifiedToken> verify(String token) {
+        if (token == null || token.isBlank()) {
+            return Optional.empty();
+        }
+        Instant now = Instant.now();
+        String key = hash(token);
+        VerifiedToken cached = verified.getIfPresent(key);
+        if (cached != null && !cached.isExpired(now)) {
+            return Optional.of(cached);
+        }
+        VerifiedToken parsed;
+        try {
+            Claims claims = extractAllClaims(token); // 期限切れ・署名不正はここで例外になる
+            parsed = new VerifiedToken(
+                claims.getSubject(),
+                toInstant(claims.getIssuedAt()),
+                toInstant(claims.getExpiration()));
+        } catch (JwtException | IllegalArgumentException e) {
+            return Optional.empty();
+        }
+        if (parsed.username() == null) {
+            return Optional.empty();
+        }
+        // 期限のないトークンはキャッシュしない（いつまでも残らないように）
+        if (parsed.expiresAt() != null) {
+            verified.put(key, parsed);
+        }
+        return Optional.of(parsed);
     }
 
     // 1. トークンからユーザー名を取得
@@ -55,16 +118,7 @@ public class JwtUtil {
     }
 
     private Claims extractAllClaims(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(getSignInKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
-    }
-
-    private Boolean isTokenExpired(String token) {
-        // トークンから取得した期限が現在時刻より前か確認
-        return extractExpiration(token).before(new Date());
+        return parser.parseClaimsJws(token).getBody();
     }
 
     // 3. トークンを生成する（ログイン成功時に呼ぶ）
@@ -79,29 +133,57 @@ public class JwtUtil {
                 .setSubject(subject)
                 .setIssuedAt(new Date(System.currentTimeMillis()))
                 .setExpiration(new Date(System.currentTimeMillis() + expirationTime)) 
-                .signWith(getSignInKey(), SignatureAlgorithm.HS256)
+                .signWith(signingKey, SignatureAlgorithm.HS256)
                 .compact();
     }
 
     // 4. トークンの検証（リクエストが来るたびに呼ぶ - ユーザー名チェックも行う）
     public Boolean validateToken(String token, String username) {
-        final String extractedUsername = extractUsername(token);
-        return (extractedUsername.equals(username) && !isTokenExpired(token));
+        return verify(token).map(t -> t.username().equals(username)).orElse(false);
     }
     
     // ★★★ 追加するメソッド ★★★
     // 5. トークンの署名と有効期限のみを検証するメソッド (SecurityConfigで使用)
     public Boolean validateToken(String token) {
+        // 署名検証と期限切れチェックを行う（署名エラーや期限切れエラーの場合は false）
+        return verify(token).isPresent();
+    }
+
+    // --- Private Methods ---
+
+    private static Instant toInstant(Date date) {
+        return date != null ? date.toInstant() : null;
+    }
+
+    /**
+     * キャッシュのキー（トークンそのものをメモリに残さないようハッシュにする）
+     */
+    private static String hash(String token) {
         try {
-            // 署名検証と期限切れチェックを行う
-            Jwts.parserBuilder()
-                .setSigningKey(getSignInKey())
-                .build()
-                .parseClaimsJws(token);
-            return true;
-        } catch (Exception e) {
-            // 署名エラーや期限切れエラーが発生した場合は false
-            return false;
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * キャッシュのエントリをトークンの有効期限で消す
+     */
+    private static final class UntilTokenExpiry implements Expiry<String, VerifiedToken> {
+        @Override
+        public long expireAfterCreate(String key, VerifiedToken token, long currentTime) {
+            return Math.max(Duration.between(Instant.now(), token.expiresAt()).toNanos(), 0);
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, VerifiedToken token, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, token, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, VerifiedToken token, long currentTime, long currentDuration) {
+            return currentDuration;
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,95 @@
+package jp.smartbrief.billing.shared.security;
+
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jp.smartbrief.billing.identity.domain.User;
+import jp.smartbrief.billing.identity.repository.UserRepository;
+import jp.smartbrief.billing.payment.entitlement.EntitlementService;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+/**
+ * 認証済みユーザー (Principal) キャッシュ
+ *
+ * 認証のたびに users テーブルを引かないよう、ユーザー名 → User を短時間 (ttl) 保持します。
+ * プラン変更・パスワード変更・LINE 連携などでユーザーを更新した箇所は invalidate() を呼び、
+ * 次のリクエストで DB から読み直させます（他インスタンスの分は ttl で追いつく）。
+ * 呼び出し側がエンティティを書き換えてもキャッシュに影響しないよう、返すのはコピーです。
+ * メトリクス: cache.* (cache=principals)、principal.cache.age (返したエントリの読み込みからの経過時間)、
+ * principal.cache.invalidations
+ */
+@Slf4j
+@Component
+public class PrincipalCache {
+
+    private final UserRepository userRepository;
+    private final EntitlementService entitlementService;
+    private final AsyncCache<String, Entry> cache;
+    private final Timer age;
+    private final Counter invalidations;
+
+    private record Entry(User user, long loadedAtNanos) {
+    }
+
+    public PrincipalCache(
+            UserRepository userRepository,
+            EntitlementService entitlementService,
+            MeterRegistry meterRegistry,
+            @Value("${jwt.principal-cache.ttl:PT30S}") Duration ttl,
+            @Value("${jwt.principal-cache.max-size:10000}") long maxSize) {
+        this.userRepository = userRepository;
+        this.entitlementService = entitlementService;
+        this.cache = Caffeine.newBuilder()
+            .maximumSize(maxSize)
+            .expireAfterWrite(ttl)
+            .recordStats()
+            .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache.synchronous(), "principals");
+        this.age = meterRegistry.timer("principal.cache.age");
+        this.invalidations = meterRegistry.counter("principal.cache.invalidations");
+    }
+
+    /**
+     * ユーザーを取得する（キャッシュになければ DB から読み込む）
+     * @return 存在しないユーザーなら empty（キャッシュしない）
+     */
+    public Mono<User> get(String username) {
+        return Mono.fromFuture(() -> cache.get(username, (key, executor) ->
+                userRepository.findByUsername(key)
+                    // 読み直したプラン・期限を利用資格に反映する（他のインスタンスで更新された分もここで追いつく）
+                    .doOnNext(entitlementService::observe)
+                    .map(user -> new Entry(user, System.nanoTime()))
+                    .toFuture()))
+            .map(entry -> {
+                age.record(Duration.ofNanos(System.nanoTime() - entry.loadedAtNanos()));
+                return entry.user().toBuilder().build();
+            });
+    }
+
+    /**
+     * ユーザーを更新したら呼ぶ（次回の認証で DB から読み直す）
+     */
+    public void invalidate(String username) {
+        if (username == null) {
+            return;
+        }
+        cache.synchronous().invalidate(username);
+        invalidations.increment();
+        log.debug("Principal cache invalidated: {}", username);
+    }
+
+    public void invalidateAll() {
+        cache.synchronous().invalidateAll();
+        invalidations.increment();
+    }
+}
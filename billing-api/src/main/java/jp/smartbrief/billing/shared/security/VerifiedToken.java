@@ -0,0 +1,19 @@
+package jp.smartbrief.billing.shared.security;
+
+import java.time.Instant;
+
+/**
+ * 検証済みの JWT
+ *
+ * 署名と有効期限を確認したトークンのクレームです。JwtUtil#verify が返します。
+ *
+ * @param username トークンの subject
+ * @param issuedAt 発行時刻 (なければ null)
+ * @param expiresAt 有効期限 (なければ null)
+ */
+public record VerifiedToken(String username, Instant issuedAt, Instant expiresAt) {
+
+    public boolean isExpired(Instant now) {
+        return expiresAt != null && !expiresAt.isAfter(now);
+    }
+}
@@ -0,0 +1,112 @@
+package jp.smartbrief.billing.catalog.history;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * DedupeWindow のテスト
+ * ウィンドウ内の重複判定・期限の境界・ホイールでの掃除と、記録に失敗したときの印の取り消しを確かめます。
+ */
+class DedupeWindowTest {
+
+    private static final int WINDOW = 60;
+    private static final long NOW = 1_700_000_000L;
+
+    @Test
+    void treatsViewsWithinTheWindowAsDuplicates() {
+        DedupeWindow window = new DedupeWindow(WINDOW, NOW);
+
+        assertThat(window.tryMark(1L, 10, NOW)).isTrue();
+        assertThat(window.tryMark(1L, 10, NOW + 1)).isFalse();
+        assertThat(window.tryMark(1L, 10, NOW + WINDOW - 1)).isFalse();
+        // 別の本・別のユーザーは別の閲覧
+        assertThat(window.tryMark(1L, 11, NOW + 1)).isTrue();
+        assertThat(window.tryMark(2L, 10, NOW + 1)).isTrue();
+
+        assertThat(window.contains(1L, 10, NOW + WINDOW - 1)).isTrue();
+        assertThat(window.contains(3L, 10, NOW)).isFalse();
+    }
+
+    @Test
+    void expiresExactlyAtTheEndOfTheWindow() {
+        DedupeWindow window = new DedupeWindow(WINDOW, NOW);
+        window.tryMark(1L, 10, NOW);
+
+        assertThat(window.contains(1L, 10, NOW + WINDOW)).isFalse();
+        // 掃除される前でも、期限を過ぎていれば登録し直せる
+        assertThat(window.tryMark(1L, 10, NOW + WINDOW)).isTrue();
+        assertThat(window.contains(1L, 10, NOW + 2 * WINDOW - 1)).isTrue();
+    }
+
+    @Test
+    void sweepsExpiredKeysAsTheWheelAdvances() {
+        DedupeWindow window = new DedupeWindow(WINDOW, NOW);
+        for (int i = 0; i < 100; i++) {
+            window.tryMark(i, 10, NOW + i % 10);
+        }
+        assertThat(window.size()).isEqualTo(100);
+
+        for (long second = NOW + 1; second < NOW + WINDOW; second++) {
+            window.advance(second);
+        }
+        assertThat(window.size()).isEqualTo(100);
+
+        // NOW + WINDOW + 4 の時点で、NOW..NOW+4 に登録した半分が期限切れ
+        for (long second = NOW + WINDOW; second <= NOW + WINDOW + 4; second++) {
+            window.advance(second);
+        }
+        assertThat(window.size()).isEqualTo(50);
+
+        window.advance(NOW + WINDOW + 9);
+        assertThat(window.size()).isZero();
+    }
+
+    @Test
+    void catchesUpWhenAdvancedAfterALongPause() {
+        DedupeWindow window = new DedupeWindow(WINDOW, NOW);
+        window.tryMark(1L, 10, NOW);
+        window.tryMark(2L, 10, NOW + 30);
+
+        window.advance(NOW + 10 * WINDOW);
+
+        assertThat(window.size()).isZero();
+        assertThat(window.tryMark(1L, 10, NOW + 10 * WINDOW)).isTrue();
+    }
+
+    @Test
+    void keepsAKeyThatWasMarkedAgainAfterExpiring() {
+        DedupeWindow window = new DedupeWindow(WINDOW, NOW);
+        window.tryMark(1L, 10, NOW);
+        // 期限切れの後、掃除される前に登録し直す (期限は NOW + 2 * WINDOW + 5)
+        window.tryMark(1L, 10, NOW + WINDOW + 5);
+
+        for (long second = NOW + 1; second <= NOW + 2 * WINDOW + 4; second++) {
+            window.advance(second);
+        }
+        assertThat(window.contains(1L, 10, NOW + 2 * WINDOW + 4)).isTrue();
+        assertThat(window.size()).isEqualTo(1);
+
+        window.advance(NOW + 2 * WINDOW + 5);
+        assertThat(window.size()).isZero();
+    }
+
+    @Test
+    void unmarkReleasesOnlyTheMarkItMade() {
+        DedupeWindow window = new DedupeWindow(WINDOW, NOW);
+        window.tryMark(1L, 10, NOW);
+
+        window.unmark(1L, 10, NOW);
+        assertThat(window.contains(1L, 10, NOW)).isFalse();
+        assertThat(window.tryMark(1L, 10, NOW + 1)).isTrue();
+
+        // 付け直された印 (NOW + 1) は、古い印 (NOW) の取り消しでは消えない
+        window.unmark(1L, 10, NOW);
+        assertThat(window.contains(1L, 10, NOW + 1)).isTrue();
+
+        // ホイールに残ったキーは掃除で外れ、例外にならない
+        window.unmark(1L, 10, NOW + 1);
+        window.advance(NOW + WINDOW + 1);
+        assertThat(window.size()).isZero();
+    }
+}
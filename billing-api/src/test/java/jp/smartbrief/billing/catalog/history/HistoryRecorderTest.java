@@ -0,0 +1,206 @@
+package jp.smartbrief.billing.catalog.history;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.r2dbc.core.FetchSpec;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jp.smartbrief.billing.catalog.domain.UserBookHistory;
+import jp.smartbrief.billing.catalog.repository.UserBookHistoryRepository;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+/**
+ * HistoryRecorder のテスト
+ * DatabaseClient (まとめての INSERT) と UserBookHistoryRepository (1行ずつの保存) をモックにして、
+ * 重複判定・件数での flush・1行ずつの書き直しとキューへの戻し・キュー満杯時の直接書き込み・シャットダウン時の書き切りを確かめます。
+ */
+class HistoryRecorderTest {
+
+    private final DatabaseClient databaseClient = mock(DatabaseClient.class);
+    private final DatabaseClient.GenericExecuteSpec spec = mock(DatabaseClient.GenericExecuteSpec.class, RETURNS_SELF);
+    @SuppressWarnings("unchecked")
+    private final FetchSpec<Map<String, Object>> fetchSpec = mock(FetchSpec.class);
+    private final UserBookHistoryRepository historyRepository = mock(UserBookHistoryRepository.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    // 発行された INSERT 文
+    private final List<String> statements = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void stubDatabase() {
+        when(databaseClient.sql(anyString())).thenAnswer(invocation -> {
+            statements.add(invocation.getArgument(0));
+            return spec;
+        });
+        when(spec.fetch()).thenReturn(fetchSpec);
+        when(fetchSpec.rowsUpdated()).thenReturn(Mono.just(1L));
+        when(historyRepository.save(any(UserBookHistory.class)))
+            .thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+    }
+
+    @Test
+    void skipsDuplicateViewsWithinTheWindow() {
+        HistoryRecorder recorder = recorder(100, 100, Duration.ofSeconds(1));
+
+        StepVerifier.create(recorder.record(1L, 10, "title", "author")).expectNext(true).verifyComplete();
+        StepVerifier.create(recorder.record(1L, 10, "title", "author")).expectNext(false).verifyComplete();
+        StepVerifier.create(recorder.record(1L, 11, "title", "author")).expectNext(true).verifyComplete();
+
+        assertThat(recorder.viewedRecently(1L, 10)).isTrue();
+        assertThat(recorder.viewedRecently(2L, 10)).isFalse();
+        assertThat(count("deduplicated")).isEqualTo(1);
+        assertThat(count("enqueued")).isEqualTo(2);
+        assertThat(queueSize()).isEqualTo(2);
+        assertThat(statements).isEmpty();
+    }
+
+    @Test
+    void flushesOneMultiRowInsertWhenTheBatchIsFull() {
+        HistoryRecorder recorder = recorder(3, 100, Duration.ofSeconds(1));
+
+        recorder.record(1L, 10, "t10", null).block();
+        recorder.record(1L, 11, "t11", "a11").block();
+        assertThat(statements).isEmpty();
+        recorder.record(2L, 12, "t12", "a12").block();
+
+        assertThat(statements).hasSize(1);
+        assertThat(statements.get(0))
+            .startsWith("INSERT INTO user_book_history (user_id, book_id, book_title, author_name, viewed_at) VALUES ")
+            .contains("(:u0, :b0, :t0, :a0, :v0), (:u1, :b1, :t1, :a1, :v1), (:u2, :b2, :t2, :a2, :v2)");
+        verify(spec).bind("u2", 2L);
+        verify(spec).bind("b2", 12);
+        verify(spec).bindNull("a0", String.class);
+        verify(spec).bind("a1", "a11");
+        assertThat(count("flushed")).isEqualTo(3);
+        assertThat(queueSize()).isZero();
+        verify(historyRepository, never()).save(any(UserBookHistory.class));
+    }
+
+    @Test
+    void savesRowsOneByOneAfterTheBatchFailsAndRequeuesTransientFailures() {
+        HistoryRecorder recorder = recorder(100, 100, Duration.ofSeconds(1));
+        when(fetchSpec.rowsUpdated()).thenReturn(Mono.error(new IllegalStateException("connection reset")), Mono.just(1L));
+        AtomicInteger transientFailures = new AtomicInteger(1);
+        when(historyRepository.save(any(UserBookHistory.class))).thenAnswer(invocation -> {
+            UserBookHistory history = invocation.getArgument(0);
+            if (history.getBookId() == 11 && transientFailures.getAndDecrement() > 0) {
+                return Mono.error(new IllegalStateException("timeout"));
+            }
+            if (history.getBookId() == 12) {
+                return Mono.error(new DataIntegrityViolationException("duplicate"));
+            }
+            return Mono.just(history);
+        });
+        recorder.record(1L, 10, "t", "a").block();
+        recorder.record(1L, 11, "t", "a").block();
+        recorder.record(1L, 12, "t", "a").block();
+
+        recorder.flush().block(Duration.ofSeconds(5));
+
+        // 10 は書けた・11 は一時的な失敗でキューに戻った・12 は制約違反で捨てた
+        assertThat(count("flushed")).isEqualTo(1);
+        assertThat(count("requeued")).isEqualTo(1);
+        assertThat(count("failed")).isEqualTo(1);
+        assertThat(queueSize()).isEqualTo(1);
+
+        // 戻した行は次の flush でまとめての INSERT に乗る
+        recorder.flush().block(Duration.ofSeconds(5));
+
+        assertThat(statements).hasSize(2);
+        assertThat(statements.get(1)).contains("(:u0, :b0, :t0, :a0, :v0)").doesNotContain(":u1");
+        assertThat(count("flushed")).isEqualTo(2);
+        assertThat(queueSize()).isZero();
+    }
+
+    @Test
+    void releasesTheDedupeMarkWhenTheOverflowWriteFails() {
+        HistoryRecorder recorder = recorder(100, 1, Duration.ofSeconds(1));
+        AtomicInteger saves = new AtomicInteger();
+        when(historyRepository.save(any(UserBookHistory.class))).thenAnswer(invocation -> saves.getAndIncrement() == 0
+            ? Mono.error(new IllegalStateException("connection reset"))
+            : Mono.just(invocation.getArgument(0)));
+        recorder.record(1L, 10, "t", "a").block();
+
+        // キューが満杯なので直接書くが、失敗する
+        StepVerifier.create(recorder.record(1L, 11, "t", "a")).expectError(IllegalStateException.class).verify();
+        assertThat(recorder.viewedRecently(1L, 11)).isFalse();
+        assertThat(recorder.viewedRecently(1L, 10)).isTrue();
+
+        // 印が残っていないので、もう一度開けば重複扱いされずに記録される
+        StepVerifier.create(recorder.record(1L, 11, "t", "a")).expectNext(true).verifyComplete();
+        assertThat(recorder.viewedRecently(1L, 11)).isTrue();
+        assertThat(count("overflow")).isEqualTo(2);
+        assertThat(count("deduplicated")).isZero();
+    }
+
+    @Test
+    void waitsForTheInFlightFlushAndDrainsTheQueueOnShutdown() {
+        HistoryRecorder recorder = recorder(100, 100, Duration.ofSeconds(5));
+        when(fetchSpec.rowsUpdated()).thenReturn(Mono.just(2L).delayElement(Duration.ofMillis(300)), Mono.just(1L));
+        recorder.record(1L, 10, "t", "a").block();
+        recorder.record(1L, 11, "t", "a").block();
+        recorder.flush().subscribe();
+        recorder.record(1L, 12, "t", "a").block();
+
+        recorder.flushOnShutdown();
+
+        assertThat(statements).hasSize(2);
+        assertThat(statements.get(1)).doesNotContain(":u1");
+        assertThat(count("flushed")).isEqualTo(3);
+        assertThat(queueSize()).isZero();
+
+        // 停止後は非同期の flush を始めない
+        recorder.record(1L, 13, "t", "a").block();
+        recorder.flush().block();
+        assertThat(statements).hasSize(2);
+    }
+
+    @Test
+    void givesUpAfterTheShutdownTimeoutWhenTheInFlightFlushHangs() {
+        HistoryRecorder recorder = recorder(100, 100, Duration.ofMillis(200));
+        when(fetchSpec.rowsUpdated()).thenReturn(Mono.never());
+        recorder.record(1L, 10, "t", "a").block();
+        recorder.flush().subscribe();
+        recorder.record(1L, 11, "t", "a").block();
+
+        long start = System.nanoTime();
+        recorder.flushOnShutdown();
+
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(2));
+        assertThat(statements).hasSize(1);
+        assertThat(count("flushed")).isZero();
+    }
+
+    // --- Helpers ---
+
+    private HistoryRecorder recorder(int batchSize, int queueCapacity, Duration shutdownTimeout) {
+        return new HistoryRecorder(databaseClient, historyRepository, meterRegistry,
+            batchSize, queueCapacity, 60, shutdownTimeout);
+    }
+
+    private double count(String name) {
+        return meterRegistry.counter("history.write_behind." + name).count();
+    }
+
+    private double queueSize() {
+        return meterRegistry.get("history.write_behind.queue.size").gauge().value();
+    }
+}
@@ -0,0 +1,143 @@
+package jp.smartbrief.billing.catalog.search;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.function.IntToLongFunction;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * CompletionTrie のテスト
+ * 前方一致の上位 K 件が人気順 (同点は作品ID昇順) に並ぶこと、辺の途中で終わるクエリ・
+ * 同じ作品の複数キー・空キーの扱いを確かめ、最後に素朴な全件走査の結果と突き合わせます。
+ */
+class CompletionTrieTest {
+
+    @Test
+    void returnsTheTopKByPopularityThenById() {
+        Map<Integer, Long> views = Map.of(1, 10L, 2, 50L, 3, 30L, 4, 50L, 5, 0L);
+        CompletionTrie trie = build(views::get, 3,
+            "なつめそうせき", 1,
+            "なつめそうせき", 2,
+            "なつのよのゆめ", 3,
+            "なつやすみ", 4,
+            "なつ", 5);
+
+        // 50 (2, 4 は同点で ID 昇順) → 30 → (10 は K=3 で落ちる)
+        assertThat(trie.complete("なつ")).containsExactly(2, 4, 3);
+        assertThat(trie.complete("なつめ")).containsExactly(2, 1);
+        assertThat(trie.complete("なつのよのゆめ")).containsExactly(3);
+    }
+
+    @Test
+    void completesPrefixesThatEndInsideAnEdge() {
+        CompletionTrie trie = build(id -> 0L, 10,
+            "natsume", 1,
+            "natsuyasumi", 2);
+
+        assertThat(trie.complete("n")).containsExactly(1, 2);
+        assertThat(trie.complete("natsum")).containsExactly(1);
+        assertThat(trie.complete("natsuy")).containsExactly(2);
+        // 辺の途中で食い違う・キーより長い・存在しない先頭文字
+        assertThat(trie.complete("natsux")).isEmpty();
+        assertThat(trie.complete("natsumex")).isEmpty();
+        assertThat(trie.complete("x")).isEmpty();
+    }
+
+    @Test
+    void includesKeysThatEndAtAnInnerNode() {
+        CompletionTrie trie = build(id -> id, 10,
+            "ab", 1,
+            "abc", 2,
+            "abd", 3);
+
+        assertThat(trie.complete("ab")).containsExactly(3, 2, 1);
+        assertThat(trie.complete("abc")).containsExactly(2);
+    }
+
+    @Test
+    void listsAWorkOnceEvenWhenSeveralOfItsKeysMatch() {
+        // タイトルと著者名の両方が同じ接頭辞で始まる作品
+        CompletionTrie trie = build(id -> id == 1 ? 100L : 1L, 10,
+            "みやざわけんじ", 1,
+            "みやざわけんじし", 1,
+            "みやもとゆりこ", 2);
+
+        assertThat(trie.complete("みや")).containsExactly(1, 2);
+    }
+
+    @Test
+    void ignoresEmptyKeys() {
+        assertThat(build(id -> 0L, 10, "", 1).complete("a")).isEmpty();
+        assertThat(CompletionTrie.EMPTY.complete("a")).isEmpty();
+
+        CompletionTrie trie = build(id -> 0L, 10, "", 1, "a", 2);
+        assertThat(trie.complete("a")).containsExactly(2);
+        // 空のクエリは全体の上位 K 件
+        assertThat(trie.complete("")).containsExactly(2);
+    }
+
+    @Test
+    void agreesWithAFullScanOnRandomKeys() {
+        Random random = new Random(11);
+        String alphabet = "あいうえお";
+        int k = 5;
+        List<String> keys = new ArrayList<>();
+        List<Integer> ids = new ArrayList<>();
+        long[] views = new long[200];
+        for (int id = 0; id < views.length; id++) {
+            views[id] = random.nextInt(20);
+            for (int n = 1 + random.nextInt(2); n > 0; n--) {
+                keys.add(randomText(random, alphabet, 1 + random.nextInt(6)));
+                ids.add(id);
+            }
+        }
+        IntToLongFunction popularity = id -> views[id];
+        CompletionTrie trie = CompletionTrie.build(keys, ids.stream().mapToInt(Integer::intValue).toArray(), popularity, k);
+
+        for (int q = 0; q < 300; q++) {
+            String prefix = randomText(random, alphabet, 1 + random.nextInt(4));
+            TreeSet<Integer> matched = new TreeSet<>();
+            for (int i = 0; i < keys.size(); i++) {
+                if (keys.get(i).startsWith(prefix)) {
+                    matched.add(ids.get(i));
+                }
+            }
+            int[] expected = matched.stream()
+                .sorted(Comparator.comparingLong((Integer id) -> views[id]).reversed().thenComparingInt(id -> id))
+                .limit(k)
+                .mapToInt(Integer::intValue)
+                .toArray();
+            assertThat(trie.complete(prefix)).as("prefix %s", prefix).containsExactly(expected);
+        }
+    }
+
+    // --- Helpers ---
+
+    /**
+     * @param keysAndIds キーと作品IDを交互に並べたもの
+     */
+    private static CompletionTrie build(IntToLongFunction popularity, int k, Object... keysAndIds) {
+        List<String> keys = new ArrayList<>();
+        int[] ids = new int[keysAndIds.length / 2];
+        for (int i = 0; i < keysAndIds.length; i += 2) {
+            keys.add((String) keysAndIds[i]);
+            ids[i / 2] = (Integer) keysAndIds[i + 1];
+        }
+        return CompletionTrie.build(keys, ids, popularity, k);
+    }
+
+    private static String randomText(Random random, String alphabet, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return sb.toString();
+    }
+}
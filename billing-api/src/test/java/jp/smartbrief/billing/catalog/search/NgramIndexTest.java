@@ -0,0 +1,140 @@
+package jp.smartbrief.billing.catalog.search;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * NgramIndex のテスト
+ * 1〜3 文字のクエリ (N-gram の積集合のみ) と 4 文字以上のクエリ (部分一致で検証) が、
+ * どちらも LIKE '%q%' と同じ結果になること、置き換え・削除で古い N-gram が残らないことを確かめます。
+ */
+class NgramIndexTest {
+
+    @Test
+    void findsOneTwoAndThreeCharacterQueries() {
+        NgramIndex index = new NgramIndex();
+        index.upsert(1, norm("吾輩は猫である"), norm("夏目漱石"));
+        index.upsert(2, norm("坊っちゃん"), norm("夏目漱石"));
+        index.upsert(3, norm("羅生門"), norm("芥川龍之介"));
+
+        assertThat(index.search(norm("猫"))).containsExactly(1);
+        assertThat(index.search(norm("夏目"))).containsExactly(1, 2);
+        assertThat(index.search(norm("漱石"))).containsExactly(1, 2);
+        assertThat(index.search(norm("羅生門"))).containsExactly(3);
+        assertThat(index.search(norm("犬"))).isEmpty();
+        assertThat(index.search("")).isEmpty();
+    }
+
+    @Test
+    void verifiesLongerQueriesBySubstringMatch() {
+        NgramIndex index = new NgramIndex();
+        // 2 は「あいう」「いうえ」の 3-gram をすべて持つが、「あいうえ」は含まない
+        index.upsert(1, norm("あいうえお"));
+        index.upsert(2, norm("あいう・いうえ"));
+        // 3 は N-gram がフィールドをまたいで揃うだけ
+        index.upsert(3, norm("あいう"), norm("いうえ"));
+
+        assertThat(index.search(norm("あいうえ"))).containsExactly(1);
+        assertThat(index.search(norm("いうえお"))).containsExactly(1);
+        assertThat(index.search(norm("あいう"))).containsExactly(1, 2, 3);
+    }
+
+    @Test
+    void matchesQueriesAcrossNotationVariants() {
+        NgramIndex index = new NgramIndex();
+        index.upsert(1, norm("セロ弾きのゴーシュ"), norm("宮沢 賢治"));
+        index.upsert(2, norm("ＡＢＣ殺人事件"), norm("Agatha Christie"));
+
+        assertThat(index.search(norm("ごーしゅ"))).containsExactly(1);
+        assertThat(index.search(norm("宮沢賢治"))).containsExactly(1);
+        assertThat(index.search(norm("abc"))).containsExactly(2);
+        assertThat(index.search(norm("AGATHA chris"))).containsExactly(2);
+    }
+
+    @Test
+    void replacesTheOldGramsOnUpsert() {
+        NgramIndex index = new NgramIndex();
+        index.upsert(1, norm("吾輩は猫である"));
+        index.upsert(2, norm("猫町"));
+
+        index.upsert(1, norm("草枕"));
+
+        assertThat(index.size()).isEqualTo(2);
+        assertThat(index.search(norm("猫"))).containsExactly(2);
+        assertThat(index.search(norm("吾輩"))).isEmpty();
+        assertThat(index.search(norm("吾輩は猫"))).isEmpty();
+        assertThat(index.search(norm("草枕"))).containsExactly(1);
+    }
+
+    @Test
+    void removesAndClearsDocuments() {
+        NgramIndex index = new NgramIndex();
+        index.upsert(1, norm("こころ"));
+        index.upsert(2, norm("こころ"));
+
+        index.remove(1);
+        index.remove(99);
+        assertThat(index.search(norm("こころ"))).containsExactly(2);
+        assertThat(index.size()).isEqualTo(1);
+
+        index.clear();
+        assertThat(index.size()).isZero();
+        assertThat(index.search(norm("こ"))).isEmpty();
+    }
+
+    @Test
+    void agreesWithSubstringMatchOnRandomText() {
+        Random random = new Random(7);
+        String alphabet = "あいうえおかきく";
+        NgramIndex index = new NgramIndex();
+        List<String[]> documents = new ArrayList<>();
+        for (int id = 0; id < 300; id++) {
+            String[] fields = {randomText(random, alphabet, 12), randomText(random, alphabet, 6)};
+            documents.add(fields);
+            index.upsert(id, fields);
+        }
+        // 半分を別の内容に置き換える
+        for (int id = 0; id < 300; id += 2) {
+            String[] fields = {randomText(random, alphabet, 12)};
+            documents.set(id, fields);
+            index.upsert(id, fields);
+        }
+
+        for (int q = 0; q < 500; q++) {
+            String query = randomText(random, alphabet, 1 + random.nextInt(6));
+            assertThat(index.search(query)).as("query %s", query).containsExactly(bruteForce(documents, query));
+        }
+    }
+
+    // --- Helpers ---
+
+    private static String norm(String text) {
+        return TextNormalizer.normalize(text);
+    }
+
+    private static String randomText(Random random, String alphabet, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return sb.toString();
+    }
+
+    private static int[] bruteForce(List<String[]> documents, String query) {
+        List<Integer> hits = new ArrayList<>();
+        for (int id = 0; id < documents.size(); id++) {
+            for (String field : documents.get(id)) {
+                if (field.contains(query)) {
+                    hits.add(id);
+                    break;
+                }
+            }
+        }
+        return hits.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
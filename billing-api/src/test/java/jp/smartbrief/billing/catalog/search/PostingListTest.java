@@ -0,0 +1,86 @@
+package jp.smartbrief.billing.catalog.search;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * PostingList のテスト
+ * 順不同の追加・重複・削除で昇順が保たれることと、積集合が TreeSet での計算と一致することを確かめます。
+ */
+class PostingListTest {
+
+    @Test
+    void keepsIdsSortedAndUnique() {
+        PostingList list = new PostingList();
+        for (int id : new int[] {5, 1, 9, 3, 5, 7, 1, 11}) {
+            list.add(id);
+        }
+
+        assertThat(list.toArray()).containsExactly(1, 3, 5, 7, 9, 11);
+        assertThat(list.size()).isEqualTo(6);
+    }
+
+    @Test
+    void removesIdsAndIgnoresUnknownOnes() {
+        PostingList list = new PostingList();
+        for (int id = 1; id <= 5; id++) {
+            list.add(id);
+        }
+
+        list.remove(1);
+        list.remove(3);
+        list.remove(5);
+        list.remove(42);
+
+        assertThat(list.toArray()).containsExactly(2, 4);
+        list.remove(2);
+        list.remove(4);
+        assertThat(list.isEmpty()).isTrue();
+        assertThat(list.toArray()).isEmpty();
+    }
+
+    @Test
+    void intersectsWithASortedArray() {
+        PostingList list = new PostingList();
+        for (int id : new int[] {2, 4, 6, 8, 10}) {
+            list.add(id);
+        }
+
+        assertThat(PostingList.intersect(new int[] {1, 2, 3, 8, 10, 12}, list)).containsExactly(2, 8, 10);
+        assertThat(PostingList.intersect(new int[] {1, 3, 5}, list)).isEmpty();
+        assertThat(PostingList.intersect(new int[0], list)).isEmpty();
+        assertThat(PostingList.intersect(new int[] {2}, new PostingList())).isEmpty();
+    }
+
+    @Test
+    void matchesASortedSetUnderRandomUpdates() {
+        Random random = new Random(42);
+        PostingList list = new PostingList();
+        TreeSet<Integer> expected = new TreeSet<>();
+        for (int i = 0; i < 5_000; i++) {
+            int id = random.nextInt(500);
+            if (random.nextInt(3) == 0) {
+                list.remove(id);
+                expected.remove(id);
+            } else {
+                list.add(id);
+                expected.add(id);
+            }
+        }
+
+        assertThat(list.toArray()).containsExactly(expected.stream().mapToInt(Integer::intValue).toArray());
+
+        TreeSet<Integer> other = new TreeSet<>();
+        for (int i = 0; i < 200; i++) {
+            other.add(random.nextInt(500));
+        }
+        TreeSet<Integer> both = new TreeSet<>(other);
+        both.retainAll(expected);
+        assertThat(PostingList.intersect(other.stream().mapToInt(Integer::intValue).toArray(), list))
+            .containsExactly(both.stream().mapToInt(Integer::intValue).toArray());
+    }
+}
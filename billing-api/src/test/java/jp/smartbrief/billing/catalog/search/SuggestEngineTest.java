@@ -0,0 +1,108 @@
+package jp.smartbrief.billing.catalog.search;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import jp.smartbrief.billing.catalog.domain.WorkSummary;
+import jp.smartbrief.billing.catalog.ranking.RankingEngine;
+import jp.smartbrief.billing.catalog.repository.UserBookHistoryRepository;
+
+/**
+ * SuggestEngine のテスト
+ * 人気 (RankingEngine の累計閲覧数) 順のサジェストと、差分更新の扱い
+ * (カード情報だけの変更はそのまま反映・タイトルが変わった作品は差分トライから人気順にマージ) を確かめます。
+ */
+class SuggestEngineTest {
+
+    private final RankingEngine rankingEngine = new RankingEngine(mock(UserBookHistoryRepository.class), 0);
+    private final SuggestEngine engine = new SuggestEngine(rankingEngine);
+
+    @Test
+    void isNotReadyUntilTheFirstFullReload() {
+        assertThat(engine.isReady()).isFalse();
+        assertThat(engine.suggest("こころ")).isEmpty();
+
+        engine.onFullReload(List.of(work(1, "こころ", "夏目漱石")));
+
+        assertThat(engine.isReady()).isTrue();
+        assertThat(ids(engine.suggest("ココロ"))).containsExactly(1);
+    }
+
+    @Test
+    void ordersByAllTimeViews() {
+        view(2, 3);
+        view(3, 1);
+        engine.onFullReload(List.of(
+            work(1, "吾輩は猫である", "夏目漱石"),
+            work(2, "坊っちゃん", "夏目漱石"),
+            work(3, "三四郎", "夏目漱石")));
+
+        assertThat(ids(engine.suggest("夏目"))).containsExactly(2, 3, 1);
+        assertThat(ids(engine.suggest("吾輩"))).containsExactly(1);
+    }
+
+    @Test
+    void appliesCardOnlyChangesWithoutMovingTheWork() {
+        engine.onFullReload(List.of(work(1, "こころ", "夏目漱石")));
+
+        WorkSummary updated = work(1, "こころ", "夏目漱石");
+        updated.setSummaryShort("新しい要約");
+        engine.onUpsert(List.of(updated));
+
+        assertThat(engine.suggest("こころ")).extracting(WorkSummary::getSummaryShort).containsExactly("新しい要約");
+    }
+
+    @Test
+    void mergesRenamedAndNewWorksByPopularity() {
+        view(1, 5);
+        view(2, 1);
+        view(3, 3);
+        engine.onFullReload(List.of(
+            work(1, "銀河鉄道の夜", "宮沢賢治"),
+            work(2, "注文の多い料理店", "宮沢賢治")));
+
+        // 1 のタイトル変更と、新しい作品 3 の追加
+        engine.onUpsert(List.of(work(1, "新・銀河鉄道", "宮沢賢治"), work(3, "銀河のほとり", "宮沢賢治")));
+
+        assertThat(ids(engine.suggest("銀河"))).containsExactly(3);
+        assertThat(ids(engine.suggest("新・銀河"))).containsExactly(1);
+        assertThat(ids(engine.suggest("宮沢"))).containsExactly(1, 3, 2);
+
+        // 定期の作り直しで差分を本体に取り込んでも結果は同じ
+        engine.refreshPopularity();
+        assertThat(ids(engine.suggest("銀河"))).containsExactly(3);
+        assertThat(ids(engine.suggest("宮沢"))).containsExactly(1, 3, 2);
+    }
+
+    @Test
+    void picksUpNewViewsOnThePeriodicRebuild() {
+        engine.onFullReload(List.of(work(1, "羅生門", "芥川龍之介"), work(2, "鼻", "芥川龍之介")));
+        assertThat(ids(engine.suggest("芥川"))).containsExactly(1, 2);
+
+        view(2, 2);
+        engine.refreshPopularity();
+
+        assertThat(ids(engine.suggest("芥川"))).containsExactly(2, 1);
+    }
+
+    // --- Helpers ---
+
+    private static WorkSummary work(int id, String title, String authorName) {
+        return WorkSummary.builder().id(id).title(title).authorName(authorName).build();
+    }
+
+    private void view(int bookId, int times) {
+        for (int i = 0; i < times; i++) {
+            rankingEngine.record(bookId, LocalDateTime.now());
+        }
+    }
+
+    private static List<Integer> ids(List<WorkSummary> works) {
+        return works.stream().map(WorkSummary::getId).toList();
+    }
+}
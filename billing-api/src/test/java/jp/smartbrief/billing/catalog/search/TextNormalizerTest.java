@@ -0,0 +1,48 @@
+package jp.smartbrief.billing.catalog.search;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * TextNormalizer のテスト
+ * 登録時と検索時で同じキーになるよう、全角/半角・カタカナ/ひらがな・大文字/小文字・空白の表記ゆれが吸収されることを確かめます。
+ */
+class TextNormalizerTest {
+
+    @Test
+    void returnsEmptyForNullAndEmpty() {
+        assertThat(TextNormalizer.normalize(null)).isEmpty();
+        assertThat(TextNormalizer.normalize("")).isEmpty();
+        assertThat(TextNormalizer.normalize(" \t\n　")).isEmpty();
+    }
+
+    @Test
+    void foldsWidthAndCaseWithNfkc() {
+        assertThat(TextNormalizer.normalize("ＡＢＣ１２３")).isEqualTo("abc123");
+        assertThat(TextNormalizer.normalize("Natsume SOSEKI")).isEqualTo("natsumesoseki");
+        // 半角カナは全角カナ (濁点は結合) を経てひらがなになる
+        assertThat(TextNormalizer.normalize("ｿｳｾｷ")).isEqualTo("そうせき");
+        assertThat(TextNormalizer.normalize("ｶﾞﾗｽ")).isEqualTo("がらす");
+    }
+
+    @Test
+    void foldsKatakanaIntoHiragana() {
+        assertThat(TextNormalizer.normalize("ワガハイハネコデアル")).isEqualTo("わがはいはねこである");
+        assertThat(TextNormalizer.normalize("ァヶ")).isEqualTo("ぁゖ");
+        // 範囲外のカタカナ (ヷ・長音符) と漢字はそのまま
+        assertThat(TextNormalizer.normalize("ヷー漢字")).isEqualTo("ヷー漢字");
+    }
+
+    @Test
+    void removesAllWhitespace() {
+        assertThat(TextNormalizer.normalize(" 吾輩は　猫\tで\nある ")).isEqualTo("吾輩は猫である");
+    }
+
+    @Test
+    void isIdempotent() {
+        String once = TextNormalizer.normalize("ｺﾞｰｼｭ　ＴＨＥ Cellist");
+        assertThat(TextNormalizer.normalize(once)).isEqualTo(once);
+        assertThat(once).isEqualTo("ごーしゅthecellist");
+    }
+}
@@ -0,0 +1,113 @@
+package jp.smartbrief.billing.catalog.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * BodyPager のテスト
+ * ページ境界の選び方 (改行 → 文末 → 文字数で切る。サロゲートペアは分割しない) と、
+ * 本文が変わらない限り分割結果をキャッシュから返すことを確かめます。
+ */
+class BodyPagerTest {
+
+    private static final int PAGE = 100;
+
+    @Test
+    void keepsShortTextOnOnePage() {
+        assertThat(BodyPager.paginate("", PAGE)).containsExactly(0, 0);
+        assertThat(BodyPager.paginate("a".repeat(PAGE), PAGE)).containsExactly(0, PAGE);
+        assertThat(BodyPager.paginate("a".repeat(PAGE + 1), PAGE)).containsExactly(0, PAGE, PAGE + 1);
+    }
+
+    @Test
+    void cutsAfterTheLastNewlineNearTheEndOfThePage() {
+        // 改行は 89 文字目 (位置 89)。ページ末尾から 1/4 (位置 75〜100) の範囲にある
+        String text = "a".repeat(89) + "\n" + "b".repeat(150);
+
+        assertThat(BodyPager.paginate(text, PAGE)).containsExactly(0, 90, 190, 240);
+    }
+
+    @Test
+    void prefersANewlineOverALaterSentenceEnd() {
+        String text = "a".repeat(80) + "\n" + "b".repeat(10) + "。" + "c".repeat(50);
+
+        assertThat(BodyPager.paginate(text, PAGE)[1]).isEqualTo(81);
+    }
+
+    @Test
+    void fallsBackToTheLastSentenceEnd() {
+        String text = "a".repeat(80) + "。" + "b".repeat(10) + "」" + "c".repeat(50);
+
+        assertThat(BodyPager.paginate(text, PAGE)[1]).isEqualTo(92);
+    }
+
+    @Test
+    void ignoresBreaksBeforeTheSearchWindow() {
+        // 改行・句点ともページ末尾から 1/4 より前にしかないので、文字数で切る
+        String text = "a".repeat(10) + "\n" + "b".repeat(10) + "。" + "c".repeat(150);
+
+        assertThat(BodyPager.paginate(text, PAGE)[1]).isEqualTo(PAGE);
+    }
+
+    @Test
+    void neverSplitsASurrogatePairAtAHardCut() {
+        // 位置 99-100 がサロゲートペア (U+1F600)。文字数で切る位置 100 はペアの途中
+        String text = "a".repeat(99) + "😀" + "b".repeat(50);
+
+        int[] offsets = BodyPager.paginate(text, PAGE);
+
+        assertThat(offsets).containsExactly(0, 99, text.length());
+    }
+
+    @Test
+    void producesContiguousBoundedPagesForLongText() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            text.append("文".repeat(i % 37)).append(i % 3 == 0 ? "。" : "").append(i % 7 == 0 ? "\n" : "").append("😀");
+        }
+        String body = text.toString();
+
+        int[] offsets = BodyPager.paginate(body, PAGE);
+
+        assertThat(offsets[0]).isZero();
+        assertThat(offsets[offsets.length - 1]).isEqualTo(body.length());
+        for (int i = 1; i < offsets.length; i++) {
+            int length = offsets[i] - offsets[i - 1];
+            assertThat(length).as("page %d", i - 1).isPositive().isLessThanOrEqualTo(PAGE);
+            if (i < offsets.length - 1) {
+                // 最後以外のページは、遡る範囲 (1/4) より短くならない (ペアの手前で切る1文字分を除く)
+                assertThat(length).as("page %d", i - 1).isGreaterThanOrEqualTo(PAGE - PAGE / 4 - 1);
+                assertThat(Character.isLowSurrogate(body.charAt(offsets[i])))
+                    .as("boundary %d splits a surrogate pair", offsets[i]).isFalse();
+            }
+        }
+    }
+
+    @Test
+    void cachesPagesUntilTheBodyChanges() {
+        BodyPager pager = new BodyPager(PAGE, 10);
+        String body = "a".repeat(250);
+
+        BodyPager.Pages pages = pager.pages(1, body);
+        assertThat(pages.pageCount()).isEqualTo(3);
+        assertThat(pages.start(1)).isEqualTo(PAGE);
+        assertThat(pages.end(2)).isEqualTo(250);
+        assertThat(pager.pages(1, new String(body))).isSameAs(pages);
+
+        BodyPager.Pages changed = pager.pages(1, body.replace('a', 'b'));
+        assertThat(changed).isNotSameAs(pages);
+        assertThat(changed.pageCount()).isEqualTo(3);
+
+        pager.invalidate(1);
+        assertThat(pager.pages(1, body.replace('a', 'b'))).isNotSameAs(changed);
+        assertThat(pager.pages(2, null).offsets()).containsExactly(0, 0);
+    }
+
+    @Test
+    void enforcesAMinimumPageSize() {
+        BodyPager pager = new BodyPager(10, 10);
+
+        assertThat(pager.pages(1, "a".repeat(150)).offsets()).containsExactly(0, 100, 150);
+    }
+}
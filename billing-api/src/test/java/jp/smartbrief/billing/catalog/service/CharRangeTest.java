@@ -0,0 +1,109 @@
+package jp.smartbrief.billing.catalog.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowableOfType;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * CharRange のテスト
+ * Range: chars=... の各書式 (範囲・末尾から・開始のみ) と、範囲外・書式不正のときの 416 (Content-Range で総文字数を返す)、
+ * サロゲートペアを分断しないための範囲の拡大を確かめます。
+ */
+class CharRangeTest {
+
+    private static final String TEXT = "0123456789";
+
+    @Test
+    void parsesAnInclusiveRange() {
+        CharRange range = CharRange.parse("chars=2-5", TEXT).orElseThrow();
+
+        assertThat(range).isEqualTo(new CharRange(2, 6));
+        assertThat(TEXT.substring(range.start(), range.end())).isEqualTo("2345");
+        assertThat(range.contentRange(TEXT.length())).isEqualTo("chars 2-5/10");
+    }
+
+    @Test
+    void parsesOpenEndedAndSuffixRanges() {
+        assertThat(CharRange.parse("chars=7-", TEXT)).contains(new CharRange(7, 10));
+        assertThat(CharRange.parse("chars=-3", TEXT)).contains(new CharRange(7, 10));
+        // 総文字数より長い末尾指定は全文
+        assertThat(CharRange.parse("chars=-50", TEXT)).contains(new CharRange(0, 10));
+        assertThat(CharRange.parse("chars=-3", TEXT).orElseThrow().contentRange(10)).isEqualTo("chars 7-9/10");
+    }
+
+    @Test
+    void clampsAnEndPastTheTotal() {
+        assertThat(CharRange.parse("chars=5-100", TEXT)).contains(new CharRange(5, 10));
+        assertThat(CharRange.parse("chars=0-9", TEXT)).contains(new CharRange(0, 10));
+    }
+
+    @Test
+    void acceptsTheUnitCaseInsensitivelyAndTrimsSpaces() {
+        assertThat(CharRange.parse("CHARS=1-2", TEXT)).contains(new CharRange(1, 3));
+        assertThat(CharRange.parse("chars= 1 - 2 ", TEXT)).contains(new CharRange(1, 3));
+    }
+
+    @Test
+    void ignoresMissingHeadersAndOtherUnits() {
+        assertThat(CharRange.parse(null, TEXT)).isEmpty();
+        assertThat(CharRange.parse("bytes=0-4", TEXT)).isEmpty();
+        assertThat(CharRange.parse("bytes=0-1,3-4", TEXT)).isEmpty();
+        assertThat(CharRange.parse("characters=0-4", TEXT)).isEmpty();
+    }
+
+    @Test
+    void rejectsMultipleRanges() {
+        assertUnsatisfiable("chars=0-1,3-4", TEXT);
+        assertUnsatisfiable("chars=0-1, -2", TEXT);
+    }
+
+    @Test
+    void rejectsMalformedRanges() {
+        assertUnsatisfiable("chars=", TEXT);
+        assertUnsatisfiable("chars=5", TEXT);
+        assertUnsatisfiable("chars=-", TEXT);
+        assertUnsatisfiable("chars=a-b", TEXT);
+        assertUnsatisfiable("chars=1-x", TEXT);
+        assertUnsatisfiable("chars=99999999999999999999-", TEXT);
+    }
+
+    @Test
+    void rejectsRangesOutsideTheText() {
+        assertUnsatisfiable("chars=10-", TEXT);
+        assertUnsatisfiable("chars=10-20", TEXT);
+        assertUnsatisfiable("chars=5-2", TEXT);
+        assertUnsatisfiable("chars=-0", TEXT);
+        // 空の本文には満たせる範囲がない (Content-Range は chars */0)
+        assertUnsatisfiable("chars=-5", "");
+    }
+
+    @Test
+    void widensRangesThatWouldSplitASurrogatePair() {
+        // "ab" + U+1F600 (2 char) + "cd" : 位置 2-3 がサロゲートペア
+        String text = "ab😀cd";
+
+        // 終了がペアの途中 → 後ろへ広げる
+        assertThat(CharRange.parse("chars=0-2", text)).contains(new CharRange(0, 4));
+        // 開始がペアの途中 → 前へ広げる
+        assertThat(CharRange.parse("chars=3-4", text)).contains(new CharRange(2, 5));
+        assertThat(CharRange.parse("chars=-3", text)).contains(new CharRange(2, 6));
+        // ペアをちょうど含む・含まない範囲はそのまま
+        assertThat(CharRange.parse("chars=2-3", text)).contains(new CharRange(2, 4));
+        assertThat(CharRange.parse("chars=0-1", text)).contains(new CharRange(0, 2));
+        assertThat(CharRange.parse("chars=4-", text)).contains(new CharRange(4, 6));
+    }
+
+    // --- Helpers ---
+
+    private static void assertUnsatisfiable(String header, String text) {
+        ResponseStatusException e = catchThrowableOfType(
+            () -> CharRange.parse(header, text), ResponseStatusException.class);
+        assertThat(e).as("416 for %s", header).isNotNull();
+        assertThat(e.getStatusCode()).isEqualTo(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+        assertThat(e.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE)).isEqualTo("chars */" + text.length());
+    }
+}
@@ -0,0 +1,131 @@
+package jp.smartbrief.billing.payment.entitlement;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * ExpiryWheel のテスト
+ * 1秒ずつ進めて、各段 (秒・分・時・日・overflow) に置いたキーがちょうど期限の秒に取り出されることを確かめます。
+ */
+class ExpiryWheelTest {
+
+    // 分・時・日の境界からずらした開始時刻 (2023-11-14T22:15:23Z)
+    private static final long NOW = 1_700_000_123L;
+    private static final long MINUTE = 60;
+    private static final long HOUR = 3_600;
+    private static final long DAY = 86_400;
+
+    @Test
+    void expiresEachKeyAtItsDeadlineAcrossMinuteHourAndDayBoundaries() {
+        ExpiryWheel<String> wheel = new ExpiryWheel<>(NOW);
+        Map<String, Long> deadlines = new HashMap<>();
+        deadlines.put("next-second", NOW + 1);
+        deadlines.put("same-minute", NOW + MINUTE - 1);
+        deadlines.put("next-minute", NOW + MINUTE + 1);
+        deadlines.put("minute-boundary", (NOW / MINUTE + 2) * MINUTE);
+        deadlines.put("same-hour", NOW + HOUR - 1);
+        deadlines.put("next-hour", NOW + HOUR + 1);
+        deadlines.put("hour-boundary", (NOW / HOUR + 3) * HOUR);
+        deadlines.put("same-day", NOW + DAY - 1);
+        deadlines.put("next-day", NOW + DAY + 1);
+        deadlines.put("day-boundary", (NOW / DAY + 2) * DAY);
+        deadlines.put("next-month", NOW + 31 * DAY + 17);
+        deadlines.forEach((key, deadline) -> assertThat(wheel.schedule(key, deadline)).isTrue());
+
+        Map<String, Long> expiredAt = new HashMap<>();
+        long end = NOW + 32 * DAY;
+        for (long now = NOW + 1; now <= end; now++) {
+            long at = now;
+            wheel.advance(now, key -> assertThat(expiredAt.put(key, at)).as("expired twice: %s", key).isNull());
+        }
+
+        assertThat(expiredAt).isEqualTo(deadlines);
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void expiresEverythingDueWhenAdvancedInOneJump() {
+        ExpiryWheel<Long> wheel = new ExpiryWheel<>(NOW);
+        wheel.schedule(1L, NOW + 5);
+        wheel.schedule(2L, NOW + 2 * HOUR);
+        wheel.schedule(3L, NOW + 3 * DAY);
+        wheel.schedule(4L, NOW + 3 * DAY + 1);
+
+        List<Long> expired = new ArrayList<>();
+        wheel.advance(NOW + 3 * DAY, expired::add);
+
+        assertThat(expired).containsExactly(1L, 2L, 3L);
+        assertThat(wheel.size()).isEqualTo(1);
+    }
+
+    @Test
+    void deliversEachScheduleOfTheSameKey() {
+        // 期限を延長しても古い予約は残り、要否は取り出した側 (EntitlementService) が判断する
+        ExpiryWheel<Long> wheel = new ExpiryWheel<>(NOW);
+        wheel.schedule(42L, NOW + 100);
+        wheel.schedule(42L, NOW + 2 * HOUR);
+        assertThat(wheel.size()).isEqualTo(2);
+
+        List<Long> firstPass = new ArrayList<>();
+        wheel.advance(NOW + 100, firstPass::add);
+        assertThat(firstPass).containsExactly(42L);
+        assertThat(wheel.size()).isEqualTo(1);
+
+        List<Long> secondPass = new ArrayList<>();
+        wheel.advance(NOW + 2 * HOUR - 1, secondPass::add);
+        assertThat(secondPass).isEmpty();
+        wheel.advance(NOW + 2 * HOUR, secondPass::add);
+        assertThat(secondPass).containsExactly(42L);
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void keepsDeadlinesBeyondTheDayWheelInOverflowUntilDue() {
+        ExpiryWheel<String> wheel = new ExpiryWheel<>(NOW);
+        long farFuture = NOW + 500 * DAY + 123;
+        long justBeyond = NOW + 400 * DAY;
+        wheel.schedule("far", farFuture);
+        wheel.schedule("just-beyond", justBeyond);
+
+        List<String> expired = new ArrayList<>();
+        wheel.advance(justBeyond - 1, expired::add);
+        assertThat(expired).isEmpty();
+        wheel.advance(justBeyond, expired::add);
+        assertThat(expired).containsExactly("just-beyond");
+
+        wheel.advance(farFuture - 1, expired::add);
+        assertThat(expired).containsExactly("just-beyond");
+        assertThat(wheel.size()).isEqualTo(1);
+        wheel.advance(farFuture, expired::add);
+        assertThat(expired).containsExactly("just-beyond", "far");
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void rejectsPastDeadlinesAndTracksSize() {
+        ExpiryWheel<Integer> wheel = new ExpiryWheel<>(NOW);
+        assertThat(wheel.schedule(1, NOW)).isFalse();
+        assertThat(wheel.schedule(2, NOW - DAY)).isFalse();
+        assertThat(wheel.size()).isZero();
+
+        for (int i = 1; i <= 1_000; i++) {
+            wheel.schedule(i, NOW + i * 97L);
+        }
+        assertThat(wheel.size()).isEqualTo(1_000);
+
+        List<Integer> expired = new ArrayList<>();
+        wheel.advance(NOW + 500 * 97L, expired::add);
+        assertThat(expired).hasSize(500);
+        assertThat(wheel.size()).isEqualTo(500);
+
+        // 進めた後の現在時刻以前は登録しない
+        assertThat(wheel.schedule(0, NOW + 500 * 97L)).isFalse();
+        assertThat(wheel.size()).isEqualTo(500);
+    }
+}
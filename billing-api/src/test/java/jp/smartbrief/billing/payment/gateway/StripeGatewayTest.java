@@ -0,0 +1,135 @@
+package jp.smartbrief.billing.payment.gateway;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.stripe.Stripe;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.test.StepVerifier;
+
+/**
+ * StripeGateway のテスト
+ * Stripe の代わりにローカルの HTTP サーバーを立て、Stripe.overrideApiBase で向き先を切り替えます。
+ */
+class StripeGatewayTest {
+
+    private HttpServer server;
+    private final AtomicInteger hits = new AtomicInteger();
+    private final List<String> idempotencyKeys = new CopyOnWriteArrayList<>();
+    private volatile int status = 200;
+    private volatile long delayMillis = 0;
+
+    @BeforeEach
+    void startStub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/v1/checkout/sessions", this::handle);
+        server.start();
+        Stripe.overrideApiBase("http://127.0.0.1:" + server.getAddress().getPort());
+    }
+
+    @AfterEach
+    void stopStub() {
+        server.stop(0);
+        Stripe.overrideApiBase(Stripe.LIVE_API_BASE);
+    }
+
+    @Test
+    void reusesOpenCheckoutSessionWithIdempotencyKey() {
+        StripeGateway gateway = gateway(Duration.ofSeconds(5));
+
+        StepVerifier.create(gateway.checkoutUrl(42L, "user@example.com"))
+            .expectNext("https://checkout.stripe.test/1")
+            .verifyComplete();
+        StepVerifier.create(gateway.checkoutUrl(42L, "user@example.com"))
+            .expectNext("https://checkout.stripe.test/1")
+            .verifyComplete();
+
+        assertThat(hits.get()).isEqualTo(1);
+        assertThat(idempotencyKeys).singleElement().asString().startsWith("checkout-42-price_test-");
+    }
+
+    @Test
+    void failsWithGatewayTimeoutAfterDeadline() {
+        delayMillis = 2000;
+        StripeGateway gateway = gateway(Duration.ofMillis(300));
+
+        StepVerifier.create(gateway.checkoutUrl(1L, "user@example.com"))
+            .expectErrorSatisfies(e -> assertThat(((ResponseStatusException) e).getStatusCode())
+                .isEqualTo(HttpStatus.GATEWAY_TIMEOUT))
+            .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void opensCircuitAfterRepeatedServerErrors() {
+        status = 500;
+        StripeGateway gateway = gateway(Duration.ofSeconds(5));
+
+        for (long userId = 1; userId <= 2; userId++) {
+            StepVerifier.create(gateway.checkoutUrl(userId, "user@example.com"))
+                .expectErrorSatisfies(e -> assertThat(((ResponseStatusException) e).getStatusCode())
+                    .isEqualTo(HttpStatus.BAD_GATEWAY))
+                .verify();
+        }
+        assertThat(gateway.circuitState()).isEqualTo(CircuitBreaker.State.OPEN);
+
+        StepVerifier.create(gateway.checkoutUrl(3L, "user@example.com"))
+            .expectErrorSatisfies(e -> assertThat(((ResponseStatusException) e).getStatusCode())
+                .isEqualTo(HttpStatus.SERVICE_UNAVAILABLE))
+            .verify();
+        assertThat(hits.get()).isEqualTo(2);
+    }
+
+    private StripeGateway gateway(Duration deadline) {
+        return new StripeGateway(
+            "sk_test_stub", "http://localhost:3000", "price_test",
+            2, 4, deadline, Duration.ofMinutes(5), Duration.ofMinutes(1),
+            50f, 2, Duration.ofMinutes(1),
+            new SimpleMeterRegistry());
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        hits.incrementAndGet();
+        String key = exchange.getRequestHeaders().getFirst("Idempotency-Key");
+        if (key != null) {
+            idempotencyKeys.add(key);
+        }
+        if (delayMillis > 0) {
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        String body = status == 200
+            ? "{\"id\":\"cs_test_1\",\"object\":\"checkout.session\",\"url\":\"https://checkout.stripe.test/1\"}"
+            : "{\"error\":{\"type\":\"api_error\",\"message\":\"stub failure\"}}";
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        } catch (IOException ignored) {
+            // タイムアウトで切断された場合
+        }
+    }
+}
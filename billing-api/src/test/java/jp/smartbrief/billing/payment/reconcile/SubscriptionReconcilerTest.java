@@ -0,0 +1,228 @@
+package jp.smartbrief.billing.payment.reconcile;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.stripe.Stripe;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jp.smartbrief.billing.identity.domain.User;
+import jp.smartbrief.billing.identity.repository.UserRepository;
+import jp.smartbrief.billing.payment.entitlement.EntitlementService;
+import jp.smartbrief.billing.payment.gateway.StripeGateway;
+import jp.smartbrief.billing.shared.security.PrincipalCache;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+/**
+ * SubscriptionReconciler のテスト
+ * Stripe の代わりにローカルの HTTP サーバーを立て、Stripe.overrideApiBase で向き先を切り替えます。
+ * users は UserRepository / SubscriptionCorrectionWriter のモックで表します。
+ */
+class SubscriptionReconcilerTest {
+
+    private static final long PERIOD_END = 1_893_456_000L;
+    private static final LocalDateTime EXPIRES_AT =
+        LocalDateTime.ofInstant(Instant.ofEpochSecond(PERIOD_END), ZoneId.systemDefault());
+
+    private HttpServer server;
+    private final List<Map<String, String>> requests = new CopyOnWriteArrayList<>();
+    private volatile boolean failSecondPage = false;
+    // 突き合わせの間に書き換えられた (UPDATE の条件に合わなかった) ユーザー
+    private final Set<Long> changedConcurrently = ConcurrentHashMap.newKeySet();
+
+    private final UserRepository userRepository = mock(UserRepository.class);
+    private final SubscriptionCorrectionWriter correctionWriter = mock(SubscriptionCorrectionWriter.class);
+    private final List<SubscriptionCorrection> written = new CopyOnWriteArrayList<>();
+
+    // cus_A: 期限だけずれている / cus_B: FREE のまま / cus_C: 一致 / cus_D: Stripe 側で解約済み
+    private final List<User> users = List.of(
+        user(1L, "alice", "cus_A", "PREMIUM", EXPIRES_AT.minusMonths(1)),
+        user(2L, "bob", "cus_B", "FREE", null),
+        user(3L, "carol", "cus_C", "PREMIUM", EXPIRES_AT),
+        user(4L, "dave", "cus_D", "PREMIUM", EXPIRES_AT));
+
+    @BeforeEach
+    void startStub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/v1/subscriptions", this::handle);
+        server.start();
+        Stripe.overrideApiBase("http://127.0.0.1:" + server.getAddress().getPort());
+
+        when(userRepository.findByStripeCustomerIdIn(anyCollection())).thenAnswer(invocation -> {
+            Collection<?> customers = invocation.getArgument(0);
+            return Flux.fromIterable(users).filter(user -> customers.contains(user.getStripeCustomerId()));
+        });
+        when(userRepository.findPremiumWithStripeCustomer()).thenAnswer(invocation ->
+            Flux.fromIterable(users).filter(user -> "PREMIUM".equals(user.getPlanType())));
+        when(correctionWriter.apply(anyList())).thenAnswer(invocation -> {
+            List<SubscriptionCorrection> corrections = invocation.getArgument(0);
+            List<SubscriptionCorrection> applied = corrections.stream()
+                .filter(correction -> !changedConcurrently.contains(correction.userId()))
+                .toList();
+            written.addAll(applied);
+            return Mono.just(applied);
+        });
+    }
+
+    @AfterEach
+    void stopStub() {
+        server.stop(0);
+        Stripe.overrideApiBase(Stripe.LIVE_API_BASE);
+    }
+
+    @Test
+    void pagesThroughStripeAndCorrectsOnlyDriftedUsers() {
+        StepVerifier.create(reconciler().reconcile())
+            .assertNext(report -> {
+                assertThat(report.pages()).isEqualTo(2);
+                assertThat(report.scanned()).isEqualTo(3);
+                assertThat(report.drifted()).isEqualTo(3);
+                assertThat(report.corrected()).isEqualTo(3);
+            })
+            .verifyComplete();
+
+        // ページはカーソルでたどり、users はページごとに1回だけ引く
+        assertThat(requests).extracting(params -> params.get("starting_after"))
+            .containsExactly(null, "sub_B", null);
+        assertThat(requests).extracting(params -> params.get("customer"))
+            .containsExactly(null, null, "cus_D");
+        verify(userRepository, times(2)).findByStripeCustomerIdIn(anyCollection());
+
+        assertThat(written).extracting(SubscriptionCorrection::userId, SubscriptionCorrection::drift)
+            .containsExactlyInAnyOrder(
+                tuple(1L, "expiry"),
+                tuple(2L, "plan"),
+                tuple(4L, "orphan"));
+        assertThat(written).filteredOn(correction -> correction.userId() == 4L)
+            .singleElement()
+            .satisfies(correction -> assertThat(correction.expected().plan()).isEqualTo(User.Plan.FREE));
+    }
+
+    @Test
+    void appliesEntitlementsOnlyForRowsActuallyWritten() {
+        changedConcurrently.add(2L);
+        EntitlementService entitlementService = new EntitlementService(userRepository, new SimpleMeterRegistry(), 100);
+
+        StepVerifier.create(reconciler(entitlementService).reconcile())
+            .assertNext(report -> {
+                assertThat(report.drifted()).isEqualTo(3);
+                assertThat(report.corrected()).isEqualTo(2);
+            })
+            .verifyComplete();
+
+        // bob (FREE -> PREMIUM) は書き込まれなかったので反映しない
+        assertThat(entitlementService.isPremium(2L)).isFalse();
+        assertThat(entitlementService.isPremium(1L)).isTrue();
+        assertThat(entitlementService.isPremium(4L)).isFalse();
+    }
+
+    @Test
+    void doesNotDowngradeMissingCustomersWhenPagingFails() {
+        failSecondPage = true;
+
+        StepVerifier.create(reconciler().reconcile())
+            .expectError()
+            .verify(Duration.ofSeconds(5));
+
+        verify(userRepository, never()).findPremiumWithStripeCustomer();
+        assertThat(requests).noneMatch(params -> params.containsKey("customer"));
+    }
+
+    private SubscriptionReconciler reconciler() {
+        return reconciler(new EntitlementService(userRepository, new SimpleMeterRegistry(), 100));
+    }
+
+    private SubscriptionReconciler reconciler(EntitlementService entitlementService) {
+        StripeGateway gateway = new StripeGateway(
+            "sk_test_stub", "http://localhost:3000", "price_test",
+            2, 4, Duration.ofSeconds(5), Duration.ofMinutes(5), Duration.ofMinutes(1),
+            50f, 10, Duration.ofMinutes(1),
+            new SimpleMeterRegistry());
+        PrincipalCache principalCache = new PrincipalCache(
+            userRepository, entitlementService, new SimpleMeterRegistry(), Duration.ofSeconds(30), 100);
+        return new SubscriptionReconciler(
+            gateway, userRepository, correctionWriter, entitlementService, principalCache, new SimpleMeterRegistry(),
+            2, 50, 2, 2, false);
+    }
+
+    private static User user(Long id, String username, String customerId, String plan, LocalDateTime expiresAt) {
+        return User.builder()
+            .id(id)
+            .username(username)
+            .stripeCustomerId(customerId)
+            .planType(plan)
+            .subscriptionExpiresAt(expiresAt)
+            .build();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        for (String pair : exchange.getRequestURI().getQuery().split("&")) {
+            String[] kv = pair.split("=", 2);
+            params.put(kv[0], kv.length > 1 ? kv[1] : "");
+        }
+        requests.add(params);
+        int status = 200;
+        String body;
+        if (params.containsKey("customer")) {
+            // 顧客ごとの確認: 有効なサブスクリプションはない
+            body = list(false);
+        } else if ("sub_B".equals(params.get("starting_after"))) {
+            status = failSecondPage ? 500 : 200;
+            body = failSecondPage
+                ? "{\"error\":{\"type\":\"api_error\",\"message\":\"stub failure\"}}"
+                : list(false, subscription("sub_C", "cus_C"));
+        } else {
+            body = list(true, subscription("sub_A", "cus_A"), subscription("sub_B", "cus_B"));
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String list(boolean hasMore, String... subscriptions) {
+        return "{\"object\":\"list\",\"url\":\"/v1/subscriptions\",\"has_more\":" + hasMore
+            + ",\"data\":[" + String.join(",", subscriptions) + "]}";
+    }
+
+    private static String subscription(String id, String customerId) {
+        return "{\"id\":\"" + id + "\",\"object\":\"subscription\",\"customer\":\"" + customerId
+            + "\",\"status\":\"active\",\"current_period_end\":" + PERIOD_END + "}";
+    }
+}
@@ -0,0 +1,154 @@
+package jp.smartbrief.billing.shared.accesslog;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * AccessLogRingBuffer と AccessLogWriter.format のテスト
+ * 満杯時の破棄・周回後の順序・複数スレッドからの書き込み (取りこぼし・重複がないこと) と、JSON のエスケープを確かめます。
+ */
+class AccessLogRingBufferTest {
+
+    @Test
+    void dropsWhenFullAndAcceptsAgainAfterPoll() {
+        AccessLogRingBuffer buffer = new AccessLogRingBuffer(4);
+        for (int i = 0; i < 4; i++) {
+            assertThat(buffer.offer(entry(0, i))).isTrue();
+        }
+        assertThat(buffer.offer(entry(0, 4))).isFalse();
+        assertThat(buffer.size()).isEqualTo(4);
+
+        assertThat(buffer.poll().bytes()).isZero();
+        assertThat(buffer.offer(entry(0, 5))).isTrue();
+        assertThat(buffer.offer(entry(0, 6))).isFalse();
+
+        List<Long> drained = new ArrayList<>();
+        AccessLogEntry entry;
+        while ((entry = buffer.poll()) != null) {
+            drained.add(entry.bytes());
+        }
+        assertThat(drained).containsExactly(1L, 2L, 3L, 5L);
+        assertThat(buffer.size()).isZero();
+    }
+
+    @Test
+    void roundsCapacityUpToAPowerOfTwo() {
+        AccessLogRingBuffer buffer = new AccessLogRingBuffer(5);
+        int accepted = 0;
+        while (buffer.offer(entry(0, accepted))) {
+            accepted++;
+        }
+        assertThat(accepted).isEqualTo(8);
+    }
+
+    @Test
+    void keepsFifoOrderAfterWrappingAroundManyTimes() {
+        AccessLogRingBuffer buffer = new AccessLogRingBuffer(4);
+        long next = 0;
+        long expected = 0;
+        for (int round = 0; round < 100; round++) {
+            // 周回ごとに書き込み位置がずれるよう、3件ずつ書いて読む
+            for (int i = 0; i < 3; i++) {
+                assertThat(buffer.offer(entry(0, next++))).isTrue();
+            }
+            for (int i = 0; i < 3; i++) {
+                assertThat(buffer.poll().bytes()).isEqualTo(expected++);
+            }
+            assertThat(buffer.poll()).isNull();
+        }
+        assertThat(expected).isEqualTo(300);
+    }
+
+    @Test
+    void deliversEveryEntryExactlyOnceWithConcurrentProducers() throws Exception {
+        int producers = 4;
+        int perProducer = 20_000;
+        AccessLogRingBuffer buffer = new AccessLogRingBuffer(256);
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int p = 0; p < producers; p++) {
+                int producer = p;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int seq = 0; seq < perProducer; seq++) {
+                        while (!buffer.offer(entry(producer, seq))) {
+                            Thread.yield(); // 満杯なら読み出し側が追いつくまで譲る (CPU が少ない環境でも進むように)
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+
+            // 読み出し側 (1スレッド): 書き込み側ごとに順序どおり、欠けも重複もなく届くこと
+            long[] nextSeq = new long[producers];
+            Set<String> seen = new HashSet<>();
+            int received = 0;
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while (received < producers * perProducer && System.nanoTime() < deadline) {
+                AccessLogEntry entry = buffer.poll();
+                if (entry == null) {
+                    Thread.yield();
+                    continue;
+                }
+                assertThat(seen.add(entry.status() + ":" + entry.bytes())).isTrue();
+                assertThat(entry.bytes()).isEqualTo(nextSeq[entry.status()]++);
+                received++;
+            }
+            for (Future<?> future : futures) {
+                future.get(5, TimeUnit.SECONDS);
+            }
+            assertThat(received).isEqualTo(producers * perProducer);
+            assertThat(nextSeq).containsOnly(perProducer);
+            assertThat(buffer.poll()).isNull();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void formatsOneJsonLineWithEscapedStrings() throws Exception {
+        String path = "/api/v1/books/\"q\"\\x\ny\tz\r\u0001";
+        AccessLogEntry entry = new AccessLogEntry(0L, "GET", path, 200, 1_234_567L, 512L, null, 0.25);
+
+        String line = AccessLogWriter.format(entry, new StringBuilder()).toString();
+
+        assertThat(line).isEqualTo("{\"ts\":\"1970-01-01T00:00:00Z\",\"method\":\"GET\","
+            + "\"path\":\"/api/v1/books/\\\"q\\\"\\\\x\\ny\\tz\\r\\u0001\","
+            + "\"status\":200,\"duration_ms\":1.234,\"bytes\":512,\"ip\":null,\"sample_rate\":0.25}");
+        assertThat(line).doesNotContain("\n", "\r", "\t");
+        JsonNode parsed = new ObjectMapper().readTree(line);
+        assertThat(parsed.get("path").asText()).isEqualTo(path);
+        assertThat(parsed.get("ip").isNull()).isTrue();
+    }
+
+    @Test
+    void padsSubMillisecondDurations() {
+        AccessLogEntry entry = new AccessLogEntry(0L, "POST", "/", 201, 5_000L, 0L, "127.0.0.1", 1.0);
+
+        String line = AccessLogWriter.format(entry, new StringBuilder()).toString();
+
+        assertThat(line).contains("\"duration_ms\":0.005,").contains("\"ip\":\"127.0.0.1\"");
+    }
+
+    // 書き込み側の番号を status、通し番号を bytes に入れる
+    private static AccessLogEntry entry(int producer, long seq) {
+        return new AccessLogEntry(0L, "GET", "/", producer, 0L, seq, null, 1.0);
+    }
+}
@@ -57,6 +57,61 @@ CREATE TABLE IF NOT EXISTS user_book_history (
     INDEX idx_user_view_date (user_id, viewed_at)
 );
 
+-- 無料会員の日次閲覧回数 (catalog.quota.mode=database で複数インスタンス共有する場合のみ使用)
+CREATE TABLE IF NOT EXISTS daily_quota (
+    user_id BIGINT NOT NULL,
+    quota_date DATE NOT NULL,           -- JST の日付
+    used INT NOT NULL DEFAULT 0,
+    PRIMARY KEY (user_id, quota_date)
+);
+
+-- 閲覧履歴の日次集計 (HistoryCompactionJob が user_book_history の古い行をまとめたもの)
+CREATE TABLE IF NOT EXISTS user_book_history_daily (
+    user_id BIGINT NOT NULL,
+    book_id INT NOT NULL,
+    view_date DATE NOT NULL,            -- viewed_at の JST の日付 (viewed_at はサーバーのローカル時刻)
+    views BIGINT NOT NULL DEFAULT 0,
+    PRIMARY KEY (user_id, book_id, view_date),
+    INDEX idx_daily_book_date (book_id, view_date),
+    INDEX idx_daily_date (view_date)
+);
+
+-- メール送信アウトボックス (認証メール・パスワード再設定メールの送信依頼。EmailOutboxDispatcher が n8n へ送る)
+CREATE TABLE IF NOT EXISTS email_outbox (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    kind VARCHAR(32) NOT NULL,          -- VERIFY_EMAIL / PASSWORD_RESET
+    payload TEXT NOT NULL,              -- Webhook に送る JSON
+    status VARCHAR(16) NOT NULL DEFAULT 'PENDING', -- PENDING / SENT / DEAD
+    attempts INT NOT NULL DEFAULT 0,
+    next_attempt_at DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    last_error VARCHAR(500) DEFAULT NULL,
+    created_at DATETIME DEFAULT CURRENT_TIMESTAMP,
+    sent_at DATETIME DEFAULT NULL,
+    INDEX idx_outbox_due (status, next_attempt_at)
+);
+
+-- Stripe Webhook イベントテーブル (event_id で重複排除し、非同期に処理する)
+CREATE TABLE IF NOT EXISTS stripe_webhook_event (
+    event_id VARCHAR(255) PRIMARY KEY,  -- Stripe のイベントID (evt_...)
+    type VARCHAR(64) NOT NULL,
+    customer_id VARCHAR(255) DEFAULT NULL,
+    payload MEDIUMTEXT DEFAULT NULL,    -- 処理済みになったら NULL にする
+    status VARCHAR(16) NOT NULL DEFAULT 'PENDING', -- PENDING / PROCESSING / PROCESSED / FAILED
+    attempts INT NOT NULL DEFAULT 0,
+    next_attempt_at DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    last_error VARCHAR(500) DEFAULT NULL,
+    received_at DATETIME DEFAULT CURRENT_TIMESTAMP,
+    processed_at DATETIME DEFAULT NULL,
+    INDEX idx_webhook_due (status, next_attempt_at)
+);
+
+-- 顧客ごとに反映済みの Stripe イベントの作成時刻 (再試行で遅れて届いた古いイベントを捨てるため)
+CREATE TABLE IF NOT EXISTS stripe_customer_watermark (
+    customer_id VARCHAR(255) PRIMARY KEY,
+    last_event_created BIGINT NOT NULL, -- 反映済みイベントの created (エポック秒) の最大値
+    updated_at DATETIME DEFAULT CURRENT_TIMESTAMP
+);
+
 -- お気に入りテーブル
 CREATE TABLE IF NOT EXISTS user_favorites (
     id BIGINT AUTO_INCREMENT PRIMARY KEY,
@@ -96,5 +151,47 @@ CREATE TABLE IF NOT EXISTS works (
     summary_long TEXT,
     body_text LONGTEXT,
     
-    full_text LONGTEXT
-);
\ No newline at end of file
+    full_text LONGTEXT,
+
+    -- 本文の外部保存先 (ファイルストア利用時。内容の SHA-256。移行後は body_text は NULL。full_text は移さない)
+    body_ref CHAR(64) DEFAULT NULL,
+
+    -- 本文の文字数 (文字数順ソート用。下記トリガーで取り込み時に自動計算)
+    text_length INT DEFAULT NULL,
+
+    -- 検索インデックスの差分更新用 (n8n の Upsert で自動更新される)
+    updated_at DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    INDEX idx_works_updated_at (updated_at),
+    INDEX idx_works_text_length (text_length, work_id)
+);
+
+-- 本文の文字数を取り込み時に計算するトリガー
+-- (全文 full_text を優先し、なければ本文 body_text。本文が外部ストレージへ移されて
+--  両方 NULL になった場合は既存の値を維持する)
+DROP TRIGGER IF EXISTS trg_works_text_length_insert;
+CREATE TRIGGER trg_works_text_length_insert BEFORE INSERT ON works FOR EACH ROW
+    SET NEW.text_length = CHAR_LENGTH(COALESCE(NEW.full_text, NEW.body_text));
+
+DROP TRIGGER IF EXISTS trg_works_text_length_update;
+CREATE TRIGGER trg_works_text_length_update BEFORE UPDATE ON works FOR EACH ROW
+    SET NEW.text_length = COALESCE(CHAR_LENGTH(COALESCE(NEW.full_text, NEW.body_text)), OLD.text_length);
+
+-- ==========================================
+-- 4. 既存環境向けマイグレーション
+-- ==========================================
+-- CREATE TABLE IF NOT EXISTS では既存テーブルに列が追加されないため、
+-- 稼働中の環境では以下を手動で実行してください。
+--
+-- ALTER TABLE aozora_db.works
+--     ADD COLUMN updated_at DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+--     ADD INDEX idx_works_updated_at (updated_at);
+--
+-- ALTER TABLE aozora_db.works
+--     ADD COLUMN text_length INT DEFAULT NULL,
+--     ADD INDEX idx_works_text_length (text_length, work_id);
+-- (上記のトリガー2つを aozora_db で作成した後、既存行を一度だけ埋める)
+-- UPDATE aozora_db.works SET text_length = CHAR_LENGTH(COALESCE(full_text, body_text)) WHERE text_length IS NULL;
+--
+-- ALTER TABLE aozora_db.works
+--     ADD COLUMN body_ref CHAR(64) DEFAULT NULL;
+-- (本文のファイルストアへの移行はアプリを --migrate-bodies 付きで起動して行う)
\ No newline at end of file